@@ -19,16 +19,24 @@ package org.datanucleus.cache.cacheonix;
 
 import java.io.Serializable;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.datanucleus.NucleusContext;
 import org.datanucleus.PropertyNames;
 import org.datanucleus.Configuration;
 import org.datanucleus.cache.AbstractLevel2Cache;
 import org.datanucleus.cache.CachedPC;
-import org.datanucleus.identity.IdentityUtils;
+import org.datanucleus.cache.support.ClassKeyIndex;
+import org.datanucleus.cache.support.SizeTracker;
+import org.datanucleus.identity.DatastoreId;
+import org.datanucleus.identity.SingleFieldId;
 import org.datanucleus.metadata.AbstractClassMetaData;
 import org.datanucleus.metadata.IdentityType;
 import org.datanucleus.util.NucleusLogger;
@@ -43,14 +51,43 @@ public class CacheonixLevel2Cache extends AbstractLevel2Cache
 {
     private static final long serialVersionUID = -4980918853861817672L;
 
+    /** Minimum number of keys added to the index between prunes of it. */
+    private static final int MIN_INDEX_PRUNE_INTERVAL = 1024;
+
     Cacheonix cacheManager;
 
     /** Map of cache keyed by the class name (one cache per class). */
-    final Map<String, Cache> caches = new HashMap<>();
+    final Map<String, Cache> caches = new ConcurrentHashMap<>();
 
     /** Fallback class when we can't derive the class name from the identity (composite id). */
     Cache<Serializable, Serializable> defaultCache;
 
+    /** Approximate size of the caches, for enforcing maxSize. */
+    final SizeTracker sizeTracker;
+
+    /**
+     * Index of the keys in the default cache by class, for class eviction. Cacheonix doesn't notify expiry, so the keys of
+     * expired objects are pruned from the index once as many keys have been added as it held after the last prune.
+     */
+    final ClassKeyIndex defaultKeyIndex = new ClassKeyIndex();
+
+    /** Number of keys added to the index since it was last pruned. */
+    private final AtomicInteger indexAddsSincePrune = new AtomicInteger();
+
+    /** Number of keys added to the index at which it is next pruned. */
+    private volatile int indexPruneInterval = MIN_INDEX_PRUNE_INTERVAL;
+
+    /** Whether a prune of the index is queued or running. */
+    private final AtomicBoolean indexPruning = new AtomicBoolean();
+
+    /** Executor for pruning the index, since testing each key may be a remote call. */
+    private final ExecutorService indexPruneExecutor = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread thread = new Thread(r, "DataNucleus-Cacheonix-IndexPrune");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public CacheonixLevel2Cache(NucleusContext nucleusCtx)
     {
         super(nucleusCtx);
@@ -71,6 +108,7 @@ public class CacheonixLevel2Cache extends AbstractLevel2Cache
         {
             defaultCache = cacheManager.createCache(cacheName);
         }
+        sizeTracker = SizeTracker.create(conf, maxSize, this::getSize);
     }
 
     /* (non-Javadoc)
@@ -78,6 +116,11 @@ public class CacheonixLevel2Cache extends AbstractLevel2Cache
      */
     public void close()
     {
+        indexPruneExecutor.shutdownNow();
+        if (sizeTracker != null)
+        {
+            sizeTracker.close();
+        }
         if (clearAtClose)
         {
             evictAll();
@@ -85,15 +128,69 @@ public class CacheonixLevel2Cache extends AbstractLevel2Cache
         cacheManager.shutdown();
     }
 
+    /**
+     * Method to prune the keys of objects no longer in the default cache from its index (in the background), once enough keys
+     * have been added since the last prune. The interval grows with the index, so the cost of pruning per put is constant and
+     * the index holds at most around twice the keys in the cache.
+     */
+    private void pruneKeyIndexIfDue()
+    {
+        int adds = indexAddsSincePrune.incrementAndGet();
+        if (adds >= indexPruneInterval && indexPruning.compareAndSet(false, true))
+        {
+            indexAddsSincePrune.set(0);
+            try
+            {
+                indexPruneExecutor.execute(this::pruneKeyIndex);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // Closed
+                indexPruning.set(false);
+            }
+        }
+    }
+
+    private void pruneKeyIndex()
+    {
+        try
+        {
+            int removed = defaultKeyIndex.prune(key -> defaultCache.containsKey(key));
+            indexPruneInterval = Math.max(MIN_INDEX_PRUNE_INTERVAL, defaultKeyIndex.size());
+            if (NucleusLogger.CACHE.isDebugEnabled())
+            {
+                NucleusLogger.CACHE.debug("Pruned " + removed + " keys of objects no longer cached from the class index of cache " + cacheName);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            NucleusLogger.CACHE.debug("Exception pruning the class index of cache " + cacheName + " : " + e.getMessage());
+        }
+        finally
+        {
+            indexPruning.set(false);
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.datanucleus.cache.Level2Cache#evict(java.lang.Object)
      */
     public void evict(Object oid)
     {
-        Object pc = get(oid);
-        if (pc != null)
+        CachedPC pc = get(oid);
+        if (pc == null)
+        {
+            return;
+        }
+
+        Cache cache = getCacheForId(oid);
+        if (cache == defaultCache)
         {
-            getCacheForId(oid).remove(oid);
+            defaultKeyIndex.remove(pc.getObjectClass().getName(), oid);
+        }
+        if (cache.remove(oid) != null && sizeTracker != null)
+        {
+            sizeTracker.removed();
         }
     }
 
@@ -102,11 +199,16 @@ public class CacheonixLevel2Cache extends AbstractLevel2Cache
      */
     public void evictAll()
     {
-        for (Iterator i = caches.values().iterator(); i.hasNext();)
+        for (Cache cache : caches.values())
         {
-            ((Cache) i.next()).clear();
+            cache.clear();
         }
         defaultCache.clear();
+        defaultKeyIndex.clear();
+        if (sizeTracker != null)
+        {
+            sizeTracker.cleared();
+        }
     }
 
     /* (non-Javadoc)
@@ -152,6 +254,10 @@ public class CacheonixLevel2Cache extends AbstractLevel2Cache
             return;
         }
 
+        if (sizeTracker != null)
+        {
+            sizeTracker.invalidate();
+        }
         evictAllOfClass(pcClass.getName());
         if (subclasses)
         {
@@ -173,31 +279,17 @@ public class CacheonixLevel2Cache extends AbstractLevel2Cache
         if (cmd.usesSingleFieldIdentityClass() || cmd.getIdentityType() == IdentityType.DATASTORE)
         {
             cache = caches.get(cmd.getFullClassName());
-            cache.clear();
+            if (cache != null)
+            {
+                cache.clear();
+            }
         }
         else
         {
-            cache = defaultCache;
-            Iterator keyIter = cache.keySet().iterator();
-            while (keyIter.hasNext())
+            // Objects in the default cache, so use the index of its keys
+            for (Object key : defaultKeyIndex.removeClass(className))
             {
-                Object key = keyIter.next();
-                if (cmd.getIdentityType() == IdentityType.APPLICATION)
-                {
-                    String targetClassName = IdentityUtils.getTargetClassNameForIdentity(key);
-                    if (className.equals(targetClassName))
-                    {
-                        keyIter.remove();
-                    }
-                }
-                else if (cmd.getIdentityType() == IdentityType.DATASTORE)
-                {
-                    String targetClassName = IdentityUtils.getTargetClassNameForIdentity(key);
-                    if (className.equals(targetClassName))
-                    {
-                        keyIter.remove();
-                    }
-                }
+                defaultCache.remove(key);
             }
         }
     }
@@ -208,9 +300,9 @@ public class CacheonixLevel2Cache extends AbstractLevel2Cache
     public int getSize()
     {
         int size = defaultCache.size();
-        for (Iterator i = caches.values().iterator(); i.hasNext();)
+        for (Cache cache : caches.values())
         {
-            size += ((Cache) i.next()).size();
+            size += cache.size();
         }
         return size;
     }
@@ -232,20 +324,31 @@ public class CacheonixLevel2Cache extends AbstractLevel2Cache
         {
             return null;
         }
-        else if (maxSize >= 0 && getSize() == maxSize)
+        else if (sizeTracker != null && sizeTracker.isFull())
         {
             return null;
         }
 
         try
         {
+            Cache cache = getCacheForId(oid);
+            Object previous;
             if (expiryMillis > 0)
             {
-                getCacheForId(oid).put((Serializable) oid, pc, expiryMillis);
+                previous = cache.put((Serializable) oid, pc, expiryMillis);
             }
             else
             {
-                getCacheForId(oid).put(oid, pc);
+                previous = cache.put(oid, pc);
+            }
+            if (cache == defaultCache)
+            {
+                defaultKeyIndex.add(pc.getObjectClass().getName(), oid);
+                pruneKeyIndexIfDue();
+            }
+            if (previous == null && sizeTracker != null)
+            {
+                sizeTracker.added();
             }
         }
         catch (RuntimeException re)
@@ -279,21 +382,25 @@ public class CacheonixLevel2Cache extends AbstractLevel2Cache
         Cache cache = caches.get(cacheName);
         if (cache == null)
         {
-            cache = cacheManager.getCache(cacheName);
-            if (cache == null)
+            // Resolve it once, with concurrent callers for the same class waiting for that
+            cache = caches.computeIfAbsent(cacheName, name ->
             {
-                cache = cacheManager.createCache(cacheName);
-            }
-            caches.put(cacheName, cache);
+                Cache namedCache = cacheManager.getCache(name);
+                return (namedCache != null) ? namedCache : cacheManager.createCache(name);
+            });
         }
         return cache;
     }
 
     private Cache getCacheForId(Object id)
     {
-        if (IdentityUtils.isSingleFieldIdentity(id) || IdentityUtils.isDatastoreIdentity(id))
+        if (id instanceof SingleFieldId)
+        {
+            return getCacheForClass(((SingleFieldId)id).getTargetClassName());
+        }
+        else if (id instanceof DatastoreId)
         {
-            return getCacheForClass(IdentityUtils.getTargetClassNameForIdentity(id));
+            return getCacheForClass(((DatastoreId)id).getTargetClassName());
         }
         return defaultCache;
     }
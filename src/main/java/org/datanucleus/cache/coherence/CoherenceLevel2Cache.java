@@ -19,32 +19,86 @@ Contributors:
 **********************************************************************/
 package org.datanucleus.cache.coherence;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.datanucleus.ClassLoaderResolver;
+import org.datanucleus.Configuration;
 import org.datanucleus.NucleusContext;
 import org.datanucleus.cache.AbstractLevel2Cache;
 import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.near.InvalidationListener;
+import org.datanucleus.cache.near.InvalidationNotifier;
+import org.datanucleus.cache.support.SingleFlight;
+import org.datanucleus.cache.support.SizeTracker;
+import org.datanucleus.cache.support.WriteBehindQueue;
 import org.datanucleus.util.ClassUtils;
 import org.datanucleus.util.Localiser;
 import org.datanucleus.util.NucleusLogger;
 
 import com.tangosol.net.CacheFactory;
+import com.tangosol.net.CacheService;
+import com.tangosol.net.Member;
 import com.tangosol.net.NamedCache;
+import com.tangosol.net.PartitionedService;
+import com.tangosol.util.Filter;
+import com.tangosol.util.MapEvent;
+import com.tangosol.util.MapListener;
+import com.tangosol.util.ValueExtractor;
+import com.tangosol.util.extractor.ChainedExtractor;
+import com.tangosol.util.filter.AlwaysFilter;
+import com.tangosol.util.filter.InFilter;
+import com.tangosol.util.processor.ConditionalRemove;
 
 /**
  * Simple implementation of a plugin for use of Oracles Coherence distributed caching product with 
  * DataNucleus. Please refer to <a href="http://www.tangosol.com">www.tangosol.com</a>
  * for full details of their products. This plugin simply provides a wrapper
  * to the Coherence "NamedCache" to allow its use in DataNucleus.
+ * Reads are made without locking, and puts only replace a cached object when its version is not older (see VersionedPutProcessor),
+ * so a put of an object read before a concurrent update doesn't overwrite the newer version. Setting "coherence.lockOnGet" restores
+ * the previous behaviour of locking the key around each get, with plain puts.
+ * The bulk methods (getAll, putAll, evictAll) use the NamedCache bulk operations, so cost one request per partition owner.
+ * Eviction of a class is a filtered removal on the (indexed) class name of the cached objects.
+ * Invalidation listeners are notified of changes to the NamedCache using (lite) Coherence map events.
+ * When "writeBehind" is enabled puts are queued and written in batches by a background thread (see WriteBehindQueue).
+ * When "singleFlight" is enabled only one thread (across the cluster, using leases held in the NamedCache "{cacheName}-leases")
+ * loads a missing object, with the others waiting briefly for its put (see SingleFlight).
  */
-public class CoherenceLevel2Cache extends AbstractLevel2Cache
+public class CoherenceLevel2Cache extends AbstractLevel2Cache implements InvalidationNotifier
 {
     private static final long serialVersionUID = -8366039798215561285L;
 
+    /** Extractor of the class name of a CachedPC, indexed for use in class eviction. */
+    private static final ValueExtractor CLASS_NAME_EXTRACTOR = new ChainedExtractor("getObjectClass.getName");
+
+    public static final String PROPERTY_CACHE_L2_COHERENCE_LOCK_ON_GET = "datanucleus.cache.level2.coherence.lockOnGet";
+
     private NamedCache cache;
 
+    /** Coherence map listeners registered for the invalidation listeners. */
+    private final Map<InvalidationListener, MapListener> mapListeners = new ConcurrentHashMap<>();
+
+    /** Queue of puts to write in the background, when using write-behind. */
+    private WriteBehindQueue writeBehind;
+
+    /** Stampede protection for misses, when enabled. */
+    private SingleFlight singleFlight;
+
+    /** Approximate (cluster-wide) size of the cache, for enforcing maxSize without a size request per put. */
+    private SizeTracker sizeTracker;
+
+    /** Whether to lock the key around each get (and use plain puts), rather than use versioned puts. */
+    private boolean lockOnGet;
+
     /**
      * Constructor.
      * @param nucleusCtx Context
@@ -60,6 +114,57 @@ public class CoherenceLevel2Cache extends AbstractLevel2Cache
 
         // Access the NamedCache
         cache = CacheFactory.getCache(cacheName);
+        cache.addIndex(CLASS_NAME_EXTRACTOR, false, null);
+
+        Configuration conf = nucleusCtx.getConfiguration();
+        lockOnGet = conf.getBooleanProperty(PROPERTY_CACHE_L2_COHERENCE_LOCK_ON_GET);
+        writeBehind = WriteBehindQueue.create(conf, cacheName, this::writeAll);
+        sizeTracker = SizeTracker.create(conf, maxSize, this::getSize);
+        if (conf.getBooleanProperty(SingleFlight.PROPERTY_CACHE_L2_SINGLE_FLIGHT))
+        {
+            singleFlight = SingleFlight.create(conf, new CoherenceLease(CacheFactory.getCache(cacheName + "-leases")));
+        }
+    }
+
+    /**
+     * Lease on loading an object, held as an (expiring) entry in a NamedCache of leases.
+     */
+    private static class CoherenceLease implements SingleFlight.DistributedLease
+    {
+        private final NamedCache leases;
+
+        CoherenceLease(NamedCache leases)
+        {
+            this.leases = leases;
+        }
+
+        @Override
+        public boolean acquire(Object oid, long leaseMillis)
+        {
+            if (!leases.lock(oid, 0))
+            {
+                return false;
+            }
+            try
+            {
+                if (leases.containsKey(oid))
+                {
+                    return false;
+                }
+                leases.put(oid, Boolean.TRUE, leaseMillis);
+                return true;
+            }
+            finally
+            {
+                leases.unlock(oid);
+            }
+        }
+
+        @Override
+        public void release(Object oid)
+        {
+            leases.remove(oid);
+        }
     }
 
     /**
@@ -67,12 +172,66 @@ public class CoherenceLevel2Cache extends AbstractLevel2Cache
      */
     public void close()
     {
+        if (sizeTracker != null)
+        {
+            sizeTracker.close();
+        }
+        if (writeBehind != null)
+        {
+            writeBehind.close();
+        }
+        for (MapListener mapListener : mapListeners.values())
+        {
+            cache.removeMapListener(mapListener, (Filter)null);
+        }
+        mapListeners.clear();
+
         if (clearAtClose)
         {
             evictAll();
         }
     }
 
+    /**
+     * Method to register a listener for changes to entries of the NamedCache (by any cluster member).
+     * @param listener The listener
+     */
+    public void addInvalidationListener(final InvalidationListener listener)
+    {
+        MapListener mapListener = new MapListener()
+        {
+            public void entryInserted(MapEvent evt)
+            {
+                listener.invalidate(Collections.singletonList(evt.getKey()));
+            }
+
+            public void entryUpdated(MapEvent evt)
+            {
+                listener.invalidate(Collections.singletonList(evt.getKey()));
+            }
+
+            public void entryDeleted(MapEvent evt)
+            {
+                listener.invalidate(Collections.singletonList(evt.getKey()));
+            }
+        };
+        mapListeners.put(listener, mapListener);
+        cache.addMapListener(mapListener, (Filter)null, true);
+    }
+
+    /**
+     * Method to deregister a listener for changes to entries of the NamedCache.
+     * @param listener The listener
+     */
+    public void removeInvalidationListener(InvalidationListener listener)
+    {
+        MapListener mapListener = mapListeners.remove(listener);
+        if (mapListener != null)
+        {
+            cache.removeMapListener(mapListener, (Filter)null);
+        }
+    }
+
     /**
      * Accessor for the backing Coherence cache.
      * This is provided so that users can add much more elaborate control over their cache
@@ -130,16 +289,79 @@ public class CoherenceLevel2Cache extends AbstractLevel2Cache
      */
     public CachedPC get(Object oid)
     {
-        // Lock the cache to prevent unnecessary DB reads.
-        cache.lock(oid, -1);
-        try
+        if (writeBehind != null)
+        {
+            CachedPC pc = writeBehind.getPending(oid);
+            if (pc != null)
+            {
+                return pc;
+            }
+        }
+
+        CachedPC pc;
+        if (lockOnGet)
+        {
+            // Lock the cache to prevent unnecessary DB reads.
+            cache.lock(oid, -1);
+            try
+            {
+                pc = (CachedPC)cache.get(oid);
+            }
+            finally
+            {
+                cache.unlock(oid);
+            }
+        }
+        else
+        {
+            pc = (CachedPC)cache.get(oid);
+        }
+
+        if (pc == null && singleFlight != null)
+        {
+            // Either wait for another loader, or load it (returning null)
+            return singleFlight.afterMiss(oid, id -> (CachedPC)cache.get(id));
+        }
+        return pc;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.AbstractLevel2Cache#getAll(java.util.Collection)
+     */
+    @Override
+    public Map<Object, CachedPC> getAll(Collection oids)
+    {
+        if (oids == null)
+        {
+            return null;
+        }
+
+        Map<Object, CachedPC> objs = new HashMap<>();
+        if (writeBehind != null)
         {
-            return (CachedPC)cache.get(oid);
+            // Use any queued puts, and only retrieve the rest
+            List<Object> remainingOids = new ArrayList<>(oids.size());
+            for (Object oid : oids)
+            {
+                CachedPC pc = writeBehind.getPending(oid);
+                if (pc != null)
+                {
+                    objs.put(oid, pc);
+                }
+                else
+                {
+                    remainingOids.add(oid);
+                }
+            }
+            oids = remainingOids;
         }
-        finally
+        if (oids.isEmpty())
         {
-            cache.unlock(oid);
+            return objs;
         }
+
+        objs.putAll(cache.getAll(oids));
+        return objs;
     }
 
     /**
@@ -173,12 +395,134 @@ public class CoherenceLevel2Cache extends AbstractLevel2Cache
             NucleusLogger.CACHE.warn(Localiser.msg("004011"));
             return null;
         }
-        else if (maxSize >= 0 && getSize() == maxSize)
+
+        if (singleFlight != null)
+        {
+            singleFlight.loaded(oid, pc);
+        }
+        if (sizeTracker != null && sizeTracker.isFull())
+        {
+            return null;
+        }
+        else if (writeBehind != null && writeBehind.offer(oid, pc))
         {
             return null;
         }
 
-        return (CachedPC) cache.put(oid, pc);
+        CachedPC previous;
+        if (lockOnGet)
+        {
+            previous = (CachedPC) cache.put(oid, pc);
+        }
+        else
+        {
+            previous = (CachedPC) cache.invoke(oid, new VersionedPutProcessor(Collections.singletonMap(oid, pc)));
+        }
+        if (previous == null && sizeTracker != null)
+        {
+            sizeTracker.added();
+        }
+        return previous;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.AbstractLevel2Cache#putAll(java.util.Map)
+     */
+    @Override
+    public void putAll(Map<Object, CachedPC> objs)
+    {
+        if (objs == null || objs.isEmpty())
+        {
+            return;
+        }
+        else if (sizeTracker != null && sizeTracker.isFull())
+        {
+            return;
+        }
+
+        Map<Object, CachedPC> unqueued = new HashMap<>();
+        for (Map.Entry<Object, CachedPC> entry : objs.entrySet())
+        {
+            if (entry.getKey() == null || entry.getValue() == null)
+            {
+                NucleusLogger.CACHE.warn(Localiser.msg("004011"));
+                continue;
+            }
+
+            if (singleFlight != null)
+            {
+                singleFlight.loaded(entry.getKey(), entry.getValue());
+            }
+            if (writeBehind == null || !writeBehind.offer(entry.getKey(), entry.getValue()))
+            {
+                unqueued.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!unqueued.isEmpty())
+        {
+            writeAll(unqueued);
+        }
+    }
+
+    /**
+     * Method to write the specified objects to the NamedCache (used by write-behind).
+     * @param objs The objects to write, keyed by id
+     */
+    private void writeAll(Map<Object, CachedPC> objs)
+    {
+        if (lockOnGet)
+        {
+            cache.putAll(objs);
+            if (sizeTracker != null)
+            {
+                // Includes replaced objects, corrected on reconciliation
+                sizeTracker.added(objs.size());
+            }
+        }
+        else
+        {
+            int replaced = 0;
+            for (Map<Object, CachedPC> ownerObjs : groupByOwner(objs))
+            {
+                // The processor carries its values, so only send each owner the values it owns
+                Map<Object, Object> previous = cache.invokeAll(ownerObjs.keySet(), new VersionedPutProcessor(ownerObjs));
+                for (Object value : previous.values())
+                {
+                    if (value != null)
+                    {
+                        replaced++;
+                    }
+                }
+            }
+            if (sizeTracker != null)
+            {
+                sizeTracker.added(objs.size() - replaced);
+            }
+        }
+    }
+
+    /**
+     * Method to split the specified objects by the cluster member owning their ids, when the cache is partitioned.
+     * @param objs The objects, keyed by id
+     * @return The objects of each owner (just the objects passed in when not partitioned)
+     */
+    private Collection<Map<Object, CachedPC>> groupByOwner(Map<Object, CachedPC> objs)
+    {
+        CacheService service = cache.getCacheService();
+        if (objs.size() == 1 || !(service instanceof PartitionedService))
+        {
+            return Collections.singleton(objs);
+        }
+
+        PartitionedService partitionedService = (PartitionedService)service;
+        Map<Member, Map<Object, CachedPC>> objsByOwner = new HashMap<>();
+        for (Map.Entry<Object, CachedPC> entry : objs.entrySet())
+        {
+            // Owner can be null when there is no storage-enabled member, and can change before the invoke (only costing a hop)
+            Member owner = partitionedService.getKeyOwner(entry.getKey());
+            objsByOwner.computeIfAbsent(owner, m -> new HashMap<>()).put(entry.getKey(), entry.getValue());
+        }
+        return objsByOwner.values();
     }
 
     /**
@@ -187,7 +531,18 @@ public class CoherenceLevel2Cache extends AbstractLevel2Cache
      */
     public void evict(Object oid)
     {
-        cache.remove(oid);
+        if (writeBehind != null)
+        {
+            writeBehind.cancel(oid);
+        }
+        if (singleFlight != null)
+        {
+            singleFlight.cancel(oid);
+        }
+        if (cache.remove(oid) != null && sizeTracker != null)
+        {
+            sizeTracker.removed();
+        }
     }
 
     /**
@@ -196,7 +551,19 @@ public class CoherenceLevel2Cache extends AbstractLevel2Cache
      */
     public void evictAll()
     {
+        if (writeBehind != null)
+        {
+            writeBehind.cancelAll();
+        }
+        if (singleFlight != null)
+        {
+            singleFlight.cancelAll();
+        }
         cache.clear();
+        if (sizeTracker != null)
+        {
+            sizeTracker.cleared();
+        }
     }
 
     /**
@@ -206,7 +573,36 @@ public class CoherenceLevel2Cache extends AbstractLevel2Cache
      */
     public void evictAll(Class pcClass, boolean subclasses)
     {
-        // Not supported. Do nothing
+        if (!nucleusCtx.getApiAdapter().isPersistable(pcClass))
+        {
+            return;
+        }
+
+        Set<String> classNames = new HashSet<>();
+        classNames.add(pcClass.getName());
+        if (subclasses)
+        {
+            String[] subclassNames = nucleusCtx.getMetaDataManager().getSubclassesForClass(pcClass.getName(), true);
+            if (subclassNames != null)
+            {
+                classNames.addAll(Arrays.asList(subclassNames));
+            }
+        }
+
+        // Queued puts and leases aren't held by class, so cancel them all
+        if (writeBehind != null)
+        {
+            writeBehind.cancelAll();
+        }
+        if (singleFlight != null)
+        {
+            singleFlight.cancelAll();
+        }
+        if (sizeTracker != null)
+        {
+            sizeTracker.invalidate();
+        }
+        cache.invokeAll(new InFilter(CLASS_NAME_EXTRACTOR, classNames), new ConditionalRemove(AlwaysFilter.INSTANCE));
     }
 
     /**
@@ -215,15 +611,26 @@ public class CoherenceLevel2Cache extends AbstractLevel2Cache
      */
     public void evictAll(Collection oids)
     {
-        if (oids == null)
+        if (oids == null || oids.isEmpty())
         {
             return;
         }
 
-        Iterator iter = oids.iterator();
-        while (iter.hasNext())
+        if (writeBehind != null)
+        {
+            writeBehind.cancelAll(oids);
+        }
+        if (singleFlight != null)
         {
-            evict(iter.next());
+            for (Object oid : oids)
+            {
+                singleFlight.cancel(oid);
+            }
+        }
+        cache.invokeAll(oids, new ConditionalRemove(AlwaysFilter.INSTANCE));
+        if (sizeTracker != null)
+        {
+            sizeTracker.invalidate();
         }
     }
 
@@ -238,9 +645,6 @@ public class CoherenceLevel2Cache extends AbstractLevel2Cache
             return;
         }
 
-        for (int i=0;i<oids.length;i++)
-        {
-            evict(oids[i]);
-        }
+        evictAll(Arrays.asList(oids));
     }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.coherence;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.support.CachedPCVersions;
+
+import com.tangosol.util.InvocableMap;
+import com.tangosol.util.processor.AbstractProcessor;
+
+/**
+ * Entry processor that puts a CachedPC into a Coherence NamedCache only when its version is not older than the version
+ * of the CachedPC already cached. This allows reads of the cache without locking, since a put of an object read before a
+ * concurrent update can no longer overwrite the newer version.
+ * Versions are compared using CachedPCVersions, so when not comparable the put always happens.
+ * The processor is executed on the cluster member owning each entry, so this class has to be in the classpath of the cache servers.
+ * Returns the previously cached object (if any).
+ * The processor (with all of its values) is sent to every member owning one of the keys invoked, so an invokeAll should only
+ * be given the values of the keys owned by one member.
+ */
+public class VersionedPutProcessor extends AbstractProcessor<Object, CachedPC, CachedPC> implements Serializable
+{
+    private static final long serialVersionUID = 3457624896720365122L;
+
+    /** Objects to put, keyed by id. */
+    private final Map<Object, CachedPC> values;
+
+    /**
+     * Constructor.
+     * @param values The objects to put, keyed by their id
+     */
+    public VersionedPutProcessor(Map<Object, CachedPC> values)
+    {
+        this.values = values;
+    }
+
+    /* (non-Javadoc)
+     * @see com.tangosol.util.InvocableMap.EntryProcessor#process(com.tangosol.util.InvocableMap.Entry)
+     */
+    @Override
+    public CachedPC process(InvocableMap.Entry<Object, CachedPC> entry)
+    {
+        CachedPC pc = values.get(entry.getKey());
+        if (pc == null)
+        {
+            return null;
+        }
+
+        CachedPC existing = entry.isPresent() ? entry.getValue() : null;
+        if (existing == null || !CachedPCVersions.isOlder(pc.getVersion(), existing.getVersion()))
+        {
+            entry.setValue(pc, false);
+        }
+        return existing;
+    }
+}
@@ -0,0 +1,107 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.ehcache;
+
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.support.ClassKeyIndex;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+/**
+ * Ehcache listener maintaining a ClassKeyIndex of the keys of a cache, including removals due to expiry and eviction by Ehcache.
+ */
+class ClassKeyIndexListener extends CacheEventListenerAdapter
+{
+    private final ClassKeyIndex keyIndex;
+
+    ClassKeyIndexListener(ClassKeyIndex keyIndex)
+    {
+        this.keyIndex = keyIndex;
+    }
+
+    /**
+     * Method to index the keys already in the cache, and register a listener to maintain the index.
+     * @param cache The cache
+     * @param keyIndex The index
+     */
+    static void register(Ehcache cache, ClassKeyIndex keyIndex)
+    {
+        ClassKeyIndexListener listener = new ClassKeyIndexListener(keyIndex);
+        cache.getCacheEventNotificationService().registerListener(listener);
+        for (Object key : cache.getKeys())
+        {
+            listener.notifyElementPut(cache, cache.getQuiet(key));
+        }
+    }
+
+    @Override
+    public void notifyElementPut(Ehcache cache, Element element)
+    {
+        String className = getClassName(element);
+        if (className != null)
+        {
+            keyIndex.add(className, element.getObjectKey());
+        }
+    }
+
+    @Override
+    public void notifyElementUpdated(Ehcache cache, Element element)
+    {
+        notifyElementPut(cache, element);
+    }
+
+    @Override
+    public void notifyElementRemoved(Ehcache cache, Element element)
+    {
+        String className = getClassName(element);
+        if (className != null)
+        {
+            keyIndex.remove(className, element.getObjectKey());
+        }
+    }
+
+    @Override
+    public void notifyElementExpired(Ehcache cache, Element element)
+    {
+        notifyElementRemoved(cache, element);
+    }
+
+    @Override
+    public void notifyElementEvicted(Ehcache cache, Element element)
+    {
+        notifyElementRemoved(cache, element);
+    }
+
+    @Override
+    public void notifyRemoveAll(Ehcache cache)
+    {
+        keyIndex.clear();
+    }
+
+    private static String getClassName(Element element)
+    {
+        Object value = (element != null) ? element.getObjectValue() : null;
+        if (value instanceof CachedPC && ((CachedPC)value).getObjectClass() != null)
+        {
+            return ((CachedPC)value).getObjectClass().getName();
+        }
+        return null;
+    }
+}
@@ -19,17 +19,20 @@ package org.datanucleus.cache.ehcache;
 
 import java.io.Serializable;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.datanucleus.NucleusContext;
 import org.datanucleus.PropertyNames;
 import org.datanucleus.Configuration;
 import org.datanucleus.cache.AbstractLevel2Cache;
 import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.support.ClassKeyIndex;
+import org.datanucleus.cache.support.SizeTracker;
 import org.datanucleus.exceptions.NucleusException;
-import org.datanucleus.identity.IdentityUtils;
+import org.datanucleus.identity.DatastoreId;
+import org.datanucleus.identity.SingleFieldId;
 import org.datanucleus.metadata.AbstractClassMetaData;
 import org.datanucleus.metadata.IdentityType;
 import org.datanucleus.util.NucleusLogger;
@@ -43,6 +46,8 @@ import net.sf.ehcache.Element;
 /**
  * Plugin for EHCache that allows the user to use different caches for different classes.
  * Based on the EhcacheLevel2Cache class.
+ * Objects with single-field or datastore identity use the cache of their class, and other objects the default cache,
+ * whose keys are indexed by class for class eviction.
  */
 public class EhcacheClassBasedLevel2Cache extends AbstractLevel2Cache
 {
@@ -57,7 +62,14 @@ public class EhcacheClassBasedLevel2Cache extends AbstractLevel2Cache
 
     private final Cache defaultCache;
 
-    private final Map<String, Cache> caches = new HashMap();
+    /** Map of cache keyed by the class name, resolved on first use (the default cache when the class has no cache of its own). */
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    /** Approximate size of the caches, for enforcing maxSize. */
+    private final SizeTracker sizeTracker;
+
+    /** Index of the keys in the default cache by class, for class eviction. */
+    private final ClassKeyIndex defaultKeyIndex = new ClassKeyIndex();
 
     /**
      * Constructor.
@@ -98,6 +110,8 @@ public class EhcacheClassBasedLevel2Cache extends AbstractLevel2Cache
             }
         }
         defaultCache = cacheManager.getCache(cacheName);
+        ClassKeyIndexListener.register(defaultCache, defaultKeyIndex);
+        sizeTracker = SizeTracker.create(conf, maxSize, this::getSize);
     }
 
     /**
@@ -105,6 +119,10 @@ public class EhcacheClassBasedLevel2Cache extends AbstractLevel2Cache
      */
     public void close()
     {
+        if (sizeTracker != null)
+        {
+            sizeTracker.close();
+        }
         if (clearAtClose)
         {
             evictAll();
@@ -188,9 +206,12 @@ public class EhcacheClassBasedLevel2Cache extends AbstractLevel2Cache
         try
         {
             int size = defaultCache.getSize();
-            for (Iterator<Cache> i = caches.values().iterator(); i.hasNext();)
+            for (Cache cache : caches.values())
             {
-                size += i.next().getSize();
+                if (cache != defaultCache)
+                {
+                    size += cache.getSize();
+                }
             }
             return size;
         }
@@ -216,13 +237,12 @@ public class EhcacheClassBasedLevel2Cache extends AbstractLevel2Cache
         {
             return null;
         }
-        else if (maxSize >= 0 && getSize() == maxSize)
+        else if (sizeTracker != null && sizeTracker.isFull())
         {
             return null;
         }
 
-        getCacheForId(oid).put(toElement(oid, pc));
-
+        EhcacheLevel2Cache.putElement(getCacheForId(oid), toElement(oid, pc), sizeTracker);
         return pc;
     }
 
@@ -233,9 +253,9 @@ public class EhcacheClassBasedLevel2Cache extends AbstractLevel2Cache
     public void evict(Object oid)
     {
         Object pc = get(oid);
-        if (pc != null)
+        if (pc != null && getCacheForId(oid).remove((Serializable)oid) && sizeTracker != null)
         {
-            getCacheForId(oid).remove((Serializable)oid);
+            sizeTracker.removed();
         }
     }
 
@@ -248,11 +268,18 @@ public class EhcacheClassBasedLevel2Cache extends AbstractLevel2Cache
     {
         try
         {
-            for (Iterator<Cache> i = caches.values().iterator(); i.hasNext();)
+            for (Cache cache : caches.values())
             {
-                i.next().removeAll();
+                if (cache != defaultCache)
+                {
+                    cache.removeAll();
+                }
             }
             defaultCache.removeAll();
+            if (sizeTracker != null)
+            {
+                sizeTracker.cleared();
+            }
         }
         catch (Exception e)
         {
@@ -272,6 +299,10 @@ public class EhcacheClassBasedLevel2Cache extends AbstractLevel2Cache
             return;
         }
 
+        if (sizeTracker != null)
+        {
+            sizeTracker.invalidate();
+        }
         evictAllOfClass(pcClass.getName());
         if (subclasses)
         {
@@ -294,31 +325,18 @@ public class EhcacheClassBasedLevel2Cache extends AbstractLevel2Cache
         if (cmd.usesSingleFieldIdentityClass() || cmd.getIdentityType() == IdentityType.DATASTORE)
         {
             cache = caches.get(cmd.getFullClassName());
+        }
+
+        if (cache != null && cache != defaultCache)
+        {
             cache.removeAll();
         }
         else
         {
-            cache = defaultCache;
-            Iterator keyIter = cache.getKeys().iterator();
-            while (keyIter.hasNext())
+            // Objects in the default cache, so use the index of its keys
+            for (Object key : defaultKeyIndex.removeClass(className))
             {
-                Object key = keyIter.next();
-                if (cmd.getIdentityType() == IdentityType.APPLICATION)
-                {
-                    String targetClassName = IdentityUtils.getTargetClassNameForIdentity(key);
-                    if (className.equals(targetClassName))
-                    {
-                        keyIter.remove();
-                    }
-                }
-                else if (cmd.getIdentityType() == IdentityType.DATASTORE)
-                {
-                    String targetClassName = IdentityUtils.getTargetClassNameForIdentity(key);
-                    if (className.equals(targetClassName))
-                    {
-                        keyIter.remove();
-                    }
-                }
+                defaultCache.remove((Serializable) key);
             }
         }
     }
@@ -362,43 +380,54 @@ public class EhcacheClassBasedLevel2Cache extends AbstractLevel2Cache
     {
         Cache cache = caches.get(pcClassName);
         if (cache == null)
+        {
+            // Resolve it once, with concurrent callers for the same class waiting for that
+            cache = caches.computeIfAbsent(pcClassName, this::resolveCacheForClass);
+        }
+        return cache;
+    }
+
+    private Cache resolveCacheForClass(String pcClassName)
+    {
+        Cache cache;
+        if (NucleusLogger.CACHE.isDebugEnabled())
+        {
+            NucleusLogger.CACHE.debug(Localiser.msg("Cache.EHCache.Initialising", pcClassName));
+        }
+        if (cacheManager.cacheExists(pcClassName))
         {
             if (NucleusLogger.CACHE.isDebugEnabled())
             {
-                NucleusLogger.CACHE.debug(Localiser.msg("Cache.EHCache.Initialising", pcClassName));
+                NucleusLogger.CACHE.debug(Localiser.msg("Cache.EHCache.Exists", pcClassName));
             }
-            if (cacheManager.cacheExists(pcClassName))
+            cache = cacheManager.getCache(pcClassName);
+        }
+        else
+        {
+            // if defaultCache is null, there should be a warning here for the user,
+            // that he either needs to define the cache for the class, or give a default                
+            if (NucleusLogger.CACHE.isDebugEnabled())
             {
-                if (NucleusLogger.CACHE.isDebugEnabled())
-                {
-                    NucleusLogger.CACHE.debug(Localiser.msg("Cache.EHCache.Exists", pcClassName));
-                }
-                cache = cacheManager.getCache(pcClassName);
+                NucleusLogger.CACHE.debug(Localiser.msg("Cache.EHCache.CacheDoesntExist"));
             }
-            else
+            if (defaultCache == null)
             {
-                // if defaultCache is null, there should be a warning here for the user,
-                // that he either needs to define the cache for the class, or give a default                
-                if (NucleusLogger.CACHE.isDebugEnabled())
-                {
-                    NucleusLogger.CACHE.debug(Localiser.msg("Cache.EHCache.CacheDoesntExist"));
-                }
-                if (defaultCache == null)
-                {
-                    NucleusLogger.CACHE.error(Localiser.msg("Cache.EHCache.CacheDoestExistNoDefault", pcClassName));
-                }
-                cache = defaultCache;
+                NucleusLogger.CACHE.error(Localiser.msg("Cache.EHCache.CacheDoestExistNoDefault", pcClassName));
             }
-            caches.put(pcClassName, cache);
+            cache = defaultCache;
         }
         return cache;
     }
 
     private Cache getCacheForId(Object id)
     {
-        if (IdentityUtils.isSingleFieldIdentity(id) || IdentityUtils.isDatastoreIdentity(id))
+        if (id instanceof SingleFieldId)
+        {
+            return getCacheForClass(((SingleFieldId)id).getTargetClassName());
+        }
+        else if (id instanceof DatastoreId)
         {
-            return getCacheForClass(IdentityUtils.getTargetClassNameForIdentity(id));
+            return getCacheForClass(((DatastoreId)id).getTargetClassName());
         }
         return defaultCache;
     }
@@ -26,10 +26,10 @@ import org.datanucleus.PropertyNames;
 import org.datanucleus.Configuration;
 import org.datanucleus.cache.AbstractLevel2Cache;
 import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.support.ClassKeyIndex;
+import org.datanucleus.cache.support.SingleFlight;
+import org.datanucleus.cache.support.SizeTracker;
 import org.datanucleus.exceptions.NucleusException;
-import org.datanucleus.identity.IdentityUtils;
-import org.datanucleus.metadata.AbstractClassMetaData;
-import org.datanucleus.metadata.IdentityType;
 import org.datanucleus.util.NucleusLogger;
 
 import net.sf.ehcache.Cache;
@@ -40,6 +40,8 @@ import net.sf.ehcache.Element;
 /**
  * Simple implementation of a plugin for use of Ehcache caching product with DataNucleus.
  * Please refer to <a href="http://ehcache.sourceforge.net">ehcache.sourceforge.net</a> for full details of their product. 
+ * The keys are indexed by the class of the cached object (maintained by a cache listener), so class eviction only touches the keys of that class.
+ * When "singleFlight" is enabled only one thread loads a missing object, with the others waiting briefly for its put (see SingleFlight).
  */
 public class EhcacheLevel2Cache extends AbstractLevel2Cache
 {
@@ -51,6 +53,15 @@ public class EhcacheLevel2Cache extends AbstractLevel2Cache
     /** The cache */
     private final Cache cache;
 
+    /** Stampede protection for misses, when enabled. */
+    private final SingleFlight singleFlight;
+
+    /** Approximate size of the cache, for enforcing maxSize. */
+    private final SizeTracker sizeTracker;
+
+    /** Index of the keys in the cache by class, for class eviction. */
+    private final ClassKeyIndex keyIndex = new ClassKeyIndex();
+
     /**
      * Constructor.
      * @param nucleusCtx Context
@@ -90,6 +101,9 @@ public class EhcacheLevel2Cache extends AbstractLevel2Cache
             }
         }
         cache = cacheManager.getCache(cacheName);
+        ClassKeyIndexListener.register(cache, keyIndex);
+        singleFlight = SingleFlight.create(conf, null);
+        sizeTracker = SizeTracker.create(conf, maxSize, this::getSize);
     }
 
     /**
@@ -97,6 +111,10 @@ public class EhcacheLevel2Cache extends AbstractLevel2Cache
      */
     public void close()
     {
+        if (sizeTracker != null)
+        {
+            sizeTracker.close();
+        }
         if (clearAtClose)
         {
             evictAll();
@@ -112,7 +130,7 @@ public class EhcacheLevel2Cache extends AbstractLevel2Cache
     {
         try
         {
-            return (get(oid) != null);
+            return (getFromCache(oid) != null);
         }
         catch (IllegalStateException e)
         {
@@ -126,6 +144,17 @@ public class EhcacheLevel2Cache extends AbstractLevel2Cache
      * @see org.datanucleus.cache.Level2Cache#get(java.lang.Object)
      */
     public CachedPC get(Object oid)
+    {
+        CachedPC pc = getFromCache(oid);
+        if (pc == null && singleFlight != null)
+        {
+            // Either wait for another loader, or load it (returning null)
+            return singleFlight.afterMiss(oid, this::getFromCache);
+        }
+        return pc;
+    }
+
+    private CachedPC getFromCache(Object oid)
     {
         try
         {
@@ -166,7 +195,29 @@ public class EhcacheLevel2Cache extends AbstractLevel2Cache
     private Element toElement(Object oid, CachedPC object)
     {
         return new Element((Serializable) oid, object);
-    }    
+    }
+
+    /**
+     * Method to put an element in a cache, counting it in the size tracker only when it is new (not a replacement).
+     * @param cache The cache
+     * @param element The element
+     * @param sizeTracker The size tracker (or null)
+     */
+    static void putElement(Cache cache, Element element, SizeTracker sizeTracker)
+    {
+        if (sizeTracker == null)
+        {
+            cache.put(element);
+        }
+        else if (cache.putIfAbsent(element) == null)
+        {
+            sizeTracker.added();
+        }
+        else
+        {
+            cache.put(element);
+        }
+    }
 
     /**
      * Accessor for the size of the cache.
@@ -200,13 +251,16 @@ public class EhcacheLevel2Cache extends AbstractLevel2Cache
         {
             return null;
         }
-        else if (maxSize >= 0 && getSize() == maxSize)
+        if (singleFlight != null)
+        {
+            singleFlight.loaded(oid, pc);
+        }
+        if (sizeTracker != null && sizeTracker.isFull())
         {
             return null;
         }
 
-        cache.put(toElement(oid, pc));
-        
+        putElement(cache, toElement(oid, pc), sizeTracker);
         return pc;
     }
 
@@ -216,10 +270,14 @@ public class EhcacheLevel2Cache extends AbstractLevel2Cache
      */
     public void evict(Object oid)
     {
-        Object pc = get(oid);
-        if (pc != null)
+        if (singleFlight != null)
         {
-            cache.remove((Serializable) oid);
+            singleFlight.cancel(oid);
+        }
+        Object pc = getFromCache(oid);
+        if (pc != null && cache.remove((Serializable) oid) && sizeTracker != null)
+        {
+            sizeTracker.removed();
         }
     }
 
@@ -230,9 +288,17 @@ public class EhcacheLevel2Cache extends AbstractLevel2Cache
      */
     public void evictAll()
     {
+        if (singleFlight != null)
+        {
+            singleFlight.cancelAll();
+        }
         try
         {
             cache.removeAll();
+            if (sizeTracker != null)
+            {
+                sizeTracker.cleared();
+            }
         }
         catch (Exception e)
         {
@@ -252,6 +318,14 @@ public class EhcacheLevel2Cache extends AbstractLevel2Cache
             return;
         }
 
+        if (singleFlight != null)
+        {
+            singleFlight.cancelAll();
+        }
+        if (sizeTracker != null)
+        {
+            sizeTracker.invalidate();
+        }
         evictAllOfClass(pcClass.getName());
         if (subclasses)
         {
@@ -268,28 +342,9 @@ public class EhcacheLevel2Cache extends AbstractLevel2Cache
 
     void evictAllOfClass(String className)
     {
-        AbstractClassMetaData cmd =
-            nucleusCtx.getMetaDataManager().getMetaDataForClass(className, nucleusCtx.getClassLoaderResolver(null));
-        Iterator keyIter = cache.getKeys().iterator();
-        while (keyIter.hasNext())
+        for (Object key : keyIndex.removeClass(className))
         {
-            Object key = keyIter.next();
-            if (cmd.getIdentityType() == IdentityType.APPLICATION)
-            {
-                String targetClassName = IdentityUtils.getTargetClassNameForIdentity(key);
-                if (className.equals(targetClassName))
-                {
-                    keyIter.remove();
-                }
-            }
-            else if (cmd.getIdentityType() == IdentityType.DATASTORE)
-            {
-                String targetClassName = IdentityUtils.getTargetClassNameForIdentity(key);
-                if (className.equals(targetClassName))
-                {
-                    keyIter.remove();
-                }
-            }
+            cache.remove((Serializable) key);
         }
     }
 
@@ -0,0 +1,84 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.ehcache3;
+
+import java.nio.ByteBuffer;
+
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.serializer.CacheSerializer;
+import org.datanucleus.exceptions.NucleusException;
+
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.serialization.SerializerException;
+
+/**
+ * Ehcache serializer for CachedPC objects stored in the off-heap and disk tiers, using the CacheSerializer of the Level2 cache
+ * (so the compact serializer and compression apply as for the remote caches).
+ */
+class CachedPCSerializer implements Serializer<CachedPC>
+{
+    private final CacheSerializer serializer;
+
+    CachedPCSerializer(CacheSerializer serializer)
+    {
+        this.serializer = serializer;
+    }
+
+    /* (non-Javadoc)
+     * @see org.ehcache.spi.serialization.Serializer#serialize(java.lang.Object)
+     */
+    @Override
+    public ByteBuffer serialize(CachedPC object)
+    {
+        try
+        {
+            return ByteBuffer.wrap(serializer.serialize(object));
+        }
+        catch (NucleusException ne)
+        {
+            throw new SerializerException(ne);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.ehcache.spi.serialization.Serializer#read(java.nio.ByteBuffer)
+     */
+    @Override
+    public CachedPC read(ByteBuffer binary)
+    {
+        byte[] bytes = new byte[binary.remaining()];
+        binary.get(bytes);
+        try
+        {
+            return (CachedPC) serializer.deserialize(bytes);
+        }
+        catch (NucleusException ne)
+        {
+            throw new SerializerException(ne);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.ehcache.spi.serialization.Serializer#equals(java.lang.Object, java.nio.ByteBuffer)
+     */
+    @Override
+    public boolean equals(CachedPC object, ByteBuffer binary)
+    {
+        return serialize(object).equals(binary);
+    }
+}
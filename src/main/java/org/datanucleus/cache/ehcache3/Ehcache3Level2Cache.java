@@ -0,0 +1,376 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.ehcache3;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.datanucleus.Configuration;
+import org.datanucleus.NucleusContext;
+import org.datanucleus.cache.AbstractLevel2Cache;
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.serializer.CacheSerializerFactory;
+import org.datanucleus.exceptions.NucleusUserException;
+import org.datanucleus.util.ClassUtils;
+
+import org.ehcache.Cache;
+import org.ehcache.CacheManager;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheEventListenerConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.EntryUnit;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.CacheEventListener;
+import org.ehcache.event.EventType;
+import org.ehcache.impl.serialization.PlainJavaSerializer;
+
+/**
+ * Plugin using <a href="https://www.ehcache.org">Ehcache 3</a> as a Level2 cache, with heap, off-heap and disk tiers
+ * configured from persistence properties :-
+ * <ul>
+ * <li>"ehcache3.heapEntries" : max number of objects held on heap (default 10000)</li>
+ * <li>"ehcache3.offHeapMB" : size of the off-heap tier (MB), not used if not set</li>
+ * <li>"ehcache3.diskMB" : size of the (non-persistent) disk tier (MB), not used if not set</li>
+ * <li>"ehcache3.diskPath" : directory for the disk tier (default "{java.io.tmpdir}/datanucleus-ehcache3")</li>
+ * </ul>
+ * Objects in the off-heap and disk tiers are stored serialized (using the Level2 cache serializer), so are not seen by the
+ * garbage collector, allowing millions of objects to be cached with only the most recently used on heap.
+ * The number of objects is counted from the (synchronous) cache events, since Ehcache only provides it via its statistics internals.
+ */
+public class Ehcache3Level2Cache extends AbstractLevel2Cache
+{
+    private static final long serialVersionUID = 2309583270193658341L;
+
+    public static final String PROPERTY_CACHE_L2_EHCACHE3_HEAP_ENTRIES = "datanucleus.cache.level2.ehcache3.heapEntries";
+    public static final String PROPERTY_CACHE_L2_EHCACHE3_OFFHEAP_MB = "datanucleus.cache.level2.ehcache3.offHeapMB";
+    public static final String PROPERTY_CACHE_L2_EHCACHE3_DISK_MB = "datanucleus.cache.level2.ehcache3.diskMB";
+    public static final String PROPERTY_CACHE_L2_EHCACHE3_DISK_PATH = "datanucleus.cache.level2.ehcache3.diskPath";
+
+    private final static int DEFAULT_HEAP_ENTRIES = 10000;
+
+    private final CacheManager cacheManager;
+
+    private final Cache<Object, CachedPC> cache;
+
+    /** Number of objects in the cache, maintained from the cache events (so only counting inserts, not replacements), and used to enforce maxSize. */
+    private final LongAdder entryCount = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param nucleusCtx Context
+     */
+    public Ehcache3Level2Cache(NucleusContext nucleusCtx)
+    {
+        super(nucleusCtx);
+
+        Configuration conf = nucleusCtx.getConfiguration();
+        ClassUtils.assertClassForJarExistsInClasspath(nucleusCtx.getClassLoaderResolver(null), "org.ehcache.CacheManager", "ehcache.jar");
+
+        int heapEntries = conf.getIntProperty(PROPERTY_CACHE_L2_EHCACHE3_HEAP_ENTRIES);
+        int offHeapMB = conf.getIntProperty(PROPERTY_CACHE_L2_EHCACHE3_OFFHEAP_MB);
+        int diskMB = conf.getIntProperty(PROPERTY_CACHE_L2_EHCACHE3_DISK_MB);
+        if (diskMB > 0 && offHeapMB > 0 && diskMB <= offHeapMB)
+        {
+            throw new NucleusUserException("Ehcache disk tier (" + diskMB + "MB) has to be larger than the off-heap tier (" + offHeapMB + "MB)");
+        }
+
+        ResourcePoolsBuilder pools = ResourcePoolsBuilder.newResourcePoolsBuilder().heap(heapEntries > 0 ? heapEntries : DEFAULT_HEAP_ENTRIES, EntryUnit.ENTRIES);
+        if (offHeapMB > 0)
+        {
+            pools = pools.offheap(offHeapMB, MemoryUnit.MB);
+        }
+        if (diskMB > 0)
+        {
+            pools = pools.disk(diskMB, MemoryUnit.MB);
+        }
+
+        CacheConfigurationBuilder<Object, CachedPC> cacheConfig = CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, CachedPC.class, pools)
+            .withKeySerializer(new PlainJavaSerializer<>(getKeyClassLoader()))
+            .withValueSerializer(new CachedPCSerializer(CacheSerializerFactory.getLevel2Serializer(nucleusCtx)))
+            .withService(CacheEventListenerConfigurationBuilder.newEventListenerConfiguration(new EntryCountListener(),
+                EventType.CREATED, EventType.REMOVED, EventType.EXPIRED, EventType.EVICTED).synchronous().unordered());
+        if (expiryMillis > 0)
+        {
+            cacheConfig = cacheConfig.withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofMillis(expiryMillis)));
+        }
+
+        CacheManagerBuilder<CacheManager> managerBuilder = CacheManagerBuilder.newCacheManagerBuilder().withCache(cacheName, cacheConfig);
+        if (diskMB > 0)
+        {
+            String diskPath = conf.getStringProperty(PROPERTY_CACHE_L2_EHCACHE3_DISK_PATH);
+            File diskDir = (diskPath != null) ? new File(diskPath) : new File(System.getProperty("java.io.tmpdir"), "datanucleus-ehcache3");
+            cacheManager = managerBuilder.with(CacheManagerBuilder.persistence(diskDir)).build(true);
+        }
+        else
+        {
+            cacheManager = managerBuilder.build(true);
+        }
+        cache = cacheManager.getCache(cacheName, Object.class, CachedPC.class);
+    }
+
+    /**
+     * Accessor for the class loader used to deserialize ids in the off-heap and disk tiers.
+     * @return The class loader
+     */
+    private ClassLoader getKeyClassLoader()
+    {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        return (loader != null) ? loader : getClass().getClassLoader();
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#close()
+     */
+    @Override
+    public void close()
+    {
+        if (clearAtClose)
+        {
+            evictAll();
+        }
+        cacheManager.close();
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#containsOid(java.lang.Object)
+     */
+    @Override
+    public boolean containsOid(Object oid)
+    {
+        return oid != null && cache.containsKey(oid);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#get(java.lang.Object)
+     */
+    @Override
+    public CachedPC get(Object oid)
+    {
+        if (oid == null)
+        {
+            return null;
+        }
+        return cache.get(oid);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.AbstractLevel2Cache#getAll(java.util.Collection)
+     */
+    @Override
+    public Map<Object, CachedPC> getAll(Collection oids)
+    {
+        if (oids == null)
+        {
+            return null;
+        }
+
+        Map<Object, CachedPC> objs = new HashMap<>();
+        for (Map.Entry<Object, CachedPC> entry : cache.getAll(new HashSet<Object>((Collection<?>) oids)).entrySet())
+        {
+            if (entry.getValue() != null)
+            {
+                objs.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return objs;
+    }
+
+    /**
+     * Accessor for the size of the cache, as counted from the cache events. Objects that have expired are counted until
+     * Ehcache notices their expiry.
+     * @see org.datanucleus.cache.Level2Cache#getSize()
+     */
+    @Override
+    public int getSize()
+    {
+        return Math.max(0, entryCount.intValue());
+    }
+
+    /**
+     * Accessor for whether the cache has reached its maximum size, so no more objects should be put.
+     * @return Whether the cache is full
+     */
+    private boolean isFull()
+    {
+        return maxSize >= 0 && entryCount.sum() >= maxSize;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#put(java.lang.Object, org.datanucleus.cache.CachedPC)
+     */
+    @Override
+    public CachedPC put(Object oid, CachedPC pc)
+    {
+        if (oid == null || pc == null)
+        {
+            return null;
+        }
+        else if (isFull())
+        {
+            return null;
+        }
+
+        cache.put(oid, pc);
+        return pc;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.AbstractLevel2Cache#putAll(java.util.Map)
+     */
+    @Override
+    public void putAll(Map<Object, CachedPC> objs)
+    {
+        if (objs == null || objs.isEmpty())
+        {
+            return;
+        }
+        else if (isFull())
+        {
+            return;
+        }
+
+        Map<Object, CachedPC> puts = new HashMap<>();
+        for (Map.Entry<Object, CachedPC> entry : objs.entrySet())
+        {
+            if (entry.getKey() != null && entry.getValue() != null)
+            {
+                puts.put(entry.getKey(), entry.getValue());
+            }
+        }
+        cache.putAll(puts);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#evict(java.lang.Object)
+     */
+    @Override
+    public void evict(Object oid)
+    {
+        if (oid != null)
+        {
+            cache.remove(oid);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#evictAll()
+     */
+    @Override
+    public void evictAll()
+    {
+        // Clearing doesn't send events
+        cache.clear();
+        entryCount.reset();
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#evictAll(java.util.Collection)
+     */
+    @Override
+    public void evictAll(Collection oids)
+    {
+        if (oids == null)
+        {
+            return;
+        }
+
+        cache.removeAll(new HashSet<Object>((Collection<?>) oids));
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#evictAll(java.lang.Object[])
+     */
+    @Override
+    public void evictAll(Object[] oids)
+    {
+        if (oids == null)
+        {
+            return;
+        }
+
+        evictAll(Arrays.asList(oids));
+    }
+
+    /**
+     * Evict the instances of the class from the cache. This iterates through the whole cache (including the off-heap
+     * and disk tiers), so is an expensive operation.
+     * @see org.datanucleus.cache.Level2Cache#evictAll(java.lang.Class, boolean)
+     */
+    @Override
+    public void evictAll(Class pcClass, boolean subclasses)
+    {
+        if (!nucleusCtx.getApiAdapter().isPersistable(pcClass))
+        {
+            return;
+        }
+
+        Set<String> classNames = new HashSet<>();
+        classNames.add(pcClass.getName());
+        if (subclasses)
+        {
+            String[] subclassNames = nucleusCtx.getMetaDataManager().getSubclassesForClass(pcClass.getName(), true);
+            if (subclassNames != null)
+            {
+                classNames.addAll(Arrays.asList(subclassNames));
+            }
+        }
+
+        Iterator<Cache.Entry<Object, CachedPC>> entryIter = cache.iterator();
+        while (entryIter.hasNext())
+        {
+            CachedPC pc = entryIter.next().getValue();
+            if (pc != null && classNames.contains(pc.getObjectClass().getName()))
+            {
+                entryIter.remove();
+            }
+        }
+    }
+
+    /**
+     * Listener maintaining the count of objects in the cache.
+     */
+    private class EntryCountListener implements CacheEventListener<Object, CachedPC>
+    {
+        /* (non-Javadoc)
+         * @see org.ehcache.event.CacheEventListener#onEvent(org.ehcache.event.CacheEvent)
+         */
+        @Override
+        public void onEvent(CacheEvent<? extends Object, ? extends CachedPC> event)
+        {
+            if (event.getType() == EventType.CREATED)
+            {
+                entryCount.increment();
+            }
+            else
+            {
+                entryCount.decrement();
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.key;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.datanucleus.exceptions.NucleusException;
+import org.datanucleus.identity.DatastoreId;
+import org.datanucleus.identity.DatastoreUniqueLongId;
+import org.datanucleus.identity.IntId;
+import org.datanucleus.identity.LongId;
+import org.datanucleus.identity.SingleFieldId;
+import org.datanucleus.identity.StringId;
+
+/**
+ * Encoder of object identities into the keys used in a remote cache.
+ * A key is made up of
+ * <ul>
+ * <li>a prefix of "{cacheName}:{discriminator}:" where the discriminator is the target class name for single-field and
+ * datastore identities, and the identity class name otherwise (including unique datastore identities, which have no target
+ * class). This prefix is generated once per discriminator.</li>
+ * <li>a type byte, followed by the raw key. Long and int keys are stored as 8/4 bytes, String keys as UTF-8, and any other
+ * identity as the UTF-8 of its toString() (which, for an application identity class, has to be unique).</li>
+ * </ul>
+ * When the resulting key would be longer than the maximum key length the raw key is replaced by its 128-bit MD5 hash.
+ * Binary keys are provided for stores supporting them (Redis), and ASCII keys (with no whitespace/control characters)
+ * for stores that don't (memcached).
+ * For a sharded store that supports hash tags (Redis Cluster) the prefix can be "{cacheName:discriminator}:" so that
+ * all keys of a class are held in the same shard.
+ */
+public class CacheKeyEncoder
+{
+    /** Maximum key length of memcached, and sensible default for other stores. */
+    public static final int DEFAULT_MAX_KEY_LENGTH = 250;
+
+    private static final byte TYPE_LONG = 'L';
+    private static final byte TYPE_INT = 'I';
+    private static final byte TYPE_STRING = 'S';
+    private static final byte TYPE_OTHER = 'O';
+    private static final byte TYPE_HASH = 'H';
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() ->
+    {
+        try
+        {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new NucleusException("MD5 digest not available", e);
+        }
+    });
+
+    private final String cacheName;
+
+    private final int maxKeyLength;
+
+    /** Whether to enclose "cacheName:discriminator" in braces, as a hash tag. */
+    private final boolean hashTag;
+
+    /** Binary key prefixes, keyed by the discriminator. */
+    private final Map<String, byte[]> keyPrefixes = new ConcurrentHashMap<>();
+
+    /** String key prefixes, keyed by the discriminator. */
+    private final Map<String, String> stringKeyPrefixes = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     * @param cacheName Name of the cache, used as the first part of all keys
+     * @param maxKeyLength Maximum length of a key (bytes)
+     */
+    public CacheKeyEncoder(String cacheName, int maxKeyLength)
+    {
+        this(cacheName, maxKeyLength, false);
+    }
+
+    /**
+     * Constructor.
+     * @param cacheName Name of the cache, used as the first part of all keys
+     * @param maxKeyLength Maximum length of a key (bytes)
+     * @param hashTag Whether the key prefix is a hash tag, so all keys with the same discriminator are in the same shard
+     */
+    public CacheKeyEncoder(String cacheName, int maxKeyLength, boolean hashTag)
+    {
+        this.cacheName = cacheName;
+        this.maxKeyLength = maxKeyLength;
+        this.hashTag = hashTag;
+    }
+
+    /**
+     * Accessor for the discriminator used in the key for the specified identity.
+     * @param id The identity
+     * @return The target class name where available, otherwise the identity class name
+     */
+    public String getDiscriminator(Object id)
+    {
+        if (id instanceof SingleFieldId)
+        {
+            return ((SingleFieldId<?>)id).getTargetClassName();
+        }
+        else if (id instanceof DatastoreUniqueLongId)
+        {
+            // Unique across all classes, and getTargetClassName() is unsupported
+            return id.getClass().getName();
+        }
+        else if (id instanceof DatastoreId)
+        {
+            return ((DatastoreId)id).getTargetClassName();
+        }
+        return id.getClass().getName();
+    }
+
+    /**
+     * Accessor for the prefix of all binary keys with the specified discriminator.
+     * @param discriminator The discriminator (class name)
+     * @return The key prefix
+     */
+    public byte[] getKeyPrefix(String discriminator)
+    {
+        byte[] prefix = keyPrefixes.get(discriminator);
+        if (prefix == null)
+        {
+            String prefixStr = hashTag ? "{" + cacheName + ":" + discriminator + "}:" : cacheName + ":" + discriminator + ":";
+            prefix = prefixStr.getBytes(StandardCharsets.UTF_8);
+            keyPrefixes.put(discriminator, prefix);
+        }
+        return prefix;
+    }
+
+    /**
+     * Accessor for the prefix of all String keys with the specified discriminator.
+     * @param discriminator The discriminator (class name)
+     * @return The key prefix
+     */
+    public String getStringKeyPrefix(String discriminator)
+    {
+        String prefix = stringKeyPrefixes.get(discriminator);
+        if (prefix == null)
+        {
+            StringBuilder str = new StringBuilder(cacheName.length() + discriminator.length() + 4);
+            if (hashTag)
+            {
+                str.append('{');
+            }
+            appendSafe(str, cacheName);
+            str.append(':');
+            appendSafe(str, discriminator);
+            if (hashTag)
+            {
+                str.append('}');
+            }
+            str.append(':');
+            prefix = str.toString();
+            stringKeyPrefixes.put(discriminator, prefix);
+        }
+        return prefix;
+    }
+
+    /**
+     * Method to return the binary key for the specified identity.
+     * @param id The identity
+     * @return The key
+     */
+    public byte[] getKey(Object id)
+    {
+        byte[] prefix = getKeyPrefix(getDiscriminator(id));
+        int pos = prefix.length;
+
+        Object keyValue = getKeyValue(id);
+        if (keyValue instanceof Long)
+        {
+            long value = (Long)keyValue;
+            byte[] key = Arrays.copyOf(prefix, pos + 9);
+            key[pos++] = TYPE_LONG;
+            for (int shift = 56; shift >= 0; shift -= 8)
+            {
+                key[pos++] = (byte)(value >>> shift);
+            }
+            return key;
+        }
+        else if (keyValue instanceof Integer)
+        {
+            int value = (Integer)keyValue;
+            byte[] key = Arrays.copyOf(prefix, pos + 5);
+            key[pos++] = TYPE_INT;
+            for (int shift = 24; shift >= 0; shift -= 8)
+            {
+                key[pos++] = (byte)(value >>> shift);
+            }
+            return key;
+        }
+
+        byte type = keyValue instanceof String ? TYPE_STRING : TYPE_OTHER;
+        byte[] raw = (keyValue instanceof String ? (String)keyValue : id.toString()).getBytes(StandardCharsets.UTF_8);
+        if (pos + 1 + raw.length > maxKeyLength)
+        {
+            raw = hash(type, raw);
+            type = TYPE_HASH;
+        }
+        byte[] key = Arrays.copyOf(prefix, pos + 1 + raw.length);
+        key[pos] = type;
+        System.arraycopy(raw, 0, key, pos + 1, raw.length);
+        return key;
+    }
+
+    /**
+     * Method to return the String key for the specified identity.
+     * The key contains only printable ASCII characters (no whitespace) so is valid for memcached.
+     * @param id The identity
+     * @return The key
+     */
+    public String getStringKey(Object id)
+    {
+        String prefix = getStringKeyPrefix(getDiscriminator(id));
+
+        Object keyValue = getKeyValue(id);
+        if (keyValue instanceof Long)
+        {
+            return prefix + (char)TYPE_LONG + keyValue;
+        }
+        else if (keyValue instanceof Integer)
+        {
+            return prefix + (char)TYPE_INT + keyValue;
+        }
+
+        byte type = keyValue instanceof String ? TYPE_STRING : TYPE_OTHER;
+        String raw = keyValue instanceof String ? (String)keyValue : id.toString();
+        if (prefix.length() + 1 + raw.length() <= maxKeyLength && isSafe(raw))
+        {
+            return prefix + (char)type + raw;
+        }
+
+        String hash = Base64.getUrlEncoder().withoutPadding().encodeToString(hash(type, raw.getBytes(StandardCharsets.UTF_8)));
+        if (prefix.length() + 1 + hash.length() > maxKeyLength)
+        {
+            // Prefix itself is too long, so hash the whole key
+            hash = Base64.getUrlEncoder().withoutPadding().encodeToString(hash(type, (prefix + raw).getBytes(StandardCharsets.UTF_8)));
+            return (char)TYPE_HASH + hash;
+        }
+        return prefix + (char)TYPE_HASH + hash;
+    }
+
+    /**
+     * Accessor for the key value of the identity where it is of a type that can be encoded directly.
+     * @param id The identity
+     * @return The key value (Long, Integer, String), or null if toString() should be used
+     */
+    private static Object getKeyValue(Object id)
+    {
+        if (id instanceof LongId || id instanceof IntId || id instanceof StringId)
+        {
+            return ((SingleFieldId<?>)id).getKeyAsObject();
+        }
+        else if (id instanceof DatastoreUniqueLongId)
+        {
+            return ((DatastoreUniqueLongId)id).key;
+        }
+        else if (id instanceof DatastoreId)
+        {
+            Object keyValue = ((DatastoreId)id).getKeyAsObject();
+            if (keyValue instanceof Long || keyValue instanceof Integer || keyValue instanceof String)
+            {
+                return keyValue;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] hash(byte type, byte[] raw)
+    {
+        MessageDigest md5 = MD5.get();
+        md5.update(type);
+        return md5.digest(raw);
+    }
+
+    private static boolean isSafe(String str)
+    {
+        for (int i = 0; i < str.length(); i++)
+        {
+            char c = str.charAt(i);
+            if (c <= ' ' || c > '~')
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void appendSafe(StringBuilder str, String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            str.append(c <= ' ' || c > '~' ? '_' : c);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.key;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.datanucleus.NucleusContext;
+import org.datanucleus.metadata.AbstractClassMetaData;
+import org.datanucleus.metadata.IdentityType;
+
+/**
+ * Helpers for finding the keys of the objects of a class in a remote cache, for evicting a class.
+ * The keys of a class all start with the key prefix of its discriminator (see CacheKeyEncoder), so a class is evicted by
+ * removing the keys with those prefixes (Redis), or by moving the namespace of each discriminator to a new generation (memcached).
+ */
+public class ClassKeys
+{
+    private ClassKeys()
+    {
+    }
+
+    /**
+     * Accessor for the key discriminators used by objects of the specified class (and optionally its subclasses).
+     * Keys for an application identity class are prefixed by the identity class name, so this includes that name, and evicting it
+     * also evicts instances of other classes using the same identity class.
+     * @param nucleusCtx Context
+     * @param pcClass The class
+     * @param subclasses Whether to include the subclasses
+     * @return The discriminators
+     */
+    public static Set<String> getDiscriminators(NucleusContext nucleusCtx, Class pcClass, boolean subclasses)
+    {
+        Set<String> discriminators = new LinkedHashSet<>();
+        addDiscriminatorsForClass(nucleusCtx, pcClass.getName(), discriminators);
+        if (subclasses)
+        {
+            String[] subclassNames = nucleusCtx.getMetaDataManager().getSubclassesForClass(pcClass.getName(), true);
+            if (subclassNames != null)
+            {
+                for (String subclassName : subclassNames)
+                {
+                    addDiscriminatorsForClass(nucleusCtx, subclassName, discriminators);
+                }
+            }
+        }
+        return discriminators;
+    }
+
+    private static void addDiscriminatorsForClass(NucleusContext nucleusCtx, String className, Set<String> discriminators)
+    {
+        discriminators.add(className);
+        AbstractClassMetaData cmd = nucleusCtx.getMetaDataManager().getMetaDataForClass(className, nucleusCtx.getClassLoaderResolver(null));
+        if (cmd != null && cmd.getIdentityType() == IdentityType.APPLICATION && !cmd.usesSingleFieldIdentityClass() && cmd.getObjectidClass() != null)
+        {
+            discriminators.add(cmd.getObjectidClass());
+        }
+    }
+
+    /**
+     * Accessor for a Redis SCAN MATCH pattern for all keys with the specified prefix, escaping any glob characters.
+     * @param prefix The key prefix
+     * @return The pattern
+     */
+    public static byte[] getScanPattern(byte[] prefix)
+    {
+        ByteArrayOutputStream pattern = new ByteArrayOutputStream(prefix.length + 8);
+        for (byte b : prefix)
+        {
+            if (b == '*' || b == '?' || b == '[' || b == ']' || b == '\\')
+            {
+                pattern.write('\\');
+            }
+            pattern.write(b);
+        }
+        pattern.write('*');
+        return pattern.toByteArray();
+    }
+
+    /**
+     * Accessor for the key of the generation counter (see KeyGenerations) for the objects with the specified discriminator.
+     * @param keyEncoder The key encoder
+     * @param discriminator The discriminator, or "" for the counter of the whole cache
+     * @return The counter key
+     */
+    public static String getGenerationKey(CacheKeyEncoder keyEncoder, String discriminator)
+    {
+        // Object keys follow the prefix with an upper-case type, so can't clash with this
+        return keyEncoder.getStringKeyPrefix(discriminator) + "generation";
+    }
+}
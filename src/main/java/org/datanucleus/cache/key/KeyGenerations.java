@@ -0,0 +1,120 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.key;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generation counters for namespaces of keys in a remote cache (memcached), allowing a whole namespace (e.g. a cache, or the
+ * objects of a class in a cache) to be invalidated in a single operation, without touching any other data in the store.
+ * The current generations of the namespaces of a key are included in the key, so incrementing a generation means that the
+ * existing keys of that namespace are never read again (and are eventually removed by the store, by expiry or LRU eviction).
+ * <p>
+ * The counters are held in the store, so shared by all processes using it. The generations read are held locally for
+ * "refreshMillis", so that a read of the cache doesn't also need a read of the counters; an invalidation by another process
+ * is therefore seen after up to that time. Counters are created with the current time as value, so that if a counter is
+ * removed by the store it restarts at a generation that hasn't been used before.
+ * </p>
+ */
+public class KeyGenerations
+{
+    /**
+     * Atomic counter in the store (e.g. memcached "incr").
+     */
+    public interface Counter
+    {
+        /**
+         * Method to increment the counter, creating it if it doesn't exist.
+         * @param key Key of the counter
+         * @param delta Amount to increment by (0 to just read it)
+         * @param initialValue Value of the counter if it doesn't exist
+         * @return The value of the counter after the increment
+         */
+        long increment(String key, long delta, long initialValue);
+    }
+
+    /** Generation read from the store. */
+    private static class Generation
+    {
+        final long value;
+        final long expiry;
+
+        Generation(long value, long expiry)
+        {
+            this.value = value;
+            this.expiry = expiry;
+        }
+    }
+
+    private final Counter counter;
+
+    private final long refreshMillis;
+
+    /** Generations read from the store, keyed by the counter key. */
+    private final Map<String, Generation> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     * @param counter The counters in the store
+     * @param refreshMillis Time for which a generation read from the store is used before reading it again (ms)
+     */
+    public KeyGenerations(Counter counter, long refreshMillis)
+    {
+        this.counter = counter;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Accessor for the current generation of a namespace.
+     * @param counterKey Key of the counter for the namespace
+     * @return The generation
+     */
+    public long get(String counterKey)
+    {
+        long now = System.currentTimeMillis();
+        Generation generation = generations.get(counterKey);
+        if (generation == null || generation.expiry <= now)
+        {
+            generation = update(counterKey, new Generation(counter.increment(counterKey, 0, now), now + refreshMillis));
+        }
+        return generation.value;
+    }
+
+    /**
+     * Method to move a namespace to a new generation, so invalidating all of its existing keys.
+     * @param counterKey Key of the counter for the namespace
+     */
+    public void increment(String counterKey)
+    {
+        long now = System.currentTimeMillis();
+        update(counterKey, new Generation(counter.increment(counterKey, 1, now), now + refreshMillis));
+    }
+
+    /**
+     * Method to update the local generation of a namespace, never going back to an earlier generation (when a read races with an increment).
+     * @param counterKey Key of the counter for the namespace
+     * @param generation The generation read from the store
+     * @return The local generation
+     */
+    private Generation update(String counterKey, Generation generation)
+    {
+        return generations.merge(counterKey, generation,
+            (current, latest) -> (latest.value >= current.value) ? latest : new Generation(current.value, latest.expiry));
+    }
+}
@@ -0,0 +1,126 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.lettuce;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.datanucleus.exceptions.NucleusException;
+import org.datanucleus.util.NucleusLogger;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+
+/**
+ * Single multiplexed connection to Redis using Lettuce, shared by all threads using a cache.
+ * Commands are written as they are issued (so commands from concurrent threads are pipelined on the connection), and the
+ * caller only blocks (up to the timeout) when it needs the result. When the connection is down commands are rejected rather
+ * than queued, so callers fail fast instead of stalling.
+ */
+class LettuceConnection
+{
+    private final RedisClient client;
+
+    private final StatefulRedisConnection<byte[], byte[]> connection;
+
+    private final long timeoutMillis;
+
+    /**
+     * Constructor, connecting to Redis.
+     * @param uri Redis URI (e.g "redis://localhost:6379/1", or "redis-sentinel://host:26379/1#mymaster")
+     * @param timeoutMillis Timeout for a command (ms)
+     */
+    LettuceConnection(String uri, long timeoutMillis)
+    {
+        this.timeoutMillis = timeoutMillis;
+        try
+        {
+            RedisURI redisURI = RedisURI.create(uri);
+            redisURI.setTimeout(Duration.ofMillis(timeoutMillis));
+            client = RedisClient.create(redisURI);
+            client.setOptions(ClientOptions.builder().disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS).build());
+            connection = client.connect(ByteArrayCodec.INSTANCE);
+        }
+        catch (RuntimeException e)
+        {
+            throw new NucleusException("Error connecting to Redis at " + uri, e);
+        }
+    }
+
+    RedisAsyncCommands<byte[], byte[]> async()
+    {
+        return connection.async();
+    }
+
+    /**
+     * Wait for the result of the command, up to the timeout.
+     * @param future The command future
+     * @return The result
+     * @param <T> Type of result
+     */
+    <T> T await(RedisFuture<T> future)
+    {
+        try
+        {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e)
+        {
+            throw new NucleusException("Redis command failed", e.getCause());
+        }
+        catch (TimeoutException e)
+        {
+            future.cancel(false);
+            throw new NucleusException("Redis command timed out after " + timeoutMillis + "ms", e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new NucleusException("Interrupted waiting for Redis command", e);
+        }
+    }
+
+    /**
+     * Don't wait for the result of the command, just logging any failure.
+     * @param future The command future
+     * @param description Description of the command, for logging
+     */
+    void fireAndForget(RedisFuture<?> future, String description)
+    {
+        future.whenComplete((result, failure) ->
+        {
+            if (failure != null)
+            {
+                NucleusLogger.CACHE.warn("Failed to " + description + " in Redis cache : " + failure.getMessage());
+            }
+        });
+    }
+
+    void close()
+    {
+        connection.close();
+        client.shutdown();
+    }
+}
@@ -0,0 +1,423 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.lettuce;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.datanucleus.Configuration;
+import org.datanucleus.NucleusContext;
+import org.datanucleus.cache.AbstractLevel2Cache;
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.key.CacheKeyEncoder;
+import org.datanucleus.cache.key.ClassKeys;
+import org.datanucleus.cache.serializer.CacheSerializer;
+import org.datanucleus.cache.serializer.CacheSerializerFactory;
+import org.datanucleus.exceptions.NucleusException;
+import org.datanucleus.util.ClassUtils;
+
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+/**
+ * Plugin using <a href="https://redis.io/">Redis</a> as a Level2 cache, via the asynchronous
+ * <a href="https://lettuce.io/">Lettuce</a> client. Uses a single multiplexed connection shared by all threads, so
+ * there is no connection pool to exhaust, and concurrent commands are pipelined on the connection.
+ * Bulk operations issue all of their commands before waiting for any result.
+ * When "asyncWrites" is enabled puts are fire-and-forget, so the caller doesn't wait for Redis (failures are logged).
+ * Evictions are always waited for, so that a stale value cannot be read afterwards.
+ */
+public class LettuceLevel2Cache extends AbstractLevel2Cache
+{
+    private static final long serialVersionUID = -3417409925374016658L;
+
+    public static final String PROPERTY_CACHE_L2_LETTUCE_URI = "datanucleus.cache.level2.lettuce.uri";
+    public static final String PROPERTY_CACHE_L2_LETTUCE_TIMEOUT = "datanucleus.cache.level2.lettuce.timeout";
+    public static final String PROPERTY_CACHE_L2_LETTUCE_BATCH_SIZE = "datanucleus.cache.level2.lettuce.batchSize";
+    public static final String PROPERTY_CACHE_L2_LETTUCE_ASYNC_WRITES = "datanucleus.cache.level2.lettuce.asyncWrites";
+
+    private final static String DEFAULT_URI = "redis://localhost:6379/1";
+    private final static int DEFAULT_TIMEOUT = 5000;
+    private final static int DEFAULT_BATCH_SIZE = 500;
+
+    private LettuceConnection connection;
+
+    private CacheSerializer serializer;
+
+    private CacheKeyEncoder keyEncoder;
+
+    private int expirySeconds;
+
+    /** Max number of keys sent to Redis in a single MGET/DEL. */
+    private int batchSize;
+
+    /** Whether puts don't wait for Redis to reply. */
+    private boolean asyncWrites;
+
+    public LettuceLevel2Cache(NucleusContext nucleusCtx)
+    {
+        super(nucleusCtx);
+
+        Configuration conf = nucleusCtx.getConfiguration();
+        ClassUtils.assertClassForJarExistsInClasspath(nucleusCtx.getClassLoaderResolver(null), "io.lettuce.core.RedisClient", "lettuce-core.jar");
+
+        String uri = conf.getStringProperty(PROPERTY_CACHE_L2_LETTUCE_URI);
+        int timeout = conf.getIntProperty(PROPERTY_CACHE_L2_LETTUCE_TIMEOUT);
+
+        expirySeconds = (int) (expiryMillis/1000);
+
+        batchSize = conf.getIntProperty(PROPERTY_CACHE_L2_LETTUCE_BATCH_SIZE);
+        batchSize = batchSize <= 0 ? DEFAULT_BATCH_SIZE : batchSize;
+
+        asyncWrites = conf.getBooleanProperty(PROPERTY_CACHE_L2_LETTUCE_ASYNC_WRITES);
+
+        serializer = CacheSerializerFactory.getLevel2Serializer(nucleusCtx);
+        keyEncoder = new CacheKeyEncoder(cacheName, CacheKeyEncoder.DEFAULT_MAX_KEY_LENGTH);
+
+        connection = new LettuceConnection(uri == null ? DEFAULT_URI : uri, timeout <= 0 ? DEFAULT_TIMEOUT : timeout);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#close()
+     */
+    @Override
+    public void close()
+    {
+        try
+        {
+            if (clearAtClose)
+            {
+                connection.await(connection.async().flushdb());
+            }
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#get(java.lang.Object)
+     */
+    @Override
+    public CachedPC get(Object oid)
+    {
+        try
+        {
+            return (CachedPC) serializer.deserialize(connection.await(connection.async().get(getCacheKeyForId(oid))));
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to get key %s from Redis cache", oid), e);
+        }
+    }
+
+    /**
+     * Accessor for a collection of objects from the cache.
+     * Issues MGETs of at most "batchSize" keys, all before waiting for any of the results.
+     * @param oids The Object IDs
+     * @return Map of the objects, keyed by the oids that are found
+     */
+    @Override
+    public Map<Object, CachedPC> getAll(Collection oids)
+    {
+        if (oids == null)
+        {
+            return null;
+        }
+
+        Map<Object, CachedPC> objs = new HashMap<>();
+        if (oids.isEmpty())
+        {
+            return objs;
+        }
+
+        Object[] ids = oids.toArray();
+        try
+        {
+            RedisAsyncCommands<byte[], byte[]> async = connection.async();
+            List<RedisFuture<List<KeyValue<byte[], byte[]>>>> futures = new ArrayList<>();
+            for (int start = 0; start < ids.length; start += batchSize)
+            {
+                int end = Math.min(start + batchSize, ids.length);
+                byte[][] keys = new byte[end - start][];
+                for (int i = start; i < end; i++)
+                {
+                    keys[i - start] = getCacheKeyForId(ids[i]);
+                }
+                futures.add(async.mget(keys));
+            }
+
+            int pos = 0;
+            for (RedisFuture<List<KeyValue<byte[], byte[]>>> future : futures)
+            {
+                for (KeyValue<byte[], byte[]> keyValue : connection.await(future))
+                {
+                    if (keyValue.hasValue())
+                    {
+                        CachedPC pc = (CachedPC) serializer.deserialize(keyValue.getValue());
+                        if (pc != null)
+                        {
+                            objs.put(ids[pos], pc);
+                        }
+                    }
+                    pos++;
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to get %d keys from Redis cache", ids.length), e);
+        }
+        return objs;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#containsOid(java.lang.Object)
+     */
+    @Override
+    public boolean containsOid(Object oid)
+    {
+        try
+        {
+            return connection.await(connection.async().exists(getCacheKeyForId(oid))) > 0;
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to check key %s in Redis cache", oid), e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#put(java.lang.Object, org.datanucleus.cache.CachedPC)
+     */
+    @Override
+    public CachedPC put(Object oid, CachedPC pc)
+    {
+        if (oid == null || pc == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            RedisFuture<String> future = setValue(connection.async(), getCacheKeyForId(oid), serializer.serialize(pc));
+            if (asyncWrites)
+            {
+                connection.fireAndForget(future, "put object with id " + oid);
+            }
+            else
+            {
+                connection.await(future);
+            }
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to set object with id %s into Redis cache", oid), e);
+        }
+        return pc;
+    }
+
+    /**
+     * Method to put a collection of objects into the cache.
+     * Issues all of the SETEX commands before waiting for any of the results (unless using async writes).
+     * @param objs Map of cacheable objects keyed by their oids
+     */
+    @Override
+    public void putAll(Map<Object, CachedPC> objs)
+    {
+        if (objs == null || objs.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            RedisAsyncCommands<byte[], byte[]> async = connection.async();
+            List<RedisFuture<String>> futures = new ArrayList<>(objs.size());
+            for (Map.Entry<Object, CachedPC> entry : objs.entrySet())
+            {
+                if (entry.getKey() != null && entry.getValue() != null)
+                {
+                    futures.add(setValue(async, getCacheKeyForId(entry.getKey()), serializer.serialize(entry.getValue())));
+                }
+            }
+            for (RedisFuture<String> future : futures)
+            {
+                if (asyncWrites)
+                {
+                    connection.fireAndForget(future, "put object");
+                }
+                else
+                {
+                    connection.await(future);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to set %d objects into Redis cache", objs.size()), e);
+        }
+    }
+
+    private RedisFuture<String> setValue(RedisAsyncCommands<byte[], byte[]> async, byte[] key, byte[] value)
+    {
+        return expirySeconds > 0 ? async.setex(key, expirySeconds, value) : async.set(key, value);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#evict(java.lang.Object)
+     */
+    @Override
+    public void evict(Object oid)
+    {
+        try
+        {
+            connection.await(connection.async().del(getCacheKeyForId(oid)));
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to evict key %s from Redis cache", oid), e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#evictAll()
+     */
+    @Override
+    public void evictAll()
+    {
+        try
+        {
+            connection.await(connection.async().flushdb());
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException("Failed to evict-all from Redis cache", e);
+        }
+    }
+
+    /**
+     * Evict the parameter instances from the cache.
+     * Issues DELs of at most "batchSize" keys, all before waiting for any of the results.
+     * @param oids the object ids of the instances to evict
+     */
+    @Override
+    public void evictAll(Object[] oids)
+    {
+        if (oids == null || oids.length == 0)
+        {
+            return;
+        }
+
+        try
+        {
+            RedisAsyncCommands<byte[], byte[]> async = connection.async();
+            List<RedisFuture<Long>> futures = new ArrayList<>();
+            for (int start = 0; start < oids.length; start += batchSize)
+            {
+                int end = Math.min(start + batchSize, oids.length);
+                byte[][] keys = new byte[end - start][];
+                for (int i = start; i < end; i++)
+                {
+                    keys[i - start] = getCacheKeyForId(oids[i]);
+                }
+                futures.add(async.del(keys));
+            }
+            for (RedisFuture<Long> future : futures)
+            {
+                connection.await(future);
+            }
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to evict %d keys from Redis cache", oids.length), e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#evictAll(java.util.Collection)
+     */
+    @Override
+    public void evictAll(Collection oids)
+    {
+        if (oids == null)
+        {
+            return;
+        }
+
+        evictAll(oids.toArray());
+    }
+
+    /**
+     * Evict the instances of the specified class from the cache.
+     * Uses SCAN to find the keys with the prefix for the class, removing each page of keys found.
+     * @param pcClass the class of instances to evict
+     * @param subclasses if true, evict instances of subclasses also
+     */
+    @Override
+    public void evictAll(Class pcClass, boolean subclasses)
+    {
+        if (!nucleusCtx.getApiAdapter().isPersistable(pcClass))
+        {
+            return;
+        }
+
+        Set<String> discriminators = ClassKeys.getDiscriminators(nucleusCtx, pcClass, subclasses);
+
+        try
+        {
+            RedisAsyncCommands<byte[], byte[]> async = connection.async();
+            for (String discriminator : discriminators)
+            {
+                ScanArgs args = ScanArgs.Builder.matches(ClassKeys.getScanPattern(keyEncoder.getKeyPrefix(discriminator))).limit(batchSize);
+                KeyScanCursor<byte[]> cursor = connection.await(async.scan(args));
+                while (true)
+                {
+                    List<byte[]> keys = cursor.getKeys();
+                    if (!keys.isEmpty())
+                    {
+                        connection.await(async.del(keys.toArray(new byte[keys.size()][])));
+                    }
+                    if (cursor.isFinished())
+                    {
+                        break;
+                    }
+                    cursor = connection.await(async.scan(cursor, args));
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to evict objects of class %s from Redis cache", pcClass.getName()), e);
+        }
+    }
+
+
+    protected byte[] getCacheKeyForId(Object id)
+    {
+        return keyEncoder.getKey(id);
+    }
+}
@@ -0,0 +1,212 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.lettuce;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.datanucleus.Configuration;
+import org.datanucleus.NucleusContext;
+import org.datanucleus.cache.serializer.CacheSerializer;
+import org.datanucleus.cache.serializer.CacheSerializerFactory;
+import org.datanucleus.exceptions.NucleusException;
+import org.datanucleus.store.query.Query;
+import org.datanucleus.store.query.QueryUtils;
+import org.datanucleus.store.query.cache.AbstractQueryResultsCache;
+import org.datanucleus.util.ClassUtils;
+
+import io.lettuce.core.RedisFuture;
+
+/**
+ * Plugin using <a href="https://redis.io/">Redis</a> as a QueryResults cache, via the asynchronous
+ * <a href="https://lettuce.io/">Lettuce</a> client, using a single multiplexed connection shared by all threads.
+ * When "asyncWrites" is enabled puts are fire-and-forget, so the caller doesn't wait for Redis (failures are logged).
+ */
+public class LettuceQueryResultsCache extends AbstractQueryResultsCache
+{
+    private static final long serialVersionUID = 5190286513853318867L;
+
+    public static final String PROPERTY_CACHE_QUERYRESULTS_LETTUCE_URI = "datanucleus.cache.queryResults.lettuce.uri";
+    public static final String PROPERTY_CACHE_QUERYRESULTS_LETTUCE_TIMEOUT = "datanucleus.cache.queryResults.lettuce.timeout";
+    public static final String PROPERTY_CACHE_QUERYRESULTS_LETTUCE_ASYNC_WRITES = "datanucleus.cache.queryResults.lettuce.asyncWrites";
+
+    private final static String DEFAULT_URI = "redis://localhost:6379/1";
+    private final static int DEFAULT_TIMEOUT = 5000;
+
+    /** Prefix (for uniqueness) */
+    private static final String KEY_PREFIX = "datanucleus-query:";
+
+    private LettuceConnection connection;
+
+    private CacheSerializer serializer;
+
+    private int expirySeconds;
+
+    private boolean asyncWrites;
+
+    public LettuceQueryResultsCache(NucleusContext nucleusCtx)
+    {
+        super(nucleusCtx);
+
+        Configuration conf = nucleusCtx.getConfiguration();
+        ClassUtils.assertClassForJarExistsInClasspath(nucleusCtx.getClassLoaderResolver(null), "io.lettuce.core.RedisClient", "lettuce-core.jar");
+
+        String uri = conf.getStringProperty(PROPERTY_CACHE_QUERYRESULTS_LETTUCE_URI);
+        int timeout = conf.getIntProperty(PROPERTY_CACHE_QUERYRESULTS_LETTUCE_TIMEOUT);
+
+        expirySeconds = (int) (expiryMillis/1000);
+        asyncWrites = conf.getBooleanProperty(PROPERTY_CACHE_QUERYRESULTS_LETTUCE_ASYNC_WRITES);
+
+        serializer = CacheSerializerFactory.getSerializer(nucleusCtx, conf.getStringProperty(CacheSerializerFactory.PROPERTY_CACHE_QUERYRESULTS_SERIALIZER));
+
+        connection = new LettuceConnection(uri == null ? DEFAULT_URI : uri, timeout <= 0 ? DEFAULT_TIMEOUT : timeout);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.store.query.cache.QueryResultsCache#close()
+     */
+    public void close()
+    {
+        try
+        {
+            if (clearAtClose)
+            {
+                connection.await(connection.async().flushdb());
+            }
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.store.query.cache.QueryResultsCache#evict(java.lang.Class)
+     */
+    public void evict(Class candidate)
+    {
+        // Not supported. Do nothing
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.store.query.cache.QueryResultsCache#evict(org.datanucleus.store.query.Query)
+     */
+    public void evict(Query query)
+    {
+        evict(query, null);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.store.query.cache.QueryResultsCache#evict(org.datanucleus.store.query.Query, java.util.Map)
+     */
+    public void evict(Query query, Map params)
+    {
+        String queryKey = QueryUtils.getKeyForQueryResultsCache(query, params);
+        try
+        {
+            connection.await(connection.async().del(getKey(queryKey)));
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to evict key %s from Redis cache", queryKey), e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.store.query.cache.QueryResultsCache#evictAll()
+     */
+    public void evictAll()
+    {
+        try
+        {
+            connection.await(connection.async().flushdb());
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException("Failed to evict-all from Redis cache", e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.store.query.cache.QueryResultsCache#get(java.lang.String)
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> get(String queryKey)
+    {
+        try
+        {
+            return (List<Object>) serializer.deserialize(connection.await(connection.async().get(getKey(queryKey))));
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException("Failed to get from Redis cache", e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.store.query.cache.QueryResultsCache#put(java.lang.String, java.util.List)
+     */
+    public List<Object> put(String queryKey, List<Object> results)
+    {
+        if (queryKey == null || results == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            byte[] key = getKey(queryKey);
+            byte[] value = serializer.serialize(results);
+            RedisFuture<String> future = expirySeconds > 0 ? connection.async().setex(key, expirySeconds, value) : connection.async().set(key, value);
+            if (asyncWrites)
+            {
+                connection.fireAndForget(future, "put query results with key " + queryKey);
+            }
+            else
+            {
+                connection.await(future);
+            }
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to set query results with key %s into Redis cache", queryKey), e);
+        }
+        return results;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.store.query.cache.QueryResultsCache#contains(java.lang.String)
+     */
+    public boolean contains(String queryKey)
+    {
+        try
+        {
+            return connection.await(connection.async().exists(getKey(queryKey))) > 0;
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException("Failed to check key in Redis cache", e);
+        }
+    }
+
+    private static byte[] getKey(String queryKey)
+    {
+        return (KEY_PREFIX + queryKey).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,38 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.near;
+
+import java.util.Collection;
+
+/**
+ * Listener for invalidations of entries of a remote Level2 cache, whether made by this process or by another process
+ * using the same cache.
+ */
+public interface InvalidationListener
+{
+    /**
+     * Notification that the entries for these identities have been changed or removed.
+     * @param oids Identities of the entries
+     */
+    void invalidate(Collection oids);
+
+    /**
+     * Notification that any entry may have been changed or removed (e.g evictAll, or notifications may have been missed).
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,37 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.near;
+
+/**
+ * Interface implemented by remote Level2 caches that can notify listeners when their entries are invalidated,
+ * typically using a messaging facility of the remote store (e.g Redis pub/sub, Coherence map events).
+ */
+public interface InvalidationNotifier
+{
+    /**
+     * Method to register a listener for invalidations.
+     * @param listener The listener
+     */
+    void addInvalidationListener(InvalidationListener listener);
+
+    /**
+     * Method to deregister a listener for invalidations.
+     * @param listener The listener
+     */
+    void removeInvalidationListener(InvalidationListener listener);
+}
@@ -0,0 +1,379 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.near;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.datanucleus.Configuration;
+import org.datanucleus.NucleusContext;
+import org.datanucleus.cache.AbstractLevel2Cache;
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.Level2Cache;
+import org.datanucleus.exceptions.NucleusUserException;
+import org.datanucleus.util.ClassUtils;
+import org.datanucleus.util.NucleusLogger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Level2 cache that keeps a bounded in-process "near" cache in front of another (remote) Level2 cache of this plugin.
+ * The near cache uses <a href="https://github.com/ben-manes/caffeine">Caffeine</a>, so has W-TinyLFU admission and eviction,
+ * and is bounded by number of entries or by weight (number of loaded fields), with optional expiry.
+ * <p>
+ * The near cache is kept coherent with changes made by other processes by listening to invalidations from the remote cache,
+ * when it supports this (see InvalidationNotifier). When it doesn't (e.g memcached) entries are only removed by expiry, so
+ * the near expiry should be set accordingly.
+ * </p>
+ * <p>
+ * All changes (puts and evictions) are made to the remote cache first, and then invalidate the near cache. To avoid caching a
+ * value read before a concurrent change, values read from the remote cache are only kept in the near cache when no invalidation
+ * happened during the read or while adding them.
+ * </p>
+ */
+public class NearLevel2Cache extends AbstractLevel2Cache implements InvalidationListener
+{
+    private static final long serialVersionUID = -2263540405736584913L;
+
+    public static final String PROPERTY_CACHE_L2_NEAR_BACKEND = "datanucleus.cache.level2.near.backend";
+    public static final String PROPERTY_CACHE_L2_NEAR_MAX_SIZE = "datanucleus.cache.level2.near.maxSize";
+    public static final String PROPERTY_CACHE_L2_NEAR_MAX_WEIGHT = "datanucleus.cache.level2.near.maxWeight";
+    public static final String PROPERTY_CACHE_L2_NEAR_EXPIRY_MILLIS = "datanucleus.cache.level2.near.expiryMillis";
+
+    private final static int DEFAULT_MAX_SIZE = 10000;
+
+    /** The remote cache. */
+    private final Level2Cache backend;
+
+    /** The in-process cache. */
+    private final Cache<Object, CachedPC> nearCache;
+
+    /** Number of invalidations (received or local), used to detect an invalidation during a remote read. */
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param nucleusCtx Context
+     */
+    public NearLevel2Cache(NucleusContext nucleusCtx)
+    {
+        super(nucleusCtx);
+
+        Configuration conf = nucleusCtx.getConfiguration();
+        ClassUtils.assertClassForJarExistsInClasspath(nucleusCtx.getClassLoaderResolver(null), "com.github.benmanes.caffeine.cache.Caffeine", "caffeine.jar");
+
+        String backendName = conf.getStringProperty(PROPERTY_CACHE_L2_NEAR_BACKEND);
+        if (backendName == null)
+        {
+            throw new NucleusUserException("Near cache requires the remote cache to be specified using " + PROPERTY_CACHE_L2_NEAR_BACKEND);
+        }
+        try
+        {
+            backend = (Level2Cache) nucleusCtx.getPluginManager().createExecutableExtension("org.datanucleus.cache_level2", "name", backendName, "class-name",
+                new Class[] {NucleusContext.class}, new Object[] {nucleusCtx});
+        }
+        catch (Exception e)
+        {
+            throw new NucleusUserException("Error creating remote cache \"" + backendName + "\" for near cache", e);
+        }
+        if (backend == null)
+        {
+            throw new NucleusUserException("Remote cache \"" + backendName + "\" for near cache is not a known Level2 cache");
+        }
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        long maxWeight = conf.getIntProperty(PROPERTY_CACHE_L2_NEAR_MAX_WEIGHT);
+        if (maxWeight > 0)
+        {
+            builder.maximumWeight(maxWeight).weigher((Object oid, CachedPC pc) -> 1 + pc.getLoadedFieldNumbers().length);
+        }
+        else
+        {
+            int maxEntries = conf.getIntProperty(PROPERTY_CACHE_L2_NEAR_MAX_SIZE);
+            builder.maximumSize(maxEntries > 0 ? maxEntries : DEFAULT_MAX_SIZE);
+        }
+
+        long nearExpiryMillis = conf.getIntProperty(PROPERTY_CACHE_L2_NEAR_EXPIRY_MILLIS);
+        nearExpiryMillis = nearExpiryMillis > 0 ? nearExpiryMillis : expiryMillis;
+        if (nearExpiryMillis > 0)
+        {
+            builder.expireAfterWrite(nearExpiryMillis, TimeUnit.MILLISECONDS);
+        }
+        nearCache = builder.build();
+
+        if (backend instanceof InvalidationNotifier)
+        {
+            ((InvalidationNotifier)backend).addInvalidationListener(this);
+        }
+        else
+        {
+            NucleusLogger.CACHE.warn("Remote cache \"" + backendName + "\" doesn't provide invalidations, so near cache entries are only removed by expiry" +
+                (nearExpiryMillis > 0 ? " (after " + nearExpiryMillis + "ms)" : " and will become stale when changed by other processes"));
+        }
+    }
+
+    /**
+     * Accessor for the remote cache.
+     * @return The remote cache
+     */
+    public Level2Cache getBackend()
+    {
+        return backend;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.near.InvalidationListener#invalidate(java.util.Collection)
+     */
+    public void invalidate(Collection oids)
+    {
+        invalidationCount.incrementAndGet();
+        nearCache.invalidateAll(oids);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.near.InvalidationListener#invalidateAll()
+     */
+    public void invalidateAll()
+    {
+        invalidationCount.incrementAndGet();
+        nearCache.invalidateAll();
+    }
+
+    /**
+     * Method to invalidate the near copy of an object after it is changed in the remote cache.
+     * @param oid Identity of the object
+     */
+    private void invalidate(Object oid)
+    {
+        invalidationCount.incrementAndGet();
+        nearCache.invalidate(oid);
+    }
+
+    /**
+     * Method to keep a value read from the remote cache in the near cache, unless an invalidation happened since the read started.
+     * The count is checked again after adding the value, since an invalidation could have removed the entry just before it was added.
+     * @param oid Identity of the object
+     * @param pc The value read
+     * @param count The invalidation count before the read
+     */
+    private void putNear(Object oid, CachedPC pc, long count)
+    {
+        if (invalidationCount.get() == count)
+        {
+            nearCache.put(oid, pc);
+            if (invalidationCount.get() != count)
+            {
+                nearCache.asMap().remove(oid, pc);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#close()
+     */
+    public void close()
+    {
+        if (backend instanceof InvalidationNotifier)
+        {
+            ((InvalidationNotifier)backend).removeInvalidationListener(this);
+        }
+        nearCache.invalidateAll();
+        backend.close();
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#containsOid(java.lang.Object)
+     */
+    public boolean containsOid(Object oid)
+    {
+        return nearCache.getIfPresent(oid) != null || backend.containsOid(oid);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#get(java.lang.Object)
+     */
+    public CachedPC get(Object oid)
+    {
+        CachedPC pc = nearCache.getIfPresent(oid);
+        if (pc != null)
+        {
+            return pc;
+        }
+
+        long count = invalidationCount.get();
+        pc = backend.get(oid);
+        if (pc != null)
+        {
+            putNear(oid, pc, count);
+        }
+        return pc;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#getAll(java.util.Collection)
+     */
+    @Override
+    public Map<Object, CachedPC> getAll(Collection oids)
+    {
+        if (oids == null)
+        {
+            return null;
+        }
+
+        Map<Object, CachedPC> objs = new HashMap<>(nearCache.getAllPresent(oids));
+        if (objs.size() < oids.size())
+        {
+            List<Object> remoteOids = new ArrayList<>(oids.size() - objs.size());
+            for (Object oid : oids)
+            {
+                if (!objs.containsKey(oid))
+                {
+                    remoteOids.add(oid);
+                }
+            }
+
+            long count = invalidationCount.get();
+            Map<Object, CachedPC> remoteObjs = backend.getAll(remoteOids);
+            if (remoteObjs != null)
+            {
+                for (Map.Entry<Object, CachedPC> entry : remoteObjs.entrySet())
+                {
+                    if (entry.getValue() != null)
+                    {
+                        objs.put(entry.getKey(), entry.getValue());
+                        putNear(entry.getKey(), entry.getValue(), count);
+                    }
+                }
+            }
+        }
+        return objs;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#getSize()
+     */
+    public int getSize()
+    {
+        return backend.getSize();
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#isEmpty()
+     */
+    public boolean isEmpty()
+    {
+        return backend.isEmpty();
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#put(java.lang.Object, org.datanucleus.cache.CachedPC)
+     */
+    public CachedPC put(Object oid, CachedPC pc)
+    {
+        if (oid == null || pc == null)
+        {
+            return null;
+        }
+
+        // Another put may race with ours in the remote cache, so don't keep a local copy; the next get reads the winner
+        CachedPC result = backend.put(oid, pc);
+        invalidate(oid);
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#putAll(java.util.Map)
+     */
+    @Override
+    public void putAll(Map<Object, CachedPC> objs)
+    {
+        if (objs == null)
+        {
+            return;
+        }
+
+        backend.putAll(objs);
+        invalidate(objs.keySet());
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#evict(java.lang.Object)
+     */
+    public void evict(Object oid)
+    {
+        backend.evict(oid);
+        invalidate(oid);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#evictAll()
+     */
+    public void evictAll()
+    {
+        backend.evictAll();
+        invalidateAll();
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#evictAll(java.lang.Object[])
+     */
+    public void evictAll(Object[] oids)
+    {
+        if (oids == null)
+        {
+            return;
+        }
+
+        backend.evictAll(oids);
+        invalidationCount.incrementAndGet();
+        for (Object oid : oids)
+        {
+            nearCache.invalidate(oid);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#evictAll(java.util.Collection)
+     */
+    public void evictAll(Collection oids)
+    {
+        if (oids == null)
+        {
+            return;
+        }
+
+        backend.evictAll(oids);
+        invalidate(oids);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.Level2Cache#evictAll(java.lang.Class, boolean)
+     */
+    public void evictAll(Class pcClass, boolean subclasses)
+    {
+        // Ids don't always define their class, so evict everything locally
+        backend.evictAll(pcClass, subclasses);
+        invalidateAll();
+    }
+}
@@ -0,0 +1,398 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.redis;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.util.NucleusLogger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.util.Pool;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * Local copy of values read from a Redis Level2 cache, kept coherent using Redis (6+) server-assisted client side caching.
+ * Tracking is enabled in broadcasting mode for all keys with the prefix of the cache, so Redis sends us the key of every entry
+ * of this cache that is changed, evicted or expires, by any client, and we drop our local copy.
+ * <p>
+ * Jedis only speaks RESP2, so invalidations are redirected to a dedicated connection subscribed to the "__redis__:invalidate" channel.
+ * Two connections are taken from the pool and held; one subscribed, and one with tracking enabled (redirecting to the subscribed one).
+ * While these are not established the local copy is empty and not used, and when they fail they are re-established.
+ * The tracking connection is otherwise idle, so it is checked every "checkMillis" with CLIENT TRACKINGINFO (PING before Redis 6.2),
+ * which also reports when the subscribed connection has gone. When the check fails the local copy is dropped and tracking is
+ * re-established, since Redis would otherwise silently stop sending invalidations.
+ * </p>
+ * <p>
+ * To avoid keeping a value read before a concurrent invalidation, values read from Redis are only kept when no invalidation was received
+ * during the read.
+ * </p>
+ */
+class RedisClientTracking
+{
+    private static final byte[] INVALIDATE_CHANNEL = SafeEncoder.encode("__redis__:invalidate");
+
+    private static final byte[] MESSAGE = SafeEncoder.encode("message");
+
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final Pool<Jedis> pool;
+
+    private final String keyPrefix;
+
+    private final Cache<ByteBuffer, CachedPC> localCache;
+
+    /** Number of invalidations received, used to detect an invalidation during a read from Redis. */
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private final long checkMillis;
+
+    private final Thread subscriberThread;
+
+    private final Thread checkThread;
+
+    private volatile Jedis subscriberJedis;
+
+    /** Connection with tracking enabled, while established. */
+    private volatile Jedis trackerJedis;
+
+    /** Client id of the tracking connection, while established. */
+    private volatile long trackerClientId = -1;
+
+    /** Client id of the subscribed connection that invalidations are redirected to. */
+    private volatile long redirectClientId = -1;
+
+    /** Whether the server supports CLIENT TRACKINGINFO (Redis 6.2+). */
+    private volatile boolean trackingInfoSupported = true;
+
+    /** Whether tracking is currently established, so the local copy can be used. */
+    private volatile boolean tracking = false;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor, starting the thread that establishes tracking.
+     * @param pool Pool of connections
+     * @param keyPrefix Prefix of all keys of the cache
+     * @param maxSize Max number of entries kept locally
+     * @param checkMillis Interval between checks of the tracking connection (ms)
+     * @param cacheName Name of the cache
+     */
+    RedisClientTracking(Pool<Jedis> pool, String keyPrefix, int maxSize, long checkMillis, String cacheName)
+    {
+        this.pool = pool;
+        this.keyPrefix = keyPrefix;
+        this.localCache = Caffeine.newBuilder().maximumSize(maxSize).build();
+        this.checkMillis = checkMillis;
+
+        subscriberThread = new Thread(this::track, "DataNucleus-Redis-Tracking-" + cacheName);
+        subscriberThread.setDaemon(true);
+        subscriberThread.start();
+
+        checkThread = new Thread(this::check, "DataNucleus-Redis-TrackingCheck-" + cacheName);
+        checkThread.setDaemon(true);
+        checkThread.start();
+    }
+
+    /**
+     * Accessor for whether tracking is established, so local copies are used.
+     * @return Whether tracking
+     */
+    boolean isTracking()
+    {
+        return tracking;
+    }
+
+    /**
+     * Accessor for the client id of the connection with tracking enabled.
+     * @return The client id, or -1 when not established
+     */
+    long getTrackerClientId()
+    {
+        return trackerClientId;
+    }
+
+    /**
+     * Accessor for the number of invalidations received so far. To be read before reading a value from Redis and passed in
+     * to {@link #put(byte[], CachedPC, long)}.
+     * @return The invalidation count
+     */
+    long getInvalidationCount()
+    {
+        return invalidationCount.get();
+    }
+
+    /**
+     * Accessor for the local copy of the value for the specified key.
+     * @param key The key
+     * @return The value, or null if not held locally
+     */
+    CachedPC get(byte[] key)
+    {
+        return tracking ? localCache.getIfPresent(ByteBuffer.wrap(key)) : null;
+    }
+
+    /**
+     * Keep a local copy of a value read from Redis, provided no invalidation was received since the read started.
+     * @param key The key
+     * @param pc The value read
+     * @param countBeforeRead The invalidation count before the read
+     */
+    void put(byte[] key, CachedPC pc, long countBeforeRead)
+    {
+        if (tracking && invalidationCount.get() == countBeforeRead)
+        {
+            localCache.put(ByteBuffer.wrap(key), pc);
+        }
+    }
+
+    void invalidate(byte[] key)
+    {
+        invalidationCount.incrementAndGet();
+        localCache.invalidate(ByteBuffer.wrap(key));
+    }
+
+    void invalidateAll()
+    {
+        invalidationCount.incrementAndGet();
+        localCache.invalidateAll();
+    }
+
+    void close()
+    {
+        closed = true;
+        tracking = false;
+        checkThread.interrupt();
+        disconnectSubscriber();
+        localCache.invalidateAll();
+    }
+
+    /**
+     * Method to disconnect the subscribed connection, which unblocks the subscriber thread so that it re-establishes tracking
+     * (unless closed).
+     */
+    private void disconnectSubscriber()
+    {
+        Jedis jedis = subscriberJedis;
+        if (jedis != null)
+        {
+            try
+            {
+                jedis.disconnect();
+            }
+            catch (Exception e)
+            {
+                NucleusLogger.CACHE.debug("Exception closing Redis tracking connection : " + e.getMessage());
+            }
+        }
+    }
+
+    private void check()
+    {
+        while (!closed)
+        {
+            try
+            {
+                Thread.sleep(checkMillis);
+            }
+            catch (InterruptedException ie)
+            {
+                return;
+            }
+
+            if (tracking && !isTrackerHealthy() && !closed)
+            {
+                NucleusLogger.CACHE.warn("Redis client tracking connection lost, so not using local copies until re-established");
+                tracking = false;
+                invalidateAll();
+                disconnectSubscriber();
+            }
+        }
+    }
+
+    /**
+     * Method to check that the tracking connection is alive, and still has tracking enabled and redirected to our subscribed connection.
+     * @return Whether the tracking connection is healthy
+     */
+    private boolean isTrackerHealthy()
+    {
+        Jedis tracker = trackerJedis;
+        if (tracker == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            if (trackingInfoSupported)
+            {
+                try
+                {
+                    return isTrackingInfoValid((List<?>) tracker.sendCommand(Protocol.Command.CLIENT, "TRACKINGINFO"));
+                }
+                catch (JedisDataException e)
+                {
+                    // Redis before 6.2
+                    trackingInfoSupported = false;
+                }
+            }
+            return "PONG".equals(tracker.ping());
+        }
+        catch (Exception e)
+        {
+            NucleusLogger.CACHE.debug("Exception checking Redis tracking connection : " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Method to check the reply of CLIENT TRACKINGINFO, a flat list of name and value.
+     * @param info The reply
+     * @return Whether tracking is on, and redirected to our subscribed connection
+     */
+    private boolean isTrackingInfoValid(List<?> info)
+    {
+        boolean on = false;
+        boolean redirected = false;
+        for (int i = 0; i + 1 < info.size(); i += 2)
+        {
+            String name = SafeEncoder.encode((byte[]) info.get(i));
+            Object value = info.get(i + 1);
+            if ("flags".equals(name) && value instanceof List)
+            {
+                for (Object flag : (List<?>) value)
+                {
+                    String flagName = SafeEncoder.encode((byte[]) flag);
+                    if ("on".equals(flagName))
+                    {
+                        on = true;
+                    }
+                    else if ("broken_redirect".equals(flagName))
+                    {
+                        return false;
+                    }
+                }
+            }
+            else if ("redirect".equals(name) && value instanceof Long)
+            {
+                redirected = (Long) value == redirectClientId;
+            }
+        }
+        return on && redirected;
+    }
+
+    private void track()
+    {
+        while (!closed)
+        {
+            Jedis subscriber = null;
+            Jedis tracker = null;
+            try
+            {
+                subscriber = pool.getResource();
+                subscriberJedis = subscriber;
+                long clientId = (Long) subscriber.sendCommand(Protocol.Command.CLIENT, "ID");
+                Connection client = subscriber.getClient();
+                client.setTimeoutInfinite();
+                client.sendCommand(Protocol.Command.SUBSCRIBE, INVALIDATE_CHANNEL);
+                client.getObjectMultiBulkReply();
+
+                tracker = pool.getResource();
+                tracker.sendCommand(Protocol.Command.CLIENT, "TRACKING", "ON", "REDIRECT", Long.toString(clientId), "BCAST", "PREFIX", keyPrefix);
+                redirectClientId = clientId;
+                trackerClientId = (Long) tracker.sendCommand(Protocol.Command.CLIENT, "ID");
+                trackerJedis = tracker;
+
+                // Anything could have changed while we weren't tracking
+                invalidateAll();
+                tracking = true;
+                NucleusLogger.CACHE.debug("Redis client tracking established for keys with prefix " + keyPrefix);
+
+                while (!closed)
+                {
+                    processMessage(client.getObjectMultiBulkReply());
+                }
+            }
+            catch (Exception e)
+            {
+                tracking = false;
+                if (!closed)
+                {
+                    NucleusLogger.CACHE.warn("Redis client tracking failed, so not using local copies until re-established : " + e.getMessage());
+                    try
+                    {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+            finally
+            {
+                tracking = false;
+                invalidateAll();
+                subscriberJedis = null;
+                trackerJedis = null;
+                trackerClientId = -1;
+                // Neither connection is reusable, since one is subscribed and the other is tracking
+                if (tracker != null)
+                {
+                    pool.returnBrokenResource(tracker);
+                }
+                if (subscriber != null)
+                {
+                    pool.returnBrokenResource(subscriber);
+                }
+            }
+        }
+    }
+
+    private void processMessage(List<Object> reply)
+    {
+        if (reply == null || reply.size() < 3 || !Arrays.equals(MESSAGE, (byte[])reply.get(0)))
+        {
+            return;
+        }
+
+        Object keys = reply.get(2);
+        if (keys instanceof List)
+        {
+            for (Object key : (List)keys)
+            {
+                invalidate((byte[])key);
+            }
+        }
+        else
+        {
+            // Null when the database is flushed
+            invalidateAll();
+        }
+    }
+}
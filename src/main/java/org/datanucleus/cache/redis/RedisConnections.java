@@ -0,0 +1,582 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.redis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.datanucleus.exceptions.NucleusException;
+import org.datanucleus.exceptions.NucleusUserException;
+import org.datanucleus.util.NucleusLogger;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.clients.jedis.util.Pool;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * Connections to the Redis server(s) used by a Redis cache. Supports
+ * <ul>
+ * <li>a single server</li>
+ * <li>a master located using sentinels</li>
+ * <li>a Redis Cluster, located from a list of seed nodes. The slot map is read using CLUSTER SLOTS, and re-read
+ * whenever a node replies with MOVED or can't be reached (e.g. after a failover), after which the operation is retried once.
+ * A reply of ASK (slot being migrated) is followed by sending the keys of that slot to the target node, preceded by ASKING.</li>
+ * </ul>
+ * Operations on many keys are grouped by node, and by hash slot within a node (since multi-key commands can only span one slot),
+ * with the nodes processed in parallel.
+ * When using sentinels, reads can be spread over the replicas according to a read policy (see RedisReplicaMonitor).
+ */
+class RedisConnections
+{
+    /** Number of hash slots of a Redis Cluster. */
+    private static final int SLOTS = 16384;
+
+    /**
+     * Operation using a connection.
+     * @param <T> Type of result
+     */
+    interface Operation<T>
+    {
+        T execute(Jedis jedis);
+    }
+
+    /**
+     * Operation using a connection on a set of keys held by the node of that connection.
+     * @param <T> Type of result
+     */
+    interface KeysOperation<T>
+    {
+        /**
+         * Perform the operation.
+         * @param jedis Connection to the node
+         * @param slotGroups Positions of the keys held by this node, grouped by hash slot
+         * @return The result for this node
+         */
+        T execute(Jedis jedis, List<int[]> slotGroups);
+    }
+
+    private final int timeout;
+
+    private final int database;
+
+    /** "host:port" of the sentinels (if used). */
+    private final List<String> sentinels = new ArrayList<>();
+
+    private final String masterName;
+
+    /** Monitor of the replicas, when reading from replicas. */
+    private RedisReplicaMonitor replicaMonitor;
+
+    /** Pool for a single server, or for the master when using sentinels. Null when using a cluster. */
+    private final Pool<Jedis> pool;
+
+    /** Cluster node pools, keyed by "host:port". */
+    private final Map<String, JedisPool> nodePools;
+
+    /** Cluster node pool for each hash slot. */
+    private volatile JedisPool[] slotPools;
+
+    /** Executor for processing cluster nodes in parallel. */
+    private final ExecutorService executor;
+
+    /**
+     * Constructor.
+     * @param server Server name, when using a single server
+     * @param port Port, when using a single server
+     * @param sentinels Comma-separated "host:port" of the sentinels (optional)
+     * @param masterName Name of the master (when using sentinels)
+     * @param clusterNodes Comma-separated "host:port" of some nodes of the cluster (optional)
+     * @param timeout Connection/socket timeout (ms)
+     * @param database The database number (not used with a cluster, which only has database 0)
+     */
+    RedisConnections(String server, int port, String sentinels, String masterName, String clusterNodes, int timeout, int database)
+    {
+        this.timeout = timeout;
+        this.database = database;
+        this.masterName = masterName;
+        if (clusterNodes != null && clusterNodes.length() > 0)
+        {
+            pool = null;
+            nodePools = new ConcurrentHashMap<>();
+            for (String node : clusterNodes.split(","))
+            {
+                getNodePool(node.trim());
+            }
+            executor = Executors.newCachedThreadPool(r ->
+            {
+                Thread thread = new Thread(r, "DataNucleus-Redis-Cluster");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refreshSlots();
+        }
+        else
+        {
+            nodePools = null;
+            executor = null;
+            if (sentinels != null && sentinels.length() > 0)
+            {
+                Set<String> sentinelSet = new LinkedHashSet<>();
+                sentinelSet.addAll(Arrays.asList(sentinels.split(",")));
+                this.sentinels.addAll(sentinelSet);
+                pool = new JedisSentinelPool(masterName, sentinelSet, new JedisPoolConfig(), timeout, null, database);
+            }
+            else
+            {
+                pool = new JedisPool(new JedisPoolConfig(), server, port, timeout, null, database);
+            }
+        }
+    }
+
+    boolean isCluster()
+    {
+        return pool == null;
+    }
+
+    /**
+     * Method to set the policy for reads. Only applies when using sentinels, since replicas are located using them.
+     * @param readPolicy The read policy ("master", "replica-preferred", "nearest")
+     * @param maxLagMillis Max lag of a replica behind the master for it to be read from (0 for no bound)
+     */
+    void setReadPolicy(String readPolicy, long maxLagMillis)
+    {
+        if (readPolicy == null || RedisReplicaMonitor.READ_POLICY_MASTER.equalsIgnoreCase(readPolicy))
+        {
+            return;
+        }
+        if (!RedisReplicaMonitor.READ_POLICY_REPLICA_PREFERRED.equalsIgnoreCase(readPolicy) && !RedisReplicaMonitor.READ_POLICY_NEAREST.equalsIgnoreCase(readPolicy))
+        {
+            throw new NucleusUserException("Redis read policy \"" + readPolicy + "\" is not supported. Use master, replica-preferred or nearest");
+        }
+        if (sentinels.isEmpty())
+        {
+            NucleusLogger.CACHE.warn("Redis read policy \"" + readPolicy + "\" requires sentinels to locate the replicas, so reading from the master");
+            return;
+        }
+        replicaMonitor = new RedisReplicaMonitor(pool, sentinels, masterName, timeout, database, readPolicy, maxLagMillis);
+    }
+
+    /**
+     * Accessor for the pool of connections to use for operations not related to a key (e.g pub/sub).
+     * @return The pool (for the master, or for a cluster node)
+     */
+    Pool<Jedis> getPool()
+    {
+        return pool != null ? pool : getMasterPools().iterator().next();
+    }
+
+    /**
+     * Accessor for the pool of connections to the node holding the specified key.
+     * @param key The key
+     * @return The pool
+     */
+    Pool<Jedis> getPool(byte[] key)
+    {
+        if (pool != null)
+        {
+            return pool;
+        }
+
+        JedisPool slotPool = slotPools[JedisClusterCRC16.getSlot(key)];
+        if (slotPool == null)
+        {
+            throw new NucleusException("Redis cluster has no node serving the hash slot of key " + SafeEncoder.encode(key));
+        }
+        return slotPool;
+    }
+
+    /**
+     * Accessor for the pools of all masters.
+     * @return The pools
+     */
+    Collection<? extends Pool<Jedis>> getMasterPools()
+    {
+        if (pool != null)
+        {
+            return Collections.singletonList(pool);
+        }
+
+        Set<JedisPool> masters = new LinkedHashSet<>();
+        for (JedisPool slotPool : slotPools)
+        {
+            if (slotPool != null)
+            {
+                masters.add(slotPool);
+            }
+        }
+        return masters;
+    }
+
+    /**
+     * Execute the operation using a connection for the specified key. With a cluster the operation is retried once if the
+     * slot has moved or the node can't be reached (after re-reading the slot map), and sent to the target node if the slot
+     * is being migrated.
+     * @param key The key
+     * @param op The operation
+     * @return The result
+     * @param <T> Type of result
+     */
+    <T> T execute(byte[] key, Operation<T> op)
+    {
+        if (pool != null)
+        {
+            return executeOnPool(pool, op);
+        }
+
+        try
+        {
+            return executeOnPool(getPool(key), op);
+        }
+        catch (JedisAskDataException e)
+        {
+            return executeOnPool(getNodePool(e.getTargetNode().toString()), jedis ->
+            {
+                jedis.asking();
+                return op.execute(jedis);
+            });
+        }
+        catch (JedisMovedDataException | JedisConnectionException e)
+        {
+            refreshSlots();
+            return executeOnPool(getPool(key), op);
+        }
+    }
+
+    /**
+     * Execute the (read) operation for the specified key using a connection according to the read policy.
+     * If a replica fails the operation is retried on the master.
+     * @param key The key
+     * @param op The operation
+     * @return The result
+     * @param <T> Type of result
+     */
+    <T> T executeRead(byte[] key, Operation<T> op)
+    {
+        if (replicaMonitor == null)
+        {
+            return execute(key, op);
+        }
+
+        Pool<Jedis> readPool = replicaMonitor.getReadPool();
+        if (readPool == pool)
+        {
+            return executeOnPool(pool, op);
+        }
+        try
+        {
+            return executeOnPool(readPool, op);
+        }
+        catch (JedisConnectionException e)
+        {
+            replicaMonitor.markFailed(readPool);
+            return executeOnPool(pool, op);
+        }
+    }
+
+    /**
+     * Execute the operation using a connection from the specified pool.
+     * @param connPool The pool
+     * @param op The operation
+     * @return The result
+     * @param <T> Type of result
+     */
+    <T> T executeOnPool(Pool<Jedis> connPool, Operation<T> op)
+    {
+        Jedis jedis = connPool.getResource();
+        try
+        {
+            T result = op.execute(jedis);
+            connPool.returnResource(jedis);
+            return result;
+        }
+        catch (JedisDataException e)
+        {
+            // Error reply, so the connection is still usable
+            connPool.returnResource(jedis);
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            connPool.returnBrokenResource(jedis);
+            throw e;
+        }
+    }
+
+    /**
+     * Execute the operation on the specified keys, once per node holding some of the keys (in parallel for a cluster).
+     * If a cluster slot has moved or a node can't be reached the slot map is refreshed and the whole operation retried once,
+     * so the operation has to be idempotent. If a slot is being migrated the operation is retried with the keys of that slot
+     * sent one at a time to the target node (preceded by ASKING), so the operation must send one command per key group.
+     * @param keys The keys
+     * @param op The operation
+     * @return The results from each node
+     * @param <T> Type of result
+     */
+    <T> List<T> executeByNode(byte[][] keys, KeysOperation<T> op)
+    {
+        if (pool != null)
+        {
+            return Collections.singletonList(executeOnPool(pool, jedis -> op.execute(jedis, getAllPositions(keys))));
+        }
+
+        int[] positions = getAllPositions(keys).get(0);
+        try
+        {
+            return executeByClusterNode(keys, positions, op);
+        }
+        catch (JedisAskDataException e)
+        {
+            return executeAsking(keys, positions, op, e);
+        }
+        catch (JedisMovedDataException | JedisConnectionException e)
+        {
+            refreshSlots();
+            return executeByClusterNode(keys, positions, op);
+        }
+    }
+
+    /**
+     * Execute the operation on the specified keys after a node replied with ASK for one slot. The keys of other slots
+     * are processed as normal, and the keys of that slot are sent individually to the target node, each preceded by ASKING
+     * (which applies only to the next command).
+     * @param keys The keys
+     * @param positions Positions of the keys to process
+     * @param op The operation
+     * @param ask The ASK reply
+     * @return The results from each node (and for each key of the migrating slot)
+     * @param <T> Type of result
+     */
+    private <T> List<T> executeAsking(byte[][] keys, int[] positions, KeysOperation<T> op, JedisAskDataException ask)
+    {
+        int[] otherPositions = Arrays.stream(positions).filter(pos -> JedisClusterCRC16.getSlot(keys[pos]) != ask.getSlot()).toArray();
+        List<T> results = (otherPositions.length > 0) ? executeByClusterNode(keys, otherPositions, op) : new ArrayList<>();
+
+        JedisPool targetPool = getNodePool(ask.getTargetNode().toString());
+        for (int pos : positions)
+        {
+            if (JedisClusterCRC16.getSlot(keys[pos]) == ask.getSlot())
+            {
+                List<int[]> keyGroup = Collections.singletonList(new int[] {pos});
+                results.add(executeOnPool(targetPool, jedis ->
+                {
+                    jedis.asking();
+                    return op.execute(jedis, keyGroup);
+                }));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Execute the (read) operation on the specified keys, like {@link #executeByNode(byte[][], KeysOperation)} but using
+     * a connection according to the read policy. If a replica fails the operation is retried on the master.
+     * @param keys The keys
+     * @param op The operation
+     * @return The results from each node
+     * @param <T> Type of result
+     */
+    <T> List<T> executeReadByNode(byte[][] keys, KeysOperation<T> op)
+    {
+        if (replicaMonitor == null)
+        {
+            return executeByNode(keys, op);
+        }
+
+        Pool<Jedis> readPool = replicaMonitor.getReadPool();
+        try
+        {
+            return Collections.singletonList(executeOnPool(readPool, jedis -> op.execute(jedis, getAllPositions(keys))));
+        }
+        catch (JedisConnectionException e)
+        {
+            if (readPool == pool)
+            {
+                throw e;
+            }
+            replicaMonitor.markFailed(readPool);
+            return executeByNode(keys, op);
+        }
+    }
+
+    private static List<int[]> getAllPositions(byte[][] keys)
+    {
+        int[] positions = new int[keys.length];
+        for (int i = 0; i < positions.length; i++)
+        {
+            positions[i] = i;
+        }
+        return Collections.singletonList(positions);
+    }
+
+    private <T> List<T> executeByClusterNode(byte[][] keys, int[] positions, KeysOperation<T> op)
+    {
+        // Group key positions by node, then by slot
+        Map<Pool<Jedis>, Map<Integer, List<Integer>>> positionsByNode = new LinkedHashMap<>();
+        for (int i : positions)
+        {
+            int slot = JedisClusterCRC16.getSlot(keys[i]);
+            positionsByNode.computeIfAbsent(getPool(keys[i]), p -> new LinkedHashMap<>()).computeIfAbsent(slot, s -> new ArrayList<>()).add(i);
+        }
+
+        List<Future<T>> futures = new ArrayList<>(positionsByNode.size());
+        for (Map.Entry<Pool<Jedis>, Map<Integer, List<Integer>>> entry : positionsByNode.entrySet())
+        {
+            List<int[]> slotGroups = new ArrayList<>(entry.getValue().size());
+            for (List<Integer> slotPositions : entry.getValue().values())
+            {
+                slotGroups.add(slotPositions.stream().mapToInt(Integer::intValue).toArray());
+            }
+            futures.add(executor.submit(() -> executeOnPool(entry.getKey(), jedis -> op.execute(jedis, slotGroups))));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures)
+        {
+            try
+            {
+                results.add(future.get());
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof RuntimeException)
+                {
+                    throw (RuntimeException)e.getCause();
+                }
+                throw new NucleusException("Error performing operation on Redis cluster node", e.getCause());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new NucleusException("Interrupted performing operation on Redis cluster", e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Method to sync the pipeline, throwing the first error reply (e.g MOVED) of any of its commands.
+     * @param pipeline The pipeline
+     */
+    static void sync(Pipeline pipeline)
+    {
+        for (Object result : pipeline.syncAndReturnAll())
+        {
+            if (result instanceof JedisDataException)
+            {
+                throw (JedisDataException)result;
+            }
+        }
+    }
+
+    /**
+     * Method to (re)read the cluster slot map from any reachable node.
+     */
+    synchronized void refreshSlots()
+    {
+        RuntimeException failure = null;
+        for (Map.Entry<String, JedisPool> node : new ArrayList<>(nodePools.entrySet()))
+        {
+            Jedis jedis = null;
+            try
+            {
+                jedis = node.getValue().getResource();
+                List<Object> slotInfos = jedis.clusterSlots();
+                node.getValue().returnResource(jedis);
+
+                JedisPool[] newSlotPools = new JedisPool[SLOTS];
+                for (Object slotInfoObj : slotInfos)
+                {
+                    List<?> slotInfo = (List<?>)slotInfoObj;
+                    int start = ((Long)slotInfo.get(0)).intValue();
+                    int end = ((Long)slotInfo.get(1)).intValue();
+                    List<?> master = (List<?>)slotInfo.get(2);
+                    String host = SafeEncoder.encode((byte[])master.get(0));
+                    if (host.isEmpty())
+                    {
+                        // Node doesn't know its own address, so use the one we connected to
+                        host = node.getKey().substring(0, node.getKey().lastIndexOf(':'));
+                    }
+                    JedisPool masterPool = getNodePool(host + ":" + master.get(1));
+                    Arrays.fill(newSlotPools, start, end + 1, masterPool);
+                }
+                slotPools = newSlotPools;
+                NucleusLogger.CACHE.debug("Redis cluster slot map read from " + node.getKey());
+                return;
+            }
+            catch (RuntimeException e)
+            {
+                if (jedis != null)
+                {
+                    node.getValue().returnBrokenResource(jedis);
+                }
+                failure = e;
+            }
+        }
+        throw new NucleusException("Unable to read the slot map from any Redis cluster node", failure);
+    }
+
+    private JedisPool getNodePool(String hostAndPort)
+    {
+        return nodePools.computeIfAbsent(hostAndPort, hp ->
+        {
+            int sep = hp.lastIndexOf(':');
+            return new JedisPool(new JedisPoolConfig(), hp.substring(0, sep), Integer.parseInt(hp.substring(sep + 1)), timeout);
+        });
+    }
+
+    void close()
+    {
+        if (replicaMonitor != null)
+        {
+            replicaMonitor.close();
+        }
+        if (pool != null)
+        {
+            pool.close();
+        }
+        else
+        {
+            executor.shutdownNow();
+            for (JedisPool nodePool : nodePools.values())
+            {
+                nodePool.close();
+            }
+        }
+    }
+}
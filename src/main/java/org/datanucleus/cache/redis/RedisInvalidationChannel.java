@@ -0,0 +1,249 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.datanucleus.cache.near.InvalidationListener;
+import org.datanucleus.cache.serializer.CacheSerializer;
+import org.datanucleus.util.NucleusLogger;
+
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.util.Pool;
+
+/**
+ * Redis pub/sub channel used to notify all processes using a Redis Level2 cache of invalidated entries.
+ * Messages are only published once a listener is registered, and comprise
+ * <ul>
+ * <li>8 bytes identifying the publishing process (so that it can ignore its own messages)</li>
+ * <li>a type byte; 'I' for invalidation of the ids that follow (serialized as a List), 'A' for invalidation of all entries</li>
+ * </ul>
+ * Subscription is made on a dedicated connection taken from the pool, and is re-established if the connection fails.
+ */
+class RedisInvalidationChannel
+{
+    private static final byte TYPE_IDS = 'I';
+    private static final byte TYPE_ALL = 'A';
+
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final Pool<Jedis> pool;
+
+    private final byte[] channel;
+
+    private final CacheSerializer serializer;
+
+    /** Identifier of this process in published messages. */
+    private final long sourceId = UUID.randomUUID().getMostSignificantBits();
+
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+    private Thread subscriberThread;
+
+    private volatile Subscriber subscriber;
+
+    private volatile boolean closed = false;
+
+    RedisInvalidationChannel(Pool<Jedis> pool, String cacheName, CacheSerializer serializer)
+    {
+        this.pool = pool;
+        this.channel = (cacheName + ":invalidations").getBytes(StandardCharsets.UTF_8);
+        this.serializer = serializer;
+    }
+
+    /**
+     * Accessor for whether invalidations need publishing, i.e whether a listener is registered.
+     * @return Whether active
+     */
+    boolean isActive()
+    {
+        return !listeners.isEmpty();
+    }
+
+    synchronized void addListener(InvalidationListener listener)
+    {
+        listeners.add(listener);
+        if (subscriberThread == null)
+        {
+            subscriberThread = new Thread(this::subscribe, "DataNucleus-Redis-Invalidations");
+            subscriberThread.setDaemon(true);
+            subscriberThread.start();
+        }
+    }
+
+    void removeListener(InvalidationListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Queue publication of the invalidation of the specified ids on the pipeline.
+     * @param pipeline The pipeline
+     * @param oids Identities of the invalidated entries
+     */
+    void publish(Pipeline pipeline, Collection oids)
+    {
+        byte[] ids = serializer.serialize(oids instanceof ArrayList ? oids : new ArrayList<Object>((Collection<?>) oids));
+        byte[] message = createMessage(TYPE_IDS, ids.length);
+        System.arraycopy(ids, 0, message, 9, ids.length);
+        pipeline.publish(channel, message);
+    }
+
+    /**
+     * Publish the invalidation of all entries.
+     * @param jedis The connection
+     */
+    void publishAll(Jedis jedis)
+    {
+        jedis.publish(channel, createMessage(TYPE_ALL, 0));
+    }
+
+    void close()
+    {
+        closed = true;
+        Subscriber current = subscriber;
+        if (current != null && current.isSubscribed())
+        {
+            try
+            {
+                current.unsubscribe();
+            }
+            catch (Exception e)
+            {
+                NucleusLogger.CACHE.debug("Exception unsubscribing from Redis invalidations : " + e.getMessage());
+            }
+        }
+        listeners.clear();
+    }
+
+    private byte[] createMessage(byte type, int payloadLength)
+    {
+        byte[] message = new byte[9 + payloadLength];
+        for (int i = 0; i < 8; i++)
+        {
+            message[i] = (byte)(sourceId >>> (56 - 8 * i));
+        }
+        message[8] = type;
+        return message;
+    }
+
+    private void subscribe()
+    {
+        while (!closed)
+        {
+            Jedis jedis = null;
+            try
+            {
+                jedis = pool.getResource();
+                subscriber = new Subscriber();
+                jedis.subscribe(subscriber, channel);
+            }
+            catch (Exception e)
+            {
+                if (!closed)
+                {
+                    NucleusLogger.CACHE.warn("Subscription to Redis invalidations failed, so will retry : " + e.getMessage());
+                    try
+                    {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+            finally
+            {
+                if (jedis != null)
+                {
+                    jedis.close();
+                }
+            }
+        }
+    }
+
+    private class Subscriber extends BinaryJedisPubSub
+    {
+        @Override
+        public void onSubscribe(byte[] channel, int subscribedChannels)
+        {
+            // Anything could have changed while we weren't subscribed
+            for (InvalidationListener listener : listeners)
+            {
+                listener.invalidateAll();
+            }
+        }
+
+        @Override
+        public void onMessage(byte[] channel, byte[] message)
+        {
+            if (message.length < 9)
+            {
+                return;
+            }
+
+            long source = 0;
+            for (int i = 0; i < 8; i++)
+            {
+                source = (source << 8) | (message[i] & 0xFF);
+            }
+            if (source == sourceId)
+            {
+                return;
+            }
+
+            try
+            {
+                if (message[8] == TYPE_IDS)
+                {
+                    byte[] ids = new byte[message.length - 9];
+                    System.arraycopy(message, 9, ids, 0, ids.length);
+                    Collection oids = (Collection) serializer.deserialize(ids);
+                    for (InvalidationListener listener : listeners)
+                    {
+                        listener.invalidate(oids);
+                    }
+                }
+                else
+                {
+                    for (InvalidationListener listener : listeners)
+                    {
+                        listener.invalidateAll();
+                    }
+                }
+            }
+            catch (RuntimeException e)
+            {
+                NucleusLogger.CACHE.warn("Unable to process Redis invalidation, so invalidating all : " + e.getMessage());
+                for (InvalidationListener listener : listeners)
+                {
+                    listener.invalidateAll();
+                }
+            }
+        }
+    }
+}
@@ -17,54 +17,109 @@ Contributors:
  **********************************************************************/
 package org.datanucleus.cache.redis;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedHashSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.datanucleus.Configuration;
 import org.datanucleus.NucleusContext;
 import org.datanucleus.cache.AbstractLevel2Cache;
 import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.key.CacheKeyEncoder;
+import org.datanucleus.cache.key.ClassKeys;
+import org.datanucleus.cache.near.InvalidationListener;
+import org.datanucleus.cache.near.InvalidationNotifier;
+import org.datanucleus.cache.serializer.CacheSerializer;
+import org.datanucleus.cache.serializer.CacheSerializerFactory;
+import org.datanucleus.cache.support.SingleFlight;
+import org.datanucleus.cache.support.WriteBehindQueue;
 import org.datanucleus.exceptions.NucleusException;
-import org.datanucleus.identity.IdentityUtils;
-import org.datanucleus.identity.SingleFieldId;
+import org.datanucleus.util.ClassUtils;
+import org.datanucleus.util.NucleusLogger;
 
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
-import redis.clients.jedis.JedisSentinelPool;
-import redis.clients.util.Pool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.Pool;
 
 /**
  * Plugin using <a href="https://redis.io/">Redis</a> as a Level2 cache.
  * Dependent on Jedis, and Apache Commons Pool2.
+ * Can use a single server, a master located via sentinels, or a Redis Cluster. With a cluster, keys use a hash tag of
+ * "{cacheName:className}" so all entries of a class are in the same shard, and bulk operations are grouped by node and hash slot.
+ * When an invalidation listener is registered (e.g by a near cache) all changes are also published to a Redis channel.
+ * When "clientTracking" is enabled (Redis 6+), values read are also kept locally (requiring Caffeine), and dropped when Redis
+ * notifies us that their key has changed.
+ * When using sentinels, reads (get, getAll, containsOid) can be made from replicas using "readPolicy" of "replica-preferred"
+ * or "nearest", optionally only from replicas within "replicaMaxLagMillis" of the master. Writes and evictions always use the master.
+ * When "writeBehind" is enabled puts are queued and written in batches by a background thread (see WriteBehindQueue).
+ * When "singleFlight" is enabled only one thread (across all processes, using a lease key set with SET NX PX) loads a missing object,
+ * with the others waiting briefly for its put (see SingleFlight).
  */
-public class RedisLevel2Cache extends AbstractLevel2Cache
+public class RedisLevel2Cache extends AbstractLevel2Cache implements InvalidationNotifier
 {
     private static final long serialVersionUID = 4428364640009394044L;
 
     public static final String PROPERTY_CACHE_L2_REDIS_DATABASE = "datanucleus.cache.level2.redis.database";
     public static final String PROPERTY_CACHE_L2_REDIS_TIMEOUT = "datanucleus.cache.level2.redis.timeout";
     public static final String PROPERTY_CACHE_L2_REDIS_SENTINELS = "datanucleus.cache.level2.redis.sentinels";
+    public static final String PROPERTY_CACHE_L2_REDIS_MASTER_NAME = "datanucleus.cache.level2.redis.masterName";
+    public static final String PROPERTY_CACHE_L2_REDIS_CLUSTER = "datanucleus.cache.level2.redis.cluster";
+    public static final String PROPERTY_CACHE_L2_REDIS_READ_POLICY = "datanucleus.cache.level2.redis.readPolicy";
+    public static final String PROPERTY_CACHE_L2_REDIS_REPLICA_MAX_LAG_MILLIS = "datanucleus.cache.level2.redis.replicaMaxLagMillis";
     public static final String PROPERTY_CACHE_L2_REDIS_SERVER = "datanucleus.cache.level2.redis.server";
     public static final String PROPERTY_CACHE_L2_REDIS_PORT = "datanucleus.cache.level2.redis.port";
+    public static final String PROPERTY_CACHE_L2_REDIS_BATCH_SIZE = "datanucleus.cache.level2.redis.batchSize";
+    public static final String PROPERTY_CACHE_L2_REDIS_UNLINK = "datanucleus.cache.level2.redis.unlink";
+    public static final String PROPERTY_CACHE_L2_REDIS_CLIENT_TRACKING = "datanucleus.cache.level2.redis.clientTracking";
+    public static final String PROPERTY_CACHE_L2_REDIS_CLIENT_TRACKING_MAX_SIZE = "datanucleus.cache.level2.redis.clientTrackingMaxSize";
+    public static final String PROPERTY_CACHE_L2_REDIS_CLIENT_TRACKING_CHECK_MILLIS = "datanucleus.cache.level2.redis.clientTrackingCheckMillis";
 
-    private Pool<Jedis> pool;
+    private RedisConnections connections;
 
-    private int expirySeconds;
+    private CacheSerializer serializer;
+
+    private CacheKeyEncoder keyEncoder;
+
+    private RedisInvalidationChannel invalidations;
+
+    /** Local copies of values read, when using client tracking. */
+    private RedisClientTracking clientTracking;
+
+    /** Queue of puts to write in the background, when using write-behind. */
+    private WriteBehindQueue writeBehind;
+
+    /** Stampede protection for misses, when enabled. */
+    private SingleFlight singleFlight;
+
+    private long expirySeconds;
+
+    /** Max number of keys sent to Redis in a single MGET or pipelined SETEX batch. */
+    private int batchSize;
+
+    /** Whether to remove keys using UNLINK (Redis 4+, memory reclaimed in the background) rather than DEL. */
+    private boolean unlink;
 
     private final static String DEFAULT_SERVER = "localhost";
+    private final static String DEFAULT_MASTER_NAME = "mymaster";
     private final static int DEFAULT_DATABASE = 1;
     private final static int DEFAULT_PORT = 6379;
     private final static int DEFAULT_TIMEOUT = 5000;
+    private final static int DEFAULT_BATCH_SIZE = 500;
+    private final static int DEFAULT_CLIENT_TRACKING_MAX_SIZE = 10000;
+    private final static long DEFAULT_CLIENT_TRACKING_CHECK_MILLIS = 1000;
+
+    private final static byte[] LEASE_SUFFIX = ":lease".getBytes(StandardCharsets.UTF_8);
+    private final static byte[] LEASE_VALUE = {1};
 
     public RedisLevel2Cache(NucleusContext nucleusCtx)
     {
@@ -78,70 +133,170 @@ public class RedisLevel2Cache extends AbstractLevel2Cache
         int timeout = conf.getIntProperty(PROPERTY_CACHE_L2_REDIS_TIMEOUT);
         timeout = timeout == 0 ? DEFAULT_TIMEOUT : timeout;
 
-        expirySeconds = (int) (expiryMillis/1000);
+        expirySeconds = expiryMillis/1000;
+
+        batchSize = conf.getIntProperty(PROPERTY_CACHE_L2_REDIS_BATCH_SIZE);
+        batchSize = batchSize <= 0 ? DEFAULT_BATCH_SIZE : batchSize;
+
+        unlink = conf.getBooleanProperty(PROPERTY_CACHE_L2_REDIS_UNLINK);
+
+        String server = conf.getStringProperty(PROPERTY_CACHE_L2_REDIS_SERVER);
+        int port = conf.getIntProperty(PROPERTY_CACHE_L2_REDIS_PORT);
+        String masterName = conf.getStringProperty(PROPERTY_CACHE_L2_REDIS_MASTER_NAME);
+        connections = new RedisConnections(server == null ? DEFAULT_SERVER : server, port == 0 ? DEFAULT_PORT : port,
+            conf.getStringProperty(PROPERTY_CACHE_L2_REDIS_SENTINELS), masterName == null ? DEFAULT_MASTER_NAME : masterName,
+            conf.getStringProperty(PROPERTY_CACHE_L2_REDIS_CLUSTER), timeout, database);
+
+        serializer = CacheSerializerFactory.getLevel2Serializer(nucleusCtx);
+        keyEncoder = new CacheKeyEncoder(cacheName, CacheKeyEncoder.DEFAULT_MAX_KEY_LENGTH, connections.isCluster());
+
+        invalidations = new RedisInvalidationChannel(connections.getPool(), cacheName, serializer);
+
+        if (conf.getBooleanProperty(PROPERTY_CACHE_L2_REDIS_CLIENT_TRACKING))
+        {
+            if (connections.isCluster())
+            {
+                NucleusLogger.CACHE.warn("Redis client tracking is not supported with a Redis cluster, so ignoring " + PROPERTY_CACHE_L2_REDIS_CLIENT_TRACKING);
+            }
+            else
+            {
+                ClassUtils.assertClassForJarExistsInClasspath(nucleusCtx.getClassLoaderResolver(null), "com.github.benmanes.caffeine.cache.Caffeine", "caffeine.jar");
+                int trackingMaxSize = conf.getIntProperty(PROPERTY_CACHE_L2_REDIS_CLIENT_TRACKING_MAX_SIZE);
+                int trackingCheckMillis = conf.getIntProperty(PROPERTY_CACHE_L2_REDIS_CLIENT_TRACKING_CHECK_MILLIS);
+                clientTracking = new RedisClientTracking(connections.getPool(), cacheName + ":", trackingMaxSize > 0 ? trackingMaxSize : DEFAULT_CLIENT_TRACKING_MAX_SIZE,
+                    trackingCheckMillis > 0 ? trackingCheckMillis : DEFAULT_CLIENT_TRACKING_CHECK_MILLIS, cacheName);
+            }
+        }
 
-        String sentinelsStr = conf.getStringProperty(PROPERTY_CACHE_L2_REDIS_SENTINELS);
-        if (sentinelsStr != null && sentinelsStr.length() > 0)
+        String readPolicy = conf.getStringProperty(PROPERTY_CACHE_L2_REDIS_READ_POLICY);
+        if (clientTracking != null && readPolicy != null && !readPolicy.equalsIgnoreCase("master"))
         {
-            Set<String> sentinels = new LinkedHashSet<>();
-            sentinels.addAll(Arrays.asList(sentinelsStr.split(",")));
-            pool = new JedisSentinelPool("mymaster", sentinels, new GenericObjectPoolConfig(), timeout, null, database);
+            // A replica may not yet have a change we have been notified of, so we could keep a stale value
+            NucleusLogger.CACHE.warn("Redis client tracking requires reading from the master, so ignoring " + PROPERTY_CACHE_L2_REDIS_READ_POLICY);
         }
         else
         {
-            String server = conf.getStringProperty(PROPERTY_CACHE_L2_REDIS_SERVER);
-            int port = conf.getIntProperty(PROPERTY_CACHE_L2_REDIS_PORT);
+            connections.setReadPolicy(readPolicy, conf.getIntProperty(PROPERTY_CACHE_L2_REDIS_REPLICA_MAX_LAG_MILLIS));
+        }
+
+        writeBehind = WriteBehindQueue.create(conf, cacheName, this::writeAll);
+        singleFlight = SingleFlight.create(conf, new RedisLease());
+    }
+
+    /**
+     * Lease on loading an object, held as a key (the object key with suffix ":lease") set with SET NX PX.
+     */
+    private class RedisLease implements SingleFlight.DistributedLease
+    {
+        @Override
+        public boolean acquire(Object oid, long leaseMillis)
+        {
+            byte[] key = getLeaseKey(oid);
+            return "OK".equals(connections.execute(key, jedis -> jedis.set(key, LEASE_VALUE, SetParams.setParams().nx().px(leaseMillis))));
+        }
 
-            server = server == null ? DEFAULT_SERVER : server;
-            port = port == 0 ? DEFAULT_PORT : port;
+        @Override
+        public void release(Object oid)
+        {
+            byte[] key = getLeaseKey(oid);
+            connections.execute(key, jedis -> jedis.del(key));
+        }
 
-            pool = new JedisPool(new JedisPoolConfig(), server, port, timeout, null, database);
+        private byte[] getLeaseKey(Object oid)
+        {
+            byte[] key = getCacheKeyForId(oid);
+            byte[] leaseKey = Arrays.copyOf(key, key.length + LEASE_SUFFIX.length);
+            System.arraycopy(LEASE_SUFFIX, 0, leaseKey, key.length, LEASE_SUFFIX.length);
+            return leaseKey;
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.near.InvalidationNotifier#addInvalidationListener(org.datanucleus.cache.near.InvalidationListener)
+     */
+    @Override
+    public void addInvalidationListener(InvalidationListener listener)
+    {
+        invalidations.addListener(listener);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.near.InvalidationNotifier#removeInvalidationListener(org.datanucleus.cache.near.InvalidationListener)
+     */
+    @Override
+    public void removeInvalidationListener(InvalidationListener listener)
+    {
+        invalidations.removeListener(listener);
+    }
+
     @Override
     public void close()
     {
-        if (clearAtClose)
+        if (writeBehind != null)
         {
-            try
-            {
-                Jedis jedis = pool.getResource();
-                jedis.flushDB();
-                jedis.close();
-                pool.close();
-            }
-            catch (Exception e)
-            {
-                throw new NucleusException("Error closing connection to Redis cache", e);
-            }
+            writeBehind.close();
         }
-        else
+        invalidations.close();
+        if (clientTracking != null)
         {
-            try
-            {
-                pool.close();
-            }
-            catch (Exception e)
+            clientTracking.close();
+        }
+        try
+        {
+            if (clearAtClose)
             {
-                throw new NucleusException("Error closing connection to Redis cache", e);
+                flushAll();
             }
+            connections.close();
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException("Error closing connection to Redis cache", e);
         }
     }
 
     @Override
     public void evict(Object oid)
     {
-        Jedis jedis = null;
+        if (writeBehind != null)
+        {
+            writeBehind.cancel(oid);
+        }
+        if (singleFlight != null)
+        {
+            singleFlight.cancel(oid);
+        }
+
+        byte[] key = getCacheKeyForId(oid);
+        if (clientTracking != null)
+        {
+            clientTracking.invalidate(key);
+        }
+
         try
         {
-            jedis = pool.getResource();
-            jedis.del(getCacheKeyForId(oid).getBytes());
-            pool.returnResource(jedis);
+            connections.execute(key, jedis ->
+            {
+                if (invalidations.isActive())
+                {
+                    Pipeline pipeline = jedis.pipelined();
+                    removeKeys(pipeline, key);
+                    invalidations.publish(pipeline, Collections.singletonList(oid));
+                    RedisConnections.sync(pipeline);
+                }
+                else if (unlink)
+                {
+                    jedis.unlink(key);
+                }
+                else
+                {
+                    jedis.del(key);
+                }
+                return null;
+            });
         }
         catch (Exception e)
         {
-            pool.returnBrokenResource(jedis);
             throw new NucleusException(String.format("Failed to evict key %s from Redis cache", oid), e);
         }
     }
@@ -149,114 +304,439 @@ public class RedisLevel2Cache extends AbstractLevel2Cache
     @Override
     public void evictAll()
     {
-        Jedis jedis = null;
+        if (writeBehind != null)
+        {
+            writeBehind.cancelAll();
+        }
+        if (singleFlight != null)
+        {
+            singleFlight.cancelAll();
+        }
+
         try
         {
-            jedis = pool.getResource();
-            jedis.flushDB();
-            pool.returnResource(jedis);
+            flushAll();
+            if (clientTracking != null)
+            {
+                clientTracking.invalidateAll();
+            }
+            if (invalidations.isActive())
+            {
+                connections.executeOnPool(connections.getPool(), jedis ->
+                {
+                    invalidations.publishAll(jedis);
+                    return null;
+                });
+            }
         }
         catch (Exception e)
         {
-            pool.returnBrokenResource(jedis);
             throw new NucleusException("Failed to evict-all from Redis cache", e);
         }
     }
 
+    /**
+     * Method to flush the database (of all masters, when using a cluster).
+     */
+    private void flushAll()
+    {
+        for (Pool<Jedis> masterPool : connections.getMasterPools())
+        {
+            connections.executeOnPool(masterPool, Jedis::flushDB);
+        }
+    }
+
+    /**
+     * Evict the parameter instances from the cache.
+     * Uses a single connection per node, pipelining variadic DEL (or UNLINK) commands of at most "batchSize" keys each.
+     * @param oids the object ids of the instances to evict
+     */
     @Override
-    public void evictAll(Object[] objects)
+    public void evictAll(Object[] oids)
     {
-        Jedis jedis = null;
-        jedis = pool.getResource();
-        for (Object oid : objects)
+        if (oids == null || oids.length == 0)
         {
-            try
+            return;
+        }
+
+        if (writeBehind != null)
+        {
+            writeBehind.cancelAll(Arrays.asList(oids));
+        }
+        if (singleFlight != null)
+        {
+            for (Object oid : oids)
             {
-                jedis.del(getCacheKeyForId(oid).getBytes());
+                singleFlight.cancel(oid);
+            }
+        }
 
+        byte[][] keys = new byte[oids.length][];
+        for (int i = 0; i < oids.length; i++)
+        {
+            keys[i] = getCacheKeyForId(oids[i]);
+            if (clientTracking != null)
+            {
+                clientTracking.invalidate(keys[i]);
             }
-            catch (Exception e)
+        }
+
+        try
+        {
+            connections.executeByNode(keys, (jedis, slotGroups) ->
+            {
+                Pipeline pipeline = jedis.pipelined();
+                for (int[] positions : slotGroups)
+                {
+                    for (int start = 0; start < positions.length; start += batchSize)
+                    {
+                        removeKeys(pipeline, getKeys(keys, positions, start, Math.min(start + batchSize, positions.length)));
+                    }
+                }
+                RedisConnections.sync(pipeline);
+                return null;
+            });
+            if (invalidations.isActive())
             {
-                pool.returnBrokenResource(jedis);
-                throw new NucleusException(String.format("Failed to evict keys %s from cache {0}", objects), e);
+                connections.executeOnPool(connections.getPool(), jedis ->
+                {
+                    Pipeline pipeline = jedis.pipelined();
+                    invalidations.publish(pipeline, Arrays.asList(oids));
+                    RedisConnections.sync(pipeline);
+                    return null;
+                });
             }
         }
-        pool.returnResource(jedis);
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to evict %d keys from Redis cache", oids.length), e);
+        }
     }
 
     @Override
-    public void evictAll(Collection collection)
+    public void evictAll(Collection oids)
     {
-        evictAll(collection.toArray());
+        if (oids == null)
+        {
+            return;
+        }
+
+        evictAll(oids.toArray());
     }
 
+    /**
+     * Queue removal of the specified keys on the pipeline, using UNLINK or DEL as configured.
+     * @param pipeline The pipeline
+     * @param keys The keys to remove
+     */
+    private void removeKeys(Pipeline pipeline, byte[]... keys)
+    {
+        if (unlink)
+        {
+            pipeline.unlink(keys);
+        }
+        else
+        {
+            pipeline.del(keys);
+        }
+    }
+
+    /**
+     * Convenience accessor for the keys at some of the specified positions.
+     * @param keys All keys
+     * @param positions Positions of the keys required
+     * @param start First position (inclusive) in positions
+     * @param end Last position (exclusive) in positions
+     * @return The keys
+     */
+    private static byte[][] getKeys(byte[][] keys, int[] positions, int start, int end)
+    {
+        byte[][] result = new byte[end - start][];
+        for (int i = start; i < end; i++)
+        {
+            result[i - start] = keys[positions[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Evict the instances of the specified class from the cache.
+     * Uses SCAN to find the keys with the prefix for the class, removing them in batches of at most "batchSize" keys, so
+     * the server is never blocked for long. Keys for an application identity class are prefixed by the identity class name,
+     * so instances of other classes using the same identity class are also evicted.
+     * @param pcClass the class of instances to evict
+     * @param subclasses if true, evict instances of subclasses also
+     */
     @Override
-    public void evictAll(Class aClass, boolean b)
+    public void evictAll(Class pcClass, boolean subclasses)
     {
-        // Not supported. Do nothing
+        if (!nucleusCtx.getApiAdapter().isPersistable(pcClass))
+        {
+            return;
+        }
+
+        Set<String> discriminators = ClassKeys.getDiscriminators(nucleusCtx, pcClass, subclasses);
+
+        if (writeBehind != null)
+        {
+            writeBehind.cancelIf(oid -> discriminators.contains(keyEncoder.getDiscriminator(oid)));
+        }
+        if (singleFlight != null)
+        {
+            singleFlight.cancelAll();
+        }
+
+        try
+        {
+            for (String discriminator : discriminators)
+            {
+                byte[] prefix = keyEncoder.getKeyPrefix(discriminator);
+                // With a cluster all keys with this prefix are in the same slot, due to the hash tag
+                connections.execute(prefix, jedis -> removeKeysWithPrefix(jedis, prefix));
+            }
+
+            if (clientTracking != null)
+            {
+                clientTracking.invalidateAll();
+            }
+            if (invalidations.isActive())
+            {
+                // Ids of the removed entries aren't known, so invalidate all
+                connections.executeOnPool(connections.getPool(), jedis ->
+                {
+                    invalidations.publishAll(jedis);
+                    return null;
+                });
+            }
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to evict objects of class %s from Redis cache", pcClass.getName()), e);
+        }
+    }
+
+
+    /**
+     * Method to remove all keys with the specified prefix, using SCAN, and DEL (or UNLINK) of each page of keys found.
+     * @param jedis The connection
+     * @param prefix The key prefix
+     * @return Number of keys removed
+     */
+    private long removeKeysWithPrefix(Jedis jedis, byte[] prefix)
+    {
+        ScanParams params = new ScanParams().match(ClassKeys.getScanPattern(prefix)).count(batchSize);
+        byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+        long count = 0;
+        do
+        {
+            ScanResult<byte[]> result = jedis.scan(cursor, params);
+            List<byte[]> keys = result.getResult();
+            if (!keys.isEmpty())
+            {
+                byte[][] keyArray = keys.toArray(new byte[keys.size()][]);
+                count += unlink ? jedis.unlink(keyArray) : jedis.del(keyArray);
+            }
+            cursor = result.getCursorAsBytes();
+        }
+        while (!Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY));
+        return count;
     }
 
     @Override
     public CachedPC get(Object oid)
     {
-        Jedis jedis = null;
+        CachedPC pc = getFromCache(oid);
+        if (pc == null && singleFlight != null)
+        {
+            // Either wait for another loader, or load it (returning null)
+            return singleFlight.afterMiss(oid, this::getFromCache);
+        }
+        return pc;
+    }
+
+    /**
+     * Accessor for an object from the cache (or queued put, or local copy when using client tracking).
+     * @param oid The id
+     * @return The object, or null if not present
+     */
+    private CachedPC getFromCache(Object oid)
+    {
+        if (writeBehind != null)
+        {
+            CachedPC pc = writeBehind.getPending(oid);
+            if (pc != null)
+            {
+                return pc;
+            }
+        }
+
+        byte[] key = getCacheKeyForId(oid);
+        long invalidationCount = 0;
+        if (clientTracking != null)
+        {
+            CachedPC pc = clientTracking.get(key);
+            if (pc != null)
+            {
+                return pc;
+            }
+            invalidationCount = clientTracking.getInvalidationCount();
+        }
+
         Object value;
         try
         {
-            jedis = pool.getResource();
-            value = getObjectInternal(jedis.get(getCacheKeyForId(oid).getBytes()));
-            pool.returnResource(jedis);
+            value = getObjectInternal(connections.executeRead(key, jedis -> jedis.get(key)));
         }
         catch (Exception e)
         {
-            pool.returnBrokenResource(jedis);
             throw new NucleusException(String.format("Failed to get key %s from cache {0}", oid), e);
         }
+
+        if (clientTracking != null && value != null)
+        {
+            clientTracking.put(key, (CachedPC) value, invalidationCount);
+        }
         return (CachedPC) value;
     }
 
-    private Object getObjectInternal(byte[] bytes)
+    /**
+     * Accessor for a collection of objects from the cache.
+     * Uses a single connection per node, retrieving the keys using pipelined MGETs of at most "batchSize" keys.
+     * When using client tracking, only keys not held locally are retrieved.
+     * @param oids The Object IDs
+     * @return Map of the objects, keyed by the oids that are found
+     */
+    @Override
+    public Map<Object, CachedPC> getAll(Collection oids)
     {
-        Object o = null;
-        if (bytes != null)
+        if (oids == null)
         {
-            ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
-            ObjectInput in = null;
+            return null;
+        }
 
-            try
+        Map<Object, CachedPC> objs = new HashMap<>();
+        if (writeBehind != null)
+        {
+            // Use any queued puts, and only retrieve the rest
+            List<Object> remainingOids = new ArrayList<>(oids.size());
+            for (Object oid : oids)
             {
-                in = new ObjectInputStream(bis);
-                o = in.readObject();
+                CachedPC pc = writeBehind.getPending(oid);
+                if (pc != null)
+                {
+                    objs.put(oid, pc);
+                }
+                else
+                {
+                    remainingOids.add(oid);
+                }
             }
-            catch (ClassNotFoundException | IOException e)
-            {
-                throw new NucleusException("Failed to convert object", e);
+            oids = remainingOids;
+        }
+        if (oids.isEmpty())
+        {
+            return objs;
+        }
 
-            }
-            finally
+        Object[] ids;
+        byte[][] keys;
+        long invalidationCount = 0;
+        if (clientTracking != null)
+        {
+            List<Object> remoteIds = new ArrayList<>(oids.size());
+            List<byte[]> remoteKeys = new ArrayList<>(oids.size());
+            for (Object oid : oids)
             {
-                try
+                byte[] key = getCacheKeyForId(oid);
+                CachedPC pc = clientTracking.get(key);
+                if (pc != null)
                 {
-                    bis.close();
+                    objs.put(oid, pc);
                 }
-                catch (IOException ex)
+                else
                 {
-                    // ignore close exception
+                    remoteIds.add(oid);
+                    remoteKeys.add(key);
                 }
-                try
+            }
+            if (remoteIds.isEmpty())
+            {
+                return objs;
+            }
+            ids = remoteIds.toArray();
+            keys = remoteKeys.toArray(new byte[remoteKeys.size()][]);
+            invalidationCount = clientTracking.getInvalidationCount();
+        }
+        else
+        {
+            ids = oids.toArray();
+            keys = new byte[ids.length][];
+            for (int i = 0; i < ids.length; i++)
+            {
+                keys[i] = getCacheKeyForId(ids[i]);
+            }
+        }
+
+        try
+        {
+            List<Map<Integer, byte[]>> nodeValues = connections.executeReadByNode(keys, (jedis, slotGroups) ->
+            {
+                Pipeline pipeline = jedis.pipelined();
+                List<int[]> batches = new ArrayList<>();
+                List<Response<List<byte[]>>> responses = new ArrayList<>();
+                for (int[] positions : slotGroups)
                 {
-                    if (in != null)
+                    for (int start = 0; start < positions.length; start += batchSize)
                     {
-                        in.close();
+                        int[] batch = Arrays.copyOfRange(positions, start, Math.min(start + batchSize, positions.length));
+                        batches.add(batch);
+                        responses.add(pipeline.mget(getKeys(keys, batch, 0, batch.length)));
                     }
                 }
-                catch (IOException ex)
+                pipeline.sync();
+
+                Map<Integer, byte[]> values = new HashMap<>();
+                for (int i = 0; i < batches.size(); i++)
                 {
-                    // ignore close exception
+                    int[] batch = batches.get(i);
+                    List<byte[]> batchValues = responses.get(i).get();
+                    for (int j = 0; j < batchValues.size(); j++)
+                    {
+                        if (batchValues.get(j) != null)
+                        {
+                            values.put(batch[j], batchValues.get(j));
+                        }
+                    }
+                }
+                return values;
+            });
+
+            for (Map<Integer, byte[]> values : nodeValues)
+            {
+                for (Map.Entry<Integer, byte[]> entry : values.entrySet())
+                {
+                    CachedPC pc = (CachedPC) getObjectInternal(entry.getValue());
+                    if (pc != null)
+                    {
+                        objs.put(ids[entry.getKey()], pc);
+                        if (clientTracking != null)
+                        {
+                            clientTracking.put(keys[entry.getKey()], pc, invalidationCount);
+                        }
+                    }
                 }
             }
         }
-        return o;
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to get %d keys from Redis cache", ids.length), e);
+        }
+        return objs;
+    }
+
+    private Object getObjectInternal(byte[] bytes)
+    {
+        return serializer.deserialize(bytes);
     }
 
     @Override
@@ -267,16 +747,52 @@ public class RedisLevel2Cache extends AbstractLevel2Cache
             return null;
         }
 
-        Jedis jedis = null;
+        byte[] key = getCacheKeyForId(o);
+        if (clientTracking != null)
+        {
+            clientTracking.invalidate(key);
+        }
+        if (singleFlight != null)
+        {
+            singleFlight.loaded(o, cachedPC);
+        }
+        if (writeBehind != null && writeBehind.offer(o, cachedPC))
+        {
+            return cachedPC;
+        }
+
         try
         {
-            jedis = pool.getResource();
-            jedis.setex(getCacheKeyForId(o).getBytes(), expirySeconds, getBytesForObject(cachedPC));
-            pool.returnResource(jedis);
+            byte[] value = getBytesForObject(cachedPC);
+            connections.execute(key, jedis ->
+            {
+                if (invalidations.isActive())
+                {
+                    Pipeline pipeline = jedis.pipelined();
+                    if (expirySeconds > 0)
+                    {
+                        pipeline.setex(key, expirySeconds, value);
+                    }
+                    else
+                    {
+                        pipeline.set(key, value);
+                    }
+                    invalidations.publish(pipeline, Collections.singletonList(o));
+                    RedisConnections.sync(pipeline);
+                }
+                else if (expirySeconds > 0)
+                {
+                    jedis.setex(key, expirySeconds, value);
+                }
+                else
+                {
+                    jedis.set(key, value);
+                }
+                return null;
+            });
         }
         catch (Exception e)
         {
-            pool.returnBrokenResource(jedis);
             throw new NucleusException(String.format("Failed to set object %s with id %s into Redis cache", cachedPC.toString("", true), o), e);
         }
 
@@ -284,27 +800,145 @@ public class RedisLevel2Cache extends AbstractLevel2Cache
 
     }
 
+    /**
+     * Method to put a collection of objects into the cache.
+     * When using write-behind the objects are queued, otherwise they are written immediately (see writeAll).
+     * @param objs Map of cacheable objects keyed by their oids
+     */
+    @Override
+    public void putAll(Map<Object, CachedPC> objs)
+    {
+        if (objs == null || objs.isEmpty())
+        {
+            return;
+        }
+
+        if (singleFlight != null)
+        {
+            for (Map.Entry<Object, CachedPC> entry : objs.entrySet())
+            {
+                if (entry.getKey() != null && entry.getValue() != null)
+                {
+                    singleFlight.loaded(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        if (writeBehind != null)
+        {
+            // Write any puts that can't be queued
+            Map<Object, CachedPC> unqueued = new HashMap<>();
+            for (Map.Entry<Object, CachedPC> entry : objs.entrySet())
+            {
+                if (entry.getKey() != null && entry.getValue() != null)
+                {
+                    if (clientTracking != null)
+                    {
+                        clientTracking.invalidate(getCacheKeyForId(entry.getKey()));
+                    }
+                    if (!writeBehind.offer(entry.getKey(), entry.getValue()))
+                    {
+                        unqueued.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            objs = unqueued;
+            if (objs.isEmpty())
+            {
+                return;
+            }
+        }
+
+        writeAll(objs);
+    }
+
+    /**
+     * Method to write a collection of objects into the cache.
+     * Uses a single connection per node, pipelining the SETEX commands and syncing after every "batchSize" commands.
+     * @param objs Map of cacheable objects keyed by their oids
+     */
+    private void writeAll(Map<Object, CachedPC> objs)
+    {
+        List<Object> ids = new ArrayList<>(objs.size());
+        List<byte[]> keyList = new ArrayList<>(objs.size());
+        List<byte[]> valueList = new ArrayList<>(objs.size());
+        for (Map.Entry<Object, CachedPC> entry : objs.entrySet())
+        {
+            if (entry.getKey() == null || entry.getValue() == null)
+            {
+                continue;
+            }
+
+            byte[] key = getCacheKeyForId(entry.getKey());
+            if (clientTracking != null)
+            {
+                clientTracking.invalidate(key);
+            }
+            ids.add(entry.getKey());
+            keyList.add(key);
+            valueList.add(getBytesForObject(entry.getValue()));
+        }
+        byte[][] keys = keyList.toArray(new byte[keyList.size()][]);
+
+        try
+        {
+            connections.executeByNode(keys, (jedis, slotGroups) ->
+            {
+                Pipeline pipeline = jedis.pipelined();
+                int batchCount = 0;
+                for (int[] positions : slotGroups)
+                {
+                    for (int pos : positions)
+                    {
+                        if (expirySeconds > 0)
+                        {
+                            pipeline.setex(keys[pos], expirySeconds, valueList.get(pos));
+                        }
+                        else
+                        {
+                            pipeline.set(keys[pos], valueList.get(pos));
+                        }
+
+                        if (++batchCount == batchSize)
+                        {
+                            RedisConnections.sync(pipeline);
+                            batchCount = 0;
+                        }
+                    }
+                }
+                RedisConnections.sync(pipeline);
+                return null;
+            });
+            if (invalidations.isActive())
+            {
+                connections.executeOnPool(connections.getPool(), jedis ->
+                {
+                    Pipeline pipeline = jedis.pipelined();
+                    invalidations.publish(pipeline, ids);
+                    RedisConnections.sync(pipeline);
+                    return null;
+                });
+            }
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException(String.format("Failed to set %d objects into Redis cache", objs.size()), e);
+        }
+    }
+
     @Override
     public boolean containsOid(Object o)
     {
-        return get(o) != null;
+        return getFromCache(o) != null;
     }
 
-    protected byte[] getBytesForObject(Object obj) throws IOException
+    protected byte[] getBytesForObject(Object obj)
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream outputStream = new ObjectOutputStream(bos);
-        outputStream.writeObject(obj);
-        return bos.toByteArray();
+        return serializer.serialize(obj);
     }
 
-    protected String getCacheKeyForId(Object id)
+    protected byte[] getCacheKeyForId(Object id)
     {
-        if (IdentityUtils.isSingleFieldIdentity(id))
-        {
-            String targetClassName = ((SingleFieldId) id).getTargetClassName();
-            return cacheName + targetClassName + ":" + id.toString().hashCode();
-        }
-        return cacheName + id.toString().hashCode();
+        return keyEncoder.getKey(id);
     }
 }
\ No newline at end of file
@@ -17,35 +17,27 @@ Contributors:
  **********************************************************************/
 package org.datanucleus.cache.redis;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.Arrays;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.datanucleus.Configuration;
 import org.datanucleus.NucleusContext;
+import org.datanucleus.cache.serializer.CacheSerializer;
+import org.datanucleus.cache.serializer.CacheSerializerFactory;
 import org.datanucleus.exceptions.NucleusException;
 import org.datanucleus.store.query.Query;
 import org.datanucleus.store.query.QueryUtils;
 import org.datanucleus.store.query.cache.AbstractQueryResultsCache;
 
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
-import redis.clients.jedis.JedisSentinelPool;
-import redis.clients.util.Pool;
+import redis.clients.jedis.util.Pool;
+import redis.clients.jedis.util.SafeEncoder;
 
 /**
  * Plugin using <a href="https://redis.io/">Redis</a> as a QueryResults cache.
  * Dependent on Jedis, and Apache Commons Pool2.
+ * Can use a single server, a master located via sentinels, or a Redis Cluster.
+ * When using sentinels, reads can be made from replicas using "readPolicy" of "replica-preferred" or "nearest".
  */
 public class RedisQueryResultsCache extends AbstractQueryResultsCache
 {
@@ -54,14 +46,21 @@ public class RedisQueryResultsCache extends AbstractQueryResultsCache
     public static final String PROPERTY_CACHE_QUERYRESULTS_REDIS_DATABASE = "datanucleus.cache.queryResults.redis.database";
     public static final String PROPERTY_CACHE_QUERYRESULTS_REDIS_TIMEOUT = "datanucleus.cache.queryResults.redis.timeout";
     public static final String PROPERTY_CACHE_QUERYRESULTS_REDIS_SENTINELS = "datanucleus.cache.queryResults.redis.sentinels";
+    public static final String PROPERTY_CACHE_QUERYRESULTS_REDIS_MASTER_NAME = "datanucleus.cache.queryResults.redis.masterName";
+    public static final String PROPERTY_CACHE_QUERYRESULTS_REDIS_CLUSTER = "datanucleus.cache.queryResults.redis.cluster";
+    public static final String PROPERTY_CACHE_QUERYRESULTS_REDIS_READ_POLICY = "datanucleus.cache.queryResults.redis.readPolicy";
+    public static final String PROPERTY_CACHE_QUERYRESULTS_REDIS_REPLICA_MAX_LAG_MILLIS = "datanucleus.cache.queryResults.redis.replicaMaxLagMillis";
     public static final String PROPERTY_CACHE_QUERYRESULTS_REDIS_SERVER = "datanucleus.cache.queryResults.redis.server";
     public static final String PROPERTY_CACHE_QUERYRESULTS_REDIS_PORT = "datanucleus.cache.queryResults.redis.port";
 
-    Pool<Jedis> pool;
+    RedisConnections connections;
 
-    int expirySeconds;
+    CacheSerializer serializer;
+
+    long expirySeconds;
 
     private final static String DEFAULT_SERVER = "localhost";
+    private final static String DEFAULT_MASTER_NAME = "mymaster";
     private final static int DEFAULT_DATABASE = 1;
     private final static int DEFAULT_PORT = 6379;
     private final static int DEFAULT_TIMEOUT = 5000;
@@ -78,28 +77,21 @@ public class RedisQueryResultsCache extends AbstractQueryResultsCache
         int database = conf.getIntProperty(PROPERTY_CACHE_QUERYRESULTS_REDIS_DATABASE);
         database = database == 0 ? DEFAULT_DATABASE : database;
 
-        expirySeconds = (int) (expiryMillis/1000);
+        expirySeconds = expiryMillis/1000;
+
+        serializer = CacheSerializerFactory.getSerializer(nucleusCtx, conf.getStringProperty(CacheSerializerFactory.PROPERTY_CACHE_QUERYRESULTS_SERIALIZER));
 
         int timeout = conf.getIntProperty(PROPERTY_CACHE_QUERYRESULTS_REDIS_TIMEOUT);
         timeout = timeout == 0 ? DEFAULT_TIMEOUT : timeout;
 
-        String sentinelsStr = conf.getStringProperty(PROPERTY_CACHE_QUERYRESULTS_REDIS_SENTINELS);
-        if (sentinelsStr != null && sentinelsStr.length() > 0)
-        {
-            Set<String> sentinels = new LinkedHashSet<>();
-            sentinels.addAll(Arrays.asList(sentinelsStr.split(",")));
-            pool = new JedisSentinelPool("mymaster", sentinels, new GenericObjectPoolConfig(), timeout, null, database);
-        }
-        else
-        {
-            String server = conf.getStringProperty(PROPERTY_CACHE_QUERYRESULTS_REDIS_SERVER);
-            int port = conf.getIntProperty(PROPERTY_CACHE_QUERYRESULTS_REDIS_PORT);
-
-            server = server == null ? DEFAULT_SERVER : server;
-            port = port == 0 ? DEFAULT_PORT : port;
-
-            pool = new JedisPool(new JedisPoolConfig(), server, port, timeout, null, database);
-        }
+        String server = conf.getStringProperty(PROPERTY_CACHE_QUERYRESULTS_REDIS_SERVER);
+        int port = conf.getIntProperty(PROPERTY_CACHE_QUERYRESULTS_REDIS_PORT);
+        String masterName = conf.getStringProperty(PROPERTY_CACHE_QUERYRESULTS_REDIS_MASTER_NAME);
+        connections = new RedisConnections(server == null ? DEFAULT_SERVER : server, port == 0 ? DEFAULT_PORT : port,
+            conf.getStringProperty(PROPERTY_CACHE_QUERYRESULTS_REDIS_SENTINELS), masterName == null ? DEFAULT_MASTER_NAME : masterName,
+            conf.getStringProperty(PROPERTY_CACHE_QUERYRESULTS_REDIS_CLUSTER), timeout, database);
+        connections.setReadPolicy(conf.getStringProperty(PROPERTY_CACHE_QUERYRESULTS_REDIS_READ_POLICY),
+            conf.getIntProperty(PROPERTY_CACHE_QUERYRESULTS_REDIS_REPLICA_MAX_LAG_MILLIS));
     }
 
     /* (non-Javadoc)
@@ -107,30 +99,17 @@ public class RedisQueryResultsCache extends AbstractQueryResultsCache
      */
     public void close()
     {
-        if (clearAtClose)
+        try
         {
-            try
+            if (clearAtClose)
             {
-                Jedis jedis = pool.getResource();
-                jedis.flushDB();
-                jedis.close();
-                pool.close();
-            }
-            catch (Exception e)
-            {
-                throw new NucleusException("Could not close connection to Redis cache", e);
+                flushAll();
             }
+            connections.close();
         }
-        else
+        catch (Exception e)
         {
-            try
-            {
-                pool.close();
-            }
-            catch (Exception e)
-            {
-                throw new NucleusException("Could not close connection to Redis cache", e);
-            }
+            throw new NucleusException("Could not close connection to Redis cache", e);
         }
     }
 
@@ -147,18 +126,15 @@ public class RedisQueryResultsCache extends AbstractQueryResultsCache
      */
     public void evict(Query query)
     {
-        Jedis jedis = null;
         String key = null;
         try
         {
-            jedis = pool.getResource();
             key = QueryUtils.getKeyForQueryResultsCache(query, null);
-            jedis.del(key);
-            pool.returnResource(jedis);
+            byte[] keyBytes = SafeEncoder.encode(key);
+            connections.execute(keyBytes, jedis -> jedis.del(keyBytes));
         }
         catch (Exception e)
         {
-            pool.returnBrokenResource(jedis);
             throw new NucleusException(String.format("Failed to evict key %s from Redis cache", key), e);
         }
     }
@@ -168,18 +144,15 @@ public class RedisQueryResultsCache extends AbstractQueryResultsCache
      */
     public void evict(Query query, Map params)
     {
-        Jedis jedis = null;
         String key = null;
         try
         {
-            jedis = pool.getResource();
             key = QueryUtils.getKeyForQueryResultsCache(query, params);
-            jedis.del(key);
-            pool.returnResource(jedis);
+            byte[] keyBytes = SafeEncoder.encode(key);
+            connections.execute(keyBytes, jedis -> jedis.del(keyBytes));
         }
         catch (Exception e)
         {
-            pool.returnBrokenResource(jedis);
             throw new NucleusException(String.format("Failed to evict key %s from Redis cache", key), e);
         }
     }
@@ -189,19 +162,25 @@ public class RedisQueryResultsCache extends AbstractQueryResultsCache
      */
     public void evictAll()
     {
-        Jedis jedis = null;
         try
         {
-            jedis = pool.getResource();
-            jedis.flushDB();
-            pool.returnResource(jedis);
+            flushAll();
         }
         catch (Exception e)
         {
-            pool.returnBrokenResource(jedis);
             throw new NucleusException("Failed to evict-all from Redis cache", e);
         }
+    }
 
+    /**
+     * Method to flush the database (of all masters, when using a cluster).
+     */
+    private void flushAll()
+    {
+        for (Pool<Jedis> masterPool : connections.getMasterPools())
+        {
+            connections.executeOnPool(masterPool, Jedis::flushDB);
+        }
     }
 
     /* (non-Javadoc)
@@ -209,18 +188,14 @@ public class RedisQueryResultsCache extends AbstractQueryResultsCache
      */
     public List<Object> get(String queryKey)
     {
-        String key = KEY_PREFIX + queryKey;
-        Jedis jedis = null;
+        byte[] key = (KEY_PREFIX + queryKey).getBytes();
         Object value;
         try
         {
-            jedis = pool.getResource();
-            value = getObjectFromBytes(jedis.get(key.getBytes()));
-            pool.returnResource(jedis);
+            value = getObjectFromBytes(connections.executeRead(key, jedis -> jedis.get(key)));
         }
         catch (Exception e)
         {
-            pool.returnBrokenResource(jedis);
             throw new NucleusException("Failed to get from Redis cache", e);
         }
 
@@ -237,17 +212,14 @@ public class RedisQueryResultsCache extends AbstractQueryResultsCache
             return null;
         }
 
-        Jedis jedis = null;
-        String key = KEY_PREFIX + queryKey;
+        byte[] key = (KEY_PREFIX + queryKey).getBytes();
         try
         {
-            jedis = pool.getResource();
-            jedis.setex(key.getBytes(), expirySeconds, getBytesForObject(results));
-            pool.returnResource(jedis);
+            byte[] value = getBytesForObject(results);
+            connections.execute(key, jedis -> jedis.setex(key, expirySeconds, value));
         }
         catch (Exception e)
         {
-            pool.returnBrokenResource(jedis);
             throw new NucleusException(String.format("Failed to set object %s with ID %s into Redis cache", results, queryKey));
         }
 
@@ -264,60 +236,11 @@ public class RedisQueryResultsCache extends AbstractQueryResultsCache
 
     private Object getObjectFromBytes(byte[] bytes)
     {
-        Object o = null;
-        if (bytes != null)
-        {
-            ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
-            ObjectInput in = null;
-
-            try
-            {
-                in = new ObjectInputStream(bis);
-                o = in.readObject();
-            }
-            catch (ClassNotFoundException | IOException e)
-            {
-                throw new NucleusException("Failed to convert object", e);
-            }
-            finally
-            {
-                try
-                {
-                    bis.close();
-                }
-                catch (IOException ex)
-                {
-                    // ignore close exception
-                }
-                try
-                {
-                    if (in != null)
-                    {
-                        in.close();
-                    }
-                }
-                catch (IOException ex)
-                {
-                    // ignore close exception
-                }
-            }
-        }
-        return o;
+        return serializer.deserialize(bytes);
     }
 
     private byte[] getBytesForObject(Object obj)
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        try
-        {
-            ObjectOutputStream objStream = new ObjectOutputStream(bos);
-            objStream.writeObject(obj);
-        }
-        catch (IOException e)
-        {
-            throw new NucleusException("Exception in serializing Object for Redis cache", e);
-        }
-
-        return bos.toByteArray();
+        return serializer.serialize(obj);
     }
 }
\ No newline at end of file
@@ -0,0 +1,307 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.redis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.datanucleus.util.NucleusLogger;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.util.Pool;
+
+/**
+ * Monitor of the replicas of a master located using sentinels, providing the connections to use for reads according to a read policy.
+ * <ul>
+ * <li><b>replica-preferred</b> : read from a random usable replica, or from the master when there is none.</li>
+ * <li><b>nearest</b> : read from the usable replica or master with the lowest latency.</li>
+ * </ul>
+ * The replicas are listed by the sentinels, and checked every second (using INFO replication). A replica is usable when its link
+ * to the master is up and, when a max lag is set, its lag behind the master is within that bound. The lag is estimated by
+ * recording the replication offset of the master at each check, and finding the most recent check whose master offset the
+ * replica has reached. So it is accurate to within the check interval.
+ */
+class RedisReplicaMonitor
+{
+    static final String READ_POLICY_MASTER = "master";
+    static final String READ_POLICY_REPLICA_PREFERRED = "replica-preferred";
+    static final String READ_POLICY_NEAREST = "nearest";
+
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    private final Pool<Jedis> masterPool;
+
+    private final List<String> sentinels;
+
+    private final String masterName;
+
+    private final int timeout;
+
+    private final int database;
+
+    private final boolean nearest;
+
+    private final long maxLagMillis;
+
+    /** Replica pools, keyed by "host:port". */
+    private final Map<String, JedisPool> replicaPools = new ConcurrentHashMap<>();
+
+    /** Replication offset of the master at recent checks, as {time, offset}, oldest first. */
+    private final Deque<long[]> masterOffsets = new ArrayDeque<>();
+
+    /** Pools to read from; usable replicas, plus the master (first) when reading from the nearest, ordered by latency. */
+    private volatile List<Pool<Jedis>> readPools = new ArrayList<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor, starting the checks of the replicas.
+     * @param masterPool Pool for the master
+     * @param sentinels "host:port" of the sentinels
+     * @param masterName Name of the master
+     * @param timeout Connection/socket timeout (ms)
+     * @param database The database number
+     * @param readPolicy Read policy (replica-preferred, nearest)
+     * @param maxLagMillis Max lag of a replica behind the master for it to be used (0 for no bound)
+     */
+    RedisReplicaMonitor(Pool<Jedis> masterPool, List<String> sentinels, String masterName, int timeout, int database, String readPolicy,
+            long maxLagMillis)
+    {
+        this.masterPool = masterPool;
+        this.sentinels = sentinels;
+        this.masterName = masterName;
+        this.timeout = timeout;
+        this.database = database;
+        this.nearest = READ_POLICY_NEAREST.equalsIgnoreCase(readPolicy);
+        this.maxLagMillis = maxLagMillis;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread thread = new Thread(r, "DataNucleus-Redis-Replicas-" + masterName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, 0, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Accessor for the pool to use for a read.
+     * @return The pool (of a replica or of the master)
+     */
+    Pool<Jedis> getReadPool()
+    {
+        List<Pool<Jedis>> pools = readPools;
+        if (pools.isEmpty())
+        {
+            return masterPool;
+        }
+        return nearest ? pools.get(0) : pools.get(ThreadLocalRandom.current().nextInt(pools.size()));
+    }
+
+    /**
+     * Method to stop reading from the specified pool (until the next check finds it usable), after a failure.
+     * @param pool The pool
+     */
+    void markFailed(Pool<Jedis> pool)
+    {
+        if (pool != masterPool)
+        {
+            List<Pool<Jedis>> pools = new ArrayList<>(readPools);
+            if (pools.remove(pool))
+            {
+                readPools = pools;
+            }
+        }
+    }
+
+    void close()
+    {
+        scheduler.shutdownNow();
+        readPools = new ArrayList<>();
+        for (JedisPool replicaPool : replicaPools.values())
+        {
+            replicaPool.close();
+        }
+    }
+
+    private void check()
+    {
+        try
+        {
+            long now = System.currentTimeMillis();
+            List<Pool<Jedis>> pools = new ArrayList<>();
+            Map<Pool<Jedis>, Long> latencies = new HashMap<>();
+
+            Jedis master = masterPool.getResource();
+            long masterOffset;
+            try
+            {
+                long start = System.nanoTime();
+                masterOffset = getInfoValue(master.info("replication"), "master_repl_offset");
+                latencies.put(masterPool, System.nanoTime() - start);
+                masterPool.returnResource(master);
+            }
+            catch (RuntimeException e)
+            {
+                masterPool.returnBrokenResource(master);
+                throw e;
+            }
+            masterOffsets.addLast(new long[] {now, masterOffset});
+            while (masterOffsets.size() > 1 && masterOffsets.peekFirst()[0] < now - maxLagMillis - 2 * CHECK_INTERVAL_MILLIS)
+            {
+                masterOffsets.removeFirst();
+            }
+            if (nearest)
+            {
+                pools.add(masterPool);
+            }
+
+            Set<String> replicaNames = new HashSet<>();
+            for (Map<String, String> replica : getReplicas())
+            {
+                String flags = replica.get("flags");
+                if (flags == null || flags.contains("s_down") || flags.contains("o_down") || flags.contains("disconnected"))
+                {
+                    continue;
+                }
+
+                String name = replica.get("ip") + ":" + replica.get("port");
+                replicaNames.add(name);
+                JedisPool replicaPool = replicaPools.computeIfAbsent(name,
+                    n -> new JedisPool(new JedisPoolConfig(), replica.get("ip"), Integer.parseInt(replica.get("port")), timeout, null, database));
+                Jedis jedis = null;
+                try
+                {
+                    jedis = replicaPool.getResource();
+                    long start = System.nanoTime();
+                    String info = jedis.info("replication");
+                    long latency = System.nanoTime() - start;
+                    replicaPool.returnResource(jedis);
+
+                    if (info.contains("master_link_status:up") && isWithinMaxLag(getInfoValue(info, "slave_repl_offset"), masterOffset, now))
+                    {
+                        pools.add(replicaPool);
+                        latencies.put(replicaPool, latency);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    if (jedis != null)
+                    {
+                        replicaPool.returnBrokenResource(jedis);
+                    }
+                    NucleusLogger.CACHE.debug("Redis replica " + name + " not usable : " + e.getMessage());
+                }
+            }
+
+            if (nearest)
+            {
+                pools.sort(Comparator.comparing(latencies::get));
+            }
+            readPools = pools;
+
+            // Close pools of replicas no longer listed
+            Iterator<Map.Entry<String, JedisPool>> replicaIter = replicaPools.entrySet().iterator();
+            while (replicaIter.hasNext())
+            {
+                Map.Entry<String, JedisPool> entry = replicaIter.next();
+                if (!replicaNames.contains(entry.getKey()))
+                {
+                    replicaIter.remove();
+                    entry.getValue().close();
+                }
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // Read from the master until the next successful check
+            readPools = new ArrayList<>();
+            NucleusLogger.CACHE.warn("Unable to check Redis replicas, so reading from master : " + e.getMessage());
+        }
+    }
+
+    private boolean isWithinMaxLag(long replicaOffset, long masterOffset, long now)
+    {
+        if (maxLagMillis <= 0 || replicaOffset >= masterOffset)
+        {
+            return true;
+        }
+
+        // Find the most recent check whose master offset the replica has reached
+        Iterator<long[]> iter = masterOffsets.descendingIterator();
+        while (iter.hasNext())
+        {
+            long[] sample = iter.next();
+            if (sample[1] <= replicaOffset)
+            {
+                return now - sample[0] <= maxLagMillis;
+            }
+        }
+        return false;
+    }
+
+    private Collection<Map<String, String>> getReplicas()
+    {
+        RuntimeException failure = null;
+        for (String sentinel : sentinels)
+        {
+            int sep = sentinel.lastIndexOf(':');
+            try (Jedis jedis = new Jedis(sentinel.substring(0, sep).trim(), Integer.parseInt(sentinel.substring(sep + 1).trim()), timeout))
+            {
+                return jedis.sentinelReplicas(masterName);
+            }
+            catch (RuntimeException e)
+            {
+                failure = e;
+            }
+        }
+        throw failure != null ? failure : new IllegalStateException("No sentinels");
+    }
+
+    private static long getInfoValue(String info, String name)
+    {
+        int pos = info.indexOf(name + ":");
+        if (pos < 0)
+        {
+            return -1;
+        }
+        int start = pos + name.length() + 1;
+        int end = start;
+        while (end < info.length() && Character.isDigit(info.charAt(end)))
+        {
+            end++;
+        }
+        return end > start ? Long.parseLong(info.substring(start, end)) : -1;
+    }
+}
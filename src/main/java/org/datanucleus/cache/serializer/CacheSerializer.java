@@ -0,0 +1,54 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.serializer;
+
+import java.util.Arrays;
+
+/**
+ * Converter of cached values (CachedPC objects, query results) to/from the bytes stored in a remote cache.
+ * Implementations must be thread-safe, and must throw a NucleusException when the conversion fails.
+ */
+public interface CacheSerializer
+{
+    /**
+     * Convert the provided value into bytes.
+     * @param obj The value
+     * @return The bytes
+     */
+    byte[] serialize(Object obj);
+
+    /**
+     * Convert the provided bytes back into the value.
+     * @param bytes The bytes (as created by serialize)
+     * @return The value (or null if the bytes are null)
+     */
+    Object deserialize(byte[] bytes);
+
+    /**
+     * Convert the provided range of bytes back into the value, for when the serialized value follows a header.
+     * The default implementation copies the range, so implementations should override it to read in place.
+     * @param bytes The bytes
+     * @param offset Position of the serialized value in the bytes
+     * @param length Length of the serialized value
+     * @return The value
+     */
+    default Object deserialize(byte[] bytes, int offset, int length)
+    {
+        return deserialize(Arrays.copyOfRange(bytes, offset, offset + length));
+    }
+}
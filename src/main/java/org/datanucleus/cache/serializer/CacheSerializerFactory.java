@@ -0,0 +1,128 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.serializer;
+
+import org.datanucleus.ClassLoaderResolver;
+import org.datanucleus.Configuration;
+import org.datanucleus.NucleusContext;
+import org.datanucleus.exceptions.ClassNotResolvedException;
+import org.datanucleus.exceptions.NucleusUserException;
+import org.datanucleus.util.ClassUtils;
+
+/**
+ * Factory for the CacheSerializer to use for a remote cache.
+ * The serializer is specified as "compact" (default), "java", "kryo", or the class name of a CacheSerializer implementation
+ * (having either a constructor taking NucleusContext, or a default constructor).
+ * Level2 caches additionally wrap the serializer to allow compression of large values.
+ */
+public class CacheSerializerFactory
+{
+    public static final String PROPERTY_CACHE_L2_SERIALIZER = "datanucleus.cache.level2.serializer";
+    public static final String PROPERTY_CACHE_QUERYRESULTS_SERIALIZER = "datanucleus.cache.queryResults.serializer";
+    public static final String PROPERTY_CACHE_L2_COMPRESSION = "datanucleus.cache.level2.compression";
+    public static final String PROPERTY_CACHE_L2_COMPRESSION_THRESHOLD = "datanucleus.cache.level2.compressionThreshold";
+
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 2048;
+
+    private CacheSerializerFactory()
+    {
+    }
+
+    /**
+     * Method to create the serializer for the values of a remote Level2 cache, as defined by the persistence properties.
+     * Compression is specified as "none" (default), "deflate" or "lz4", and is applied to values with a serialized size
+     * of at least the compression threshold. Values always have a header defining their compression (see CompressingCacheSerializer),
+     * so the compression can be changed without clearing the remote cache.
+     * @param nucleusCtx Context
+     * @return The serializer
+     * @throws NucleusUserException if the serializer cannot be created
+     */
+    public static CacheSerializer getLevel2Serializer(NucleusContext nucleusCtx)
+    {
+        Configuration conf = nucleusCtx.getConfiguration();
+        CacheSerializer serializer = getSerializer(nucleusCtx, conf.getStringProperty(PROPERTY_CACHE_L2_SERIALIZER));
+
+        byte compressionType;
+        String compression = conf.getStringProperty(PROPERTY_CACHE_L2_COMPRESSION);
+        if (compression == null || compression.equalsIgnoreCase("none"))
+        {
+            compressionType = CompressingCacheSerializer.TYPE_NONE;
+        }
+        else if (compression.equalsIgnoreCase("deflate"))
+        {
+            compressionType = CompressingCacheSerializer.TYPE_DEFLATE;
+        }
+        else if (compression.equalsIgnoreCase("lz4"))
+        {
+            ClassUtils.assertClassForJarExistsInClasspath(nucleusCtx.getClassLoaderResolver(null), "net.jpountz.lz4.LZ4Factory", "lz4-java.jar");
+            compressionType = CompressingCacheSerializer.TYPE_LZ4;
+        }
+        else
+        {
+            throw new NucleusUserException("Cache compression \"" + compression + "\" is not supported. Use none, deflate or lz4");
+        }
+
+        int threshold = conf.getIntProperty(PROPERTY_CACHE_L2_COMPRESSION_THRESHOLD);
+        threshold = threshold <= 0 ? DEFAULT_COMPRESSION_THRESHOLD : threshold;
+
+        return new CompressingCacheSerializer(serializer, compressionType, threshold);
+    }
+
+    /**
+     * Method to create the serializer with the specified name.
+     * @param nucleusCtx Context
+     * @param name Name of the serializer (null implies "compact")
+     * @return The serializer
+     * @throws NucleusUserException if the serializer cannot be created
+     */
+    public static CacheSerializer getSerializer(NucleusContext nucleusCtx, String name)
+    {
+        if (name == null || name.equalsIgnoreCase("compact"))
+        {
+            return new CompactCacheSerializer(nucleusCtx);
+        }
+        else if (name.equalsIgnoreCase("java"))
+        {
+            return new JavaCacheSerializer(nucleusCtx);
+        }
+
+        ClassLoaderResolver clr = nucleusCtx.getClassLoaderResolver(null);
+        if (name.equalsIgnoreCase("kryo"))
+        {
+            ClassUtils.assertClassForJarExistsInClasspath(clr, "com.esotericsoftware.kryo.Kryo", "kryo.jar");
+            return new KryoCacheSerializer(nucleusCtx);
+        }
+
+        try
+        {
+            Class<?> serializerCls = clr.classForName(name);
+            try
+            {
+                return (CacheSerializer) serializerCls.getConstructor(NucleusContext.class).newInstance(nucleusCtx);
+            }
+            catch (NoSuchMethodException nsme)
+            {
+                return (CacheSerializer) serializerCls.getConstructor().newInstance();
+            }
+        }
+        catch (ClassNotResolvedException | ReflectiveOperationException | ClassCastException e)
+        {
+            throw new NucleusUserException("Cache serializer \"" + name + "\" could not be created", e);
+        }
+    }
+}
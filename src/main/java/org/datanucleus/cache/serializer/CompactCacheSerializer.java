@@ -0,0 +1,807 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.serializer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.datanucleus.NucleusContext;
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.exceptions.NucleusException;
+import org.datanucleus.identity.DatastoreIdImpl;
+import org.datanucleus.identity.IntId;
+import org.datanucleus.identity.LongId;
+import org.datanucleus.identity.StringId;
+
+/**
+ * Compact binary serializer for cached values.
+ * Each value is written as a one byte type tag followed by its data. The following are written natively
+ * <ul>
+ * <li>CachedPC : class name, id, version, loaded fields bitmap, and then the value of each loaded field.</li>
+ * <li>LongId, IntId, StringId, DatastoreIdImpl : target class name and key.</li>
+ * <li>null, primitive wrappers, String, byte[], BigDecimal, BigInteger, Date/java.sql types, enums, Object[].</li>
+ * <li>ArrayList, LinkedList, HashSet, LinkedHashSet, HashMap, LinkedHashMap, and TreeSet/TreeMap using natural ordering.</li>
+ * </ul>
+ * Integral values are stored as variable length ints, and class names are stored once per value and then referred
+ * to by index. Any other type is written using Java serialization, so anything Serializable can still be cached.
+ */
+public class CompactCacheSerializer implements CacheSerializer
+{
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_TRUE = 1;
+    private static final byte TAG_FALSE = 2;
+    private static final byte TAG_BYTE = 3;
+    private static final byte TAG_SHORT = 4;
+    private static final byte TAG_INT = 5;
+    private static final byte TAG_LONG = 6;
+    private static final byte TAG_FLOAT = 7;
+    private static final byte TAG_DOUBLE = 8;
+    private static final byte TAG_CHAR = 9;
+    private static final byte TAG_STRING = 10;
+    private static final byte TAG_BYTES = 11;
+    private static final byte TAG_DATE = 12;
+    private static final byte TAG_SQL_DATE = 13;
+    private static final byte TAG_SQL_TIME = 14;
+    private static final byte TAG_SQL_TIMESTAMP = 15;
+    private static final byte TAG_BIG_DECIMAL = 16;
+    private static final byte TAG_BIG_INTEGER = 17;
+    private static final byte TAG_ENUM = 18;
+
+    private static final byte TAG_CACHED_PC = 20;
+    private static final byte TAG_LONG_ID = 21;
+    private static final byte TAG_INT_ID = 22;
+    private static final byte TAG_STRING_ID = 23;
+    private static final byte TAG_DATASTORE_ID = 24;
+
+    private static final byte TAG_ARRAY_LIST = 30;
+    private static final byte TAG_LINKED_LIST = 31;
+    private static final byte TAG_HASH_SET = 32;
+    private static final byte TAG_LINKED_HASH_SET = 33;
+    private static final byte TAG_TREE_SET = 34;
+    private static final byte TAG_HASH_MAP = 35;
+    private static final byte TAG_LINKED_HASH_MAP = 36;
+    private static final byte TAG_TREE_MAP = 37;
+    private static final byte TAG_OBJECT_ARRAY = 38;
+
+    private static final byte TAG_SERIALIZED = 127;
+
+    private final NucleusContext nucleusCtx;
+
+    /** Serializer for any value not handled natively. */
+    private final JavaCacheSerializer fallbackSerializer;
+
+    /** Cache of resolved classes, keyed by class name, to avoid a ClassLoaderResolver lookup per value. */
+    private final Map<String, Class> classesByName = new ConcurrentHashMap<>();
+
+    public CompactCacheSerializer(NucleusContext nucleusCtx)
+    {
+        this.nucleusCtx = nucleusCtx;
+        this.fallbackSerializer = new JavaCacheSerializer(nucleusCtx);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.CacheSerializer#serialize(java.lang.Object)
+     */
+    public byte[] serialize(Object obj)
+    {
+        Output out = new Output();
+        writeValue(out, obj);
+        return out.toByteArray();
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.CacheSerializer#deserialize(byte[])
+     */
+    public Object deserialize(byte[] bytes)
+    {
+        if (bytes == null)
+        {
+            return null;
+        }
+        return deserialize(bytes, 0, bytes.length);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.CacheSerializer#deserialize(byte[], int, int)
+     */
+    public Object deserialize(byte[] bytes, int offset, int length)
+    {
+        try
+        {
+            return readValue(new Input(bytes, offset));
+        }
+        catch (NucleusException ne)
+        {
+            throw ne;
+        }
+        catch (RuntimeException e)
+        {
+            throw new NucleusException("Failed to convert object", e);
+        }
+    }
+
+    private void writeValue(Output out, Object value)
+    {
+        if (value == null)
+        {
+            out.writeByte(TAG_NULL);
+            return;
+        }
+
+        Class type = value.getClass();
+        if (type == String.class)
+        {
+            out.writeByte(TAG_STRING);
+            out.writeString((String)value);
+        }
+        else if (type == Long.class)
+        {
+            out.writeByte(TAG_LONG);
+            out.writeVarLong(zigZag((Long)value));
+        }
+        else if (type == Integer.class)
+        {
+            out.writeByte(TAG_INT);
+            out.writeVarInt(zigZag((Integer)value));
+        }
+        else if (type == Boolean.class)
+        {
+            out.writeByte((Boolean)value ? TAG_TRUE : TAG_FALSE);
+        }
+        else if (type == LongId.class)
+        {
+            LongId id = (LongId)value;
+            out.writeByte(TAG_LONG_ID);
+            writeClassName(out, id.getTargetClassName());
+            out.writeVarLong(zigZag((Long)id.getKeyAsObject()));
+        }
+        else if (type == IntId.class)
+        {
+            IntId id = (IntId)value;
+            out.writeByte(TAG_INT_ID);
+            writeClassName(out, id.getTargetClassName());
+            out.writeVarInt(zigZag((Integer)id.getKeyAsObject()));
+        }
+        else if (type == StringId.class)
+        {
+            StringId id = (StringId)value;
+            out.writeByte(TAG_STRING_ID);
+            writeClassName(out, id.getTargetClassName());
+            out.writeString((String)id.getKeyAsObject());
+        }
+        else if (type == DatastoreIdImpl.class)
+        {
+            DatastoreIdImpl id = (DatastoreIdImpl)value;
+            out.writeByte(TAG_DATASTORE_ID);
+            writeClassName(out, id.getTargetClassName());
+            writeValue(out, id.getKeyAsObject());
+        }
+        else if (value instanceof CachedPC)
+        {
+            writeCachedPC(out, (CachedPC)value);
+        }
+        else if (type == Short.class)
+        {
+            out.writeByte(TAG_SHORT);
+            out.writeVarInt(zigZag((Short)value));
+        }
+        else if (type == Byte.class)
+        {
+            out.writeByte(TAG_BYTE);
+            out.writeByte((Byte)value);
+        }
+        else if (type == Character.class)
+        {
+            out.writeByte(TAG_CHAR);
+            out.writeVarInt((Character)value);
+        }
+        else if (type == Double.class)
+        {
+            out.writeByte(TAG_DOUBLE);
+            out.writeLong(Double.doubleToLongBits((Double)value));
+        }
+        else if (type == Float.class)
+        {
+            out.writeByte(TAG_FLOAT);
+            out.writeInt(Float.floatToIntBits((Float)value));
+        }
+        else if (type == byte[].class)
+        {
+            byte[] bytes = (byte[])value;
+            out.writeByte(TAG_BYTES);
+            out.writeVarInt(bytes.length);
+            out.writeBytes(bytes);
+        }
+        else if (type == Date.class)
+        {
+            out.writeByte(TAG_DATE);
+            out.writeVarLong(zigZag(((Date)value).getTime()));
+        }
+        else if (type == Timestamp.class)
+        {
+            Timestamp ts = (Timestamp)value;
+            out.writeByte(TAG_SQL_TIMESTAMP);
+            out.writeVarLong(zigZag(ts.getTime()));
+            out.writeVarInt(ts.getNanos());
+        }
+        else if (type == java.sql.Date.class)
+        {
+            out.writeByte(TAG_SQL_DATE);
+            out.writeVarLong(zigZag(((java.sql.Date)value).getTime()));
+        }
+        else if (type == Time.class)
+        {
+            out.writeByte(TAG_SQL_TIME);
+            out.writeVarLong(zigZag(((Time)value).getTime()));
+        }
+        else if (type == BigDecimal.class)
+        {
+            BigDecimal bd = (BigDecimal)value;
+            byte[] bytes = bd.unscaledValue().toByteArray();
+            out.writeByte(TAG_BIG_DECIMAL);
+            out.writeVarInt(zigZag(bd.scale()));
+            out.writeVarInt(bytes.length);
+            out.writeBytes(bytes);
+        }
+        else if (type == BigInteger.class)
+        {
+            byte[] bytes = ((BigInteger)value).toByteArray();
+            out.writeByte(TAG_BIG_INTEGER);
+            out.writeVarInt(bytes.length);
+            out.writeBytes(bytes);
+        }
+        else if (value instanceof Enum)
+        {
+            out.writeByte(TAG_ENUM);
+            writeClassName(out, ((Enum)value).getDeclaringClass().getName());
+            out.writeString(((Enum)value).name());
+        }
+        else if (type == ArrayList.class)
+        {
+            writeCollection(out, TAG_ARRAY_LIST, (Collection)value);
+        }
+        else if (type == HashSet.class)
+        {
+            writeCollection(out, TAG_HASH_SET, (Collection)value);
+        }
+        else if (type == LinkedHashSet.class)
+        {
+            writeCollection(out, TAG_LINKED_HASH_SET, (Collection)value);
+        }
+        else if (type == LinkedList.class)
+        {
+            writeCollection(out, TAG_LINKED_LIST, (Collection)value);
+        }
+        else if (type == TreeSet.class && ((TreeSet)value).comparator() == null)
+        {
+            writeCollection(out, TAG_TREE_SET, (Collection)value);
+        }
+        else if (type == HashMap.class)
+        {
+            writeMap(out, TAG_HASH_MAP, (Map)value);
+        }
+        else if (type == LinkedHashMap.class)
+        {
+            writeMap(out, TAG_LINKED_HASH_MAP, (Map)value);
+        }
+        else if (type == TreeMap.class && ((TreeMap)value).comparator() == null)
+        {
+            writeMap(out, TAG_TREE_MAP, (Map)value);
+        }
+        else if (type == Object[].class)
+        {
+            Object[] array = (Object[])value;
+            out.writeByte(TAG_OBJECT_ARRAY);
+            out.writeVarInt(array.length);
+            for (Object element : array)
+            {
+                writeValue(out, element);
+            }
+        }
+        else
+        {
+            byte[] bytes = fallbackSerializer.serialize(value);
+            out.writeByte(TAG_SERIALIZED);
+            out.writeVarInt(bytes.length);
+            out.writeBytes(bytes);
+        }
+    }
+
+    private void writeCachedPC(Output out, CachedPC pc)
+    {
+        out.writeByte(TAG_CACHED_PC);
+        writeClassName(out, pc.getObjectClass().getName());
+        writeValue(out, pc.getId());
+        writeValue(out, pc.getVersion());
+
+        boolean[] loadedFields = pc.getLoadedFields();
+        out.writeVarInt(loadedFields.length);
+        int bits = 0;
+        for (int i = 0; i < loadedFields.length; i++)
+        {
+            if (loadedFields[i])
+            {
+                bits |= 1 << (i & 7);
+            }
+            if ((i & 7) == 7 || i == loadedFields.length - 1)
+            {
+                out.writeByte(bits);
+                bits = 0;
+            }
+        }
+
+        for (int i = 0; i < loadedFields.length; i++)
+        {
+            if (loadedFields[i])
+            {
+                writeValue(out, pc.getFieldValue(i));
+            }
+        }
+    }
+
+    private void writeCollection(Output out, byte tag, Collection coll)
+    {
+        out.writeByte(tag);
+        out.writeVarInt(coll.size());
+        for (Object element : coll)
+        {
+            writeValue(out, element);
+        }
+    }
+
+    private void writeMap(Output out, byte tag, Map<?, ?> map)
+    {
+        out.writeByte(tag);
+        out.writeVarInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet())
+        {
+            writeValue(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Write a class name, as an index when the name has already been written for this value, else as
+     * a zero index followed by the name.
+     */
+    private void writeClassName(Output out, String className)
+    {
+        if (out.classNames == null)
+        {
+            out.classNames = new HashMap<>();
+        }
+        Integer index = out.classNames.get(className);
+        if (index != null)
+        {
+            out.writeVarInt(index + 1);
+        }
+        else
+        {
+            out.writeVarInt(0);
+            out.writeString(className);
+            out.classNames.put(className, out.classNames.size());
+        }
+    }
+
+    private Object readValue(Input in)
+    {
+        byte tag = in.readByte();
+        switch (tag)
+        {
+            case TAG_NULL:
+                return null;
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_BYTE:
+                return in.readByte();
+            case TAG_SHORT:
+                return (short)unZigZag(in.readVarInt());
+            case TAG_INT:
+                return unZigZag(in.readVarInt());
+            case TAG_LONG:
+                return unZigZag(in.readVarLong());
+            case TAG_FLOAT:
+                return Float.intBitsToFloat(in.readInt());
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case TAG_CHAR:
+                return (char)in.readVarInt();
+            case TAG_STRING:
+                return in.readString();
+            case TAG_BYTES:
+                return in.readBytes(in.readVarInt());
+            case TAG_DATE:
+                return new Date(unZigZag(in.readVarLong()));
+            case TAG_SQL_DATE:
+                return new java.sql.Date(unZigZag(in.readVarLong()));
+            case TAG_SQL_TIME:
+                return new Time(unZigZag(in.readVarLong()));
+            case TAG_SQL_TIMESTAMP:
+            {
+                Timestamp ts = new Timestamp(unZigZag(in.readVarLong()));
+                ts.setNanos(in.readVarInt());
+                return ts;
+            }
+            case TAG_BIG_DECIMAL:
+            {
+                int scale = unZigZag(in.readVarInt());
+                return new BigDecimal(new BigInteger(in.readBytes(in.readVarInt())), scale);
+            }
+            case TAG_BIG_INTEGER:
+                return new BigInteger(in.readBytes(in.readVarInt()));
+            case TAG_ENUM:
+            {
+                Class enumType = classForName(readClassName(in));
+                return enumValueOf(enumType, in.readString());
+            }
+            case TAG_CACHED_PC:
+                return readCachedPC(in);
+            case TAG_LONG_ID:
+            {
+                Class targetClass = classForName(readClassName(in));
+                return new LongId(targetClass, unZigZag(in.readVarLong()));
+            }
+            case TAG_INT_ID:
+            {
+                Class targetClass = classForName(readClassName(in));
+                return new IntId(targetClass, unZigZag(in.readVarInt()));
+            }
+            case TAG_STRING_ID:
+            {
+                Class targetClass = classForName(readClassName(in));
+                return new StringId(targetClass, in.readString());
+            }
+            case TAG_DATASTORE_ID:
+            {
+                String targetClassName = readClassName(in);
+                return new DatastoreIdImpl(targetClassName, readValue(in));
+            }
+            case TAG_ARRAY_LIST:
+            {
+                int size = in.readVarInt();
+                return readElements(in, new ArrayList<>(size), size);
+            }
+            case TAG_LINKED_LIST:
+                return readElements(in, new LinkedList<>(), in.readVarInt());
+            case TAG_HASH_SET:
+            {
+                int size = in.readVarInt();
+                return readElements(in, new HashSet<>(capacityFor(size)), size);
+            }
+            case TAG_LINKED_HASH_SET:
+            {
+                int size = in.readVarInt();
+                return readElements(in, new LinkedHashSet<>(capacityFor(size)), size);
+            }
+            case TAG_TREE_SET:
+                return readElements(in, new TreeSet<>(), in.readVarInt());
+            case TAG_HASH_MAP:
+            {
+                int size = in.readVarInt();
+                return readEntries(in, new HashMap<>(capacityFor(size)), size);
+            }
+            case TAG_LINKED_HASH_MAP:
+            {
+                int size = in.readVarInt();
+                return readEntries(in, new LinkedHashMap<>(capacityFor(size)), size);
+            }
+            case TAG_TREE_MAP:
+                return readEntries(in, new TreeMap<>(), in.readVarInt());
+            case TAG_OBJECT_ARRAY:
+            {
+                Object[] array = new Object[in.readVarInt()];
+                for (int i = 0; i < array.length; i++)
+                {
+                    array[i] = readValue(in);
+                }
+                return array;
+            }
+            case TAG_SERIALIZED:
+            {
+                int length = in.readVarInt();
+                Object value = fallbackSerializer.deserialize(in.buf, in.pos, length);
+                in.pos += length;
+                return value;
+            }
+            default:
+                throw new NucleusException("Failed to convert object : unknown type tag " + tag);
+        }
+    }
+
+    private CachedPC readCachedPC(Input in)
+    {
+        Class cls = classForName(readClassName(in));
+        Object id = readValue(in);
+        Object version = readValue(in);
+
+        boolean[] loadedFields = new boolean[in.readVarInt()];
+        int bits = 0;
+        for (int i = 0; i < loadedFields.length; i++)
+        {
+            if ((i & 7) == 0)
+            {
+                bits = in.readByte();
+            }
+            loadedFields[i] = (bits & (1 << (i & 7))) != 0;
+        }
+
+        CachedPC pc = new CachedPC(cls, loadedFields, version, id);
+        for (int i = 0; i < loadedFields.length; i++)
+        {
+            if (loadedFields[i])
+            {
+                pc.setFieldValue(i, readValue(in));
+            }
+        }
+        return pc;
+    }
+
+    private Collection<Object> readElements(Input in, Collection<Object> coll, int size)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            coll.add(readValue(in));
+        }
+        return coll;
+    }
+
+    private Map<Object, Object> readEntries(Input in, Map<Object, Object> map, int size)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            Object key = readValue(in);
+            map.put(key, readValue(in));
+        }
+        return map;
+    }
+
+    private String readClassName(Input in)
+    {
+        if (in.classNames == null)
+        {
+            in.classNames = new ArrayList<>();
+        }
+        int index = in.readVarInt();
+        if (index > 0)
+        {
+            return in.classNames.get(index - 1);
+        }
+        String className = in.readString();
+        in.classNames.add(className);
+        return className;
+    }
+
+    private Class classForName(String className)
+    {
+        Class cls = classesByName.get(className);
+        if (cls == null)
+        {
+            cls = nucleusCtx.getClassLoaderResolver(null).classForName(className);
+            classesByName.put(className, cls);
+        }
+        return cls;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object enumValueOf(Class enumType, String name)
+    {
+        return Enum.valueOf(enumType, name);
+    }
+
+    private static int capacityFor(int size)
+    {
+        return size < 3 ? size + 1 : (int)(size / 0.75f) + 1;
+    }
+
+    private static int zigZag(int value)
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigZag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unZigZag(int value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unZigZag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Growable byte buffer that values are written to.
+     */
+    private static final class Output
+    {
+        byte[] buf = new byte[256];
+        int pos = 0;
+
+        /** Index of class names already written, allocated on first use. */
+        Map<String, Integer> classNames;
+
+        void ensureCapacity(int length)
+        {
+            if (pos + length > buf.length)
+            {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + length));
+            }
+        }
+
+        void writeByte(int value)
+        {
+            ensureCapacity(1);
+            buf[pos++] = (byte)value;
+        }
+
+        void writeBytes(byte[] bytes)
+        {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeInt(int value)
+        {
+            ensureCapacity(4);
+            buf[pos++] = (byte)(value >>> 24);
+            buf[pos++] = (byte)(value >>> 16);
+            buf[pos++] = (byte)(value >>> 8);
+            buf[pos++] = (byte)value;
+        }
+
+        void writeLong(long value)
+        {
+            writeInt((int)(value >>> 32));
+            writeInt((int)value);
+        }
+
+        void writeVarInt(int value)
+        {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0)
+            {
+                buf[pos++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte)value;
+        }
+
+        void writeVarLong(long value)
+        {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0)
+            {
+                buf[pos++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte)value;
+        }
+
+        void writeString(String value)
+        {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            writeBytes(bytes);
+        }
+
+        byte[] toByteArray()
+        {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    /**
+     * Reader of bytes created by Output.
+     */
+    private static final class Input
+    {
+        final byte[] buf;
+        int pos;
+
+        /** Class names read so far, allocated on first use. */
+        List<String> classNames;
+
+        Input(byte[] buf, int pos)
+        {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        byte readByte()
+        {
+            return buf[pos++];
+        }
+
+        byte[] readBytes(int length)
+        {
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        int readInt()
+        {
+            return ((buf[pos++] & 0xFF) << 24) | ((buf[pos++] & 0xFF) << 16) | ((buf[pos++] & 0xFF) << 8) | (buf[pos++] & 0xFF);
+        }
+
+        long readLong()
+        {
+            return ((long)readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        int readVarInt()
+        {
+            int result = 0;
+            for (int shift = 0; ; shift += 7)
+            {
+                byte b = buf[pos++];
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                {
+                    return result;
+                }
+            }
+        }
+
+        long readVarLong()
+        {
+            long result = 0;
+            for (int shift = 0; ; shift += 7)
+            {
+                byte b = buf[pos++];
+                result |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                {
+                    return result;
+                }
+            }
+        }
+
+        String readString()
+        {
+            int length = readVarInt();
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
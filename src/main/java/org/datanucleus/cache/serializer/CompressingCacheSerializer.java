@@ -0,0 +1,137 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.serializer;
+
+import org.datanucleus.exceptions.NucleusException;
+
+/**
+ * Serializer that wraps another serializer, compressing any serialized value of at least a threshold size.
+ * Every value starts with a header byte defining how it is stored, so values written with different compression
+ * types or thresholds (including no compression) can be read back regardless of the current setting.
+ * The serialized value is read in place after the header, so an uncompressed value isn't copied on reading.
+ * <ul>
+ * <li>0 : uncompressed, followed by the serialized value.</li>
+ * <li>1 (Deflate), 2 (LZ4) : followed by the uncompressed length (4 bytes), and then the compressed value.</li>
+ * </ul>
+ */
+public class CompressingCacheSerializer implements CacheSerializer
+{
+    public static final byte TYPE_NONE = 0;
+    public static final byte TYPE_DEFLATE = 1;
+    public static final byte TYPE_LZ4 = 2;
+
+    private final CacheSerializer delegate;
+
+    /** Type of compression to apply to new values. */
+    private final byte compressionType;
+
+    /** Minimum serialized size (bytes) for a value to be compressed. */
+    private final int threshold;
+
+    private final Compressor deflateCompressor = new DeflateCompressor();
+
+    /** LZ4 compressor, created when first needed since it needs lz4-java in the CLASSPATH. */
+    private volatile Compressor lz4Compressor;
+
+    /**
+     * Constructor.
+     * @param delegate The serializer for the values
+     * @param compressionType Type of compression for new values (TYPE_NONE, TYPE_DEFLATE, TYPE_LZ4)
+     * @param threshold Minimum serialized size (bytes) for a value to be compressed
+     */
+    public CompressingCacheSerializer(CacheSerializer delegate, byte compressionType, int threshold)
+    {
+        this.delegate = delegate;
+        this.compressionType = compressionType;
+        this.threshold = threshold;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.CacheSerializer#serialize(java.lang.Object)
+     */
+    public byte[] serialize(Object obj)
+    {
+        byte[] bytes = delegate.serialize(obj);
+        if (compressionType != TYPE_NONE && bytes.length >= threshold)
+        {
+            byte[] compressed = getCompressor(compressionType).compress(bytes);
+            if (compressed.length + 4 < bytes.length)
+            {
+                byte[] result = new byte[compressed.length + 5];
+                result[0] = compressionType;
+                result[1] = (byte)(bytes.length >>> 24);
+                result[2] = (byte)(bytes.length >>> 16);
+                result[3] = (byte)(bytes.length >>> 8);
+                result[4] = (byte)bytes.length;
+                System.arraycopy(compressed, 0, result, 5, compressed.length);
+                return result;
+            }
+        }
+
+        // Not worth compressing
+        byte[] result = new byte[bytes.length + 1];
+        result[0] = TYPE_NONE;
+        System.arraycopy(bytes, 0, result, 1, bytes.length);
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.CacheSerializer#deserialize(byte[])
+     */
+    public Object deserialize(byte[] bytes)
+    {
+        if (bytes == null)
+        {
+            return null;
+        }
+        else if (bytes.length == 0)
+        {
+            throw new NucleusException("Failed to convert object : no header");
+        }
+
+        byte type = bytes[0];
+        if (type == TYPE_NONE)
+        {
+            return delegate.deserialize(bytes, 1, bytes.length - 1);
+        }
+        else if (bytes.length < 5)
+        {
+            throw new NucleusException("Failed to convert object : truncated header");
+        }
+
+        int length = ((bytes[1] & 0xFF) << 24) | ((bytes[2] & 0xFF) << 16) | ((bytes[3] & 0xFF) << 8) | (bytes[4] & 0xFF);
+        return delegate.deserialize(getCompressor(type).decompress(bytes, 5, bytes.length - 5, length));
+    }
+
+    private Compressor getCompressor(byte type)
+    {
+        if (type == TYPE_DEFLATE)
+        {
+            return deflateCompressor;
+        }
+        else if (type == TYPE_LZ4)
+        {
+            if (lz4Compressor == null)
+            {
+                lz4Compressor = new Lz4Compressor();
+            }
+            return lz4Compressor;
+        }
+        throw new NucleusException("Failed to convert object : unknown compression type " + type);
+    }
+}
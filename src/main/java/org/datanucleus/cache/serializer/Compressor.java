@@ -0,0 +1,42 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.serializer;
+
+/**
+ * Compression algorithm applied to serialized cache values.
+ * Implementations must be thread-safe, and must throw a NucleusException when the data is invalid.
+ */
+public interface Compressor
+{
+    /**
+     * Compress the provided bytes.
+     * @param data The uncompressed bytes
+     * @return The compressed bytes
+     */
+    byte[] compress(byte[] data);
+
+    /**
+     * Decompress the specified range of bytes.
+     * @param data The bytes containing the compressed data
+     * @param offset Offset of the compressed data
+     * @param length Length of the compressed data
+     * @param uncompressedLength Length of the original (uncompressed) data
+     * @return The uncompressed bytes
+     */
+    byte[] decompress(byte[] data, int offset, int length, int uncompressedLength);
+}
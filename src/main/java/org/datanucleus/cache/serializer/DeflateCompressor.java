@@ -0,0 +1,89 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.datanucleus.exceptions.NucleusException;
+
+/**
+ * Compressor using the JDK Deflate implementation, favouring speed over compression ratio.
+ */
+public class DeflateCompressor implements Compressor
+{
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.Compressor#compress(byte[])
+     */
+    public byte[] compress(byte[] data)
+    {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            deflater.setInput(data);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            byte[] buffer = new byte[Math.min(data.length, 8192)];
+            while (!deflater.finished())
+            {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.Compressor#decompress(byte[], int, int, int)
+     */
+    public byte[] decompress(byte[] data, int offset, int length, int uncompressedLength)
+    {
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(data, offset, length);
+            byte[] result = new byte[uncompressedLength];
+            int pos = 0;
+            while (pos < uncompressedLength)
+            {
+                int count = inflater.inflate(result, pos, uncompressedLength - pos);
+                if (count == 0 && (inflater.finished() || inflater.needsInput()))
+                {
+                    throw new NucleusException("Failed to decompress cached value : data truncated");
+                }
+                pos += count;
+            }
+            return result;
+        }
+        catch (DataFormatException e)
+        {
+            throw new NucleusException("Failed to decompress cached value", e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+import org.datanucleus.NucleusContext;
+import org.datanucleus.exceptions.ClassNotResolvedException;
+import org.datanucleus.exceptions.NucleusException;
+
+/**
+ * Serializer using standard Java serialization (ObjectOutputStream/ObjectInputStream).
+ * Works for any Serializable value, but stores full class descriptors with each value.
+ */
+public class JavaCacheSerializer implements CacheSerializer
+{
+    private final NucleusContext nucleusCtx;
+
+    public JavaCacheSerializer(NucleusContext nucleusCtx)
+    {
+        this.nucleusCtx = nucleusCtx;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.CacheSerializer#serialize(java.lang.Object)
+     */
+    public byte[] serialize(Object obj)
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bos))
+        {
+            out.writeObject(obj);
+        }
+        catch (IOException e)
+        {
+            throw new NucleusException("Exception in serializing Object for cache", e);
+        }
+        return bos.toByteArray();
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.CacheSerializer#deserialize(byte[])
+     */
+    public Object deserialize(byte[] bytes)
+    {
+        if (bytes == null)
+        {
+            return null;
+        }
+        return deserialize(bytes, 0, bytes.length);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.CacheSerializer#deserialize(byte[], int, int)
+     */
+    public Object deserialize(byte[] bytes, int offset, int length)
+    {
+        try (ObjectInputStream in = new ResolvingObjectInputStream(new ByteArrayInputStream(bytes, offset, length)))
+        {
+            return in.readObject();
+        }
+        catch (ClassNotFoundException | IOException e)
+        {
+            throw new NucleusException("Failed to convert object", e);
+        }
+    }
+
+    /**
+     * ObjectInputStream that falls back to the DataNucleus ClassLoaderResolver when the default class resolution fails,
+     * so that persistable classes can be found when the cache is invoked from a container thread.
+     */
+    private class ResolvingObjectInputStream extends ObjectInputStream
+    {
+        public ResolvingObjectInputStream(InputStream in) throws IOException
+        {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+        {
+            try
+            {
+                return super.resolveClass(desc);
+            }
+            catch (ClassNotFoundException cnfe)
+            {
+                try
+                {
+                    return nucleusCtx.getClassLoaderResolver(null).classForName(desc.getName());
+                }
+                catch (ClassNotResolvedException cnre)
+                {
+                    throw cnfe;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.serializer;
+
+import org.datanucleus.NucleusContext;
+import org.datanucleus.exceptions.NucleusException;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+
+/**
+ * Serializer using <a href="https://github.com/EsotericSoftware/kryo">Kryo</a>.
+ * Classes don't need registering, and objects without a default constructor (e.g CachedPC) are instantiated using Objenesis.
+ * Kryo instances are not thread-safe so one is held per thread.
+ */
+public class KryoCacheSerializer implements CacheSerializer
+{
+    private final ThreadLocal<Kryo> kryos;
+
+    public KryoCacheSerializer(NucleusContext nucleusCtx)
+    {
+        kryos = ThreadLocal.withInitial(() ->
+        {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(false);
+            kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader != null)
+            {
+                kryo.setClassLoader(loader);
+            }
+            return kryo;
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.CacheSerializer#serialize(java.lang.Object)
+     */
+    public byte[] serialize(Object obj)
+    {
+        try
+        {
+            Output output = new Output(256, -1);
+            kryos.get().writeClassAndObject(output, obj);
+            return output.toBytes();
+        }
+        catch (KryoException e)
+        {
+            throw new NucleusException("Exception in serializing Object for cache", e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.CacheSerializer#deserialize(byte[])
+     */
+    public Object deserialize(byte[] bytes)
+    {
+        if (bytes == null)
+        {
+            return null;
+        }
+        return deserialize(bytes, 0, bytes.length);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.CacheSerializer#deserialize(byte[], int, int)
+     */
+    public Object deserialize(byte[] bytes, int offset, int length)
+    {
+        try
+        {
+            return kryos.get().readClassAndObject(new Input(bytes, offset, length));
+        }
+        catch (KryoException e)
+        {
+            throw new NucleusException("Failed to convert object", e);
+        }
+    }
+}
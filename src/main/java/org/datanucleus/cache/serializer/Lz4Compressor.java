@@ -0,0 +1,67 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.serializer;
+
+import org.datanucleus.exceptions.NucleusException;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Compressor using <a href="https://github.com/lz4/lz4-java">LZ4</a>, trading compression ratio for very low CPU cost.
+ */
+public class Lz4Compressor implements Compressor
+{
+    private final LZ4Compressor compressor;
+
+    private final LZ4FastDecompressor decompressor;
+
+    public Lz4Compressor()
+    {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        compressor = factory.fastCompressor();
+        decompressor = factory.fastDecompressor();
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.Compressor#compress(byte[])
+     */
+    public byte[] compress(byte[] data)
+    {
+        return compressor.compress(data);
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.serializer.Compressor#decompress(byte[], int, int, int)
+     */
+    public byte[] decompress(byte[] data, int offset, int length, int uncompressedLength)
+    {
+        try
+        {
+            byte[] result = new byte[uncompressedLength];
+            decompressor.decompress(data, offset, result, 0, uncompressedLength);
+            return result;
+        }
+        catch (LZ4Exception e)
+        {
+            throw new NucleusException("Failed to decompress cached value", e);
+        }
+    }
+}
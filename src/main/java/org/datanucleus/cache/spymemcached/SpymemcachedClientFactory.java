@@ -0,0 +1,85 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.spymemcached;
+
+import java.io.IOException;
+
+import net.spy.memcached.AddrUtil;
+import net.spy.memcached.ConnectionFactoryBuilder;
+import net.spy.memcached.DefaultHashAlgorithm;
+import net.spy.memcached.FailureMode;
+import net.spy.memcached.MemcachedClient;
+
+import org.datanucleus.cache.support.MemcachedClientSettings;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Factory for spymemcached clients, applying the client settings of a cache.
+ * Spymemcached uses a single (multiplexed) connection per server, so "connectionPoolSize" is not supported.
+ */
+class SpymemcachedClientFactory
+{
+    private SpymemcachedClientFactory()
+    {
+    }
+
+    /**
+     * Method to create a client for the specified servers.
+     * @param servers The servers ("host:port host:port ...")
+     * @param settings The client settings
+     * @return The client
+     * @throws IOException if the client couldn't be created
+     */
+    static MemcachedClient createClient(String servers, MemcachedClientSettings settings) throws IOException
+    {
+        ConnectionFactoryBuilder builder = new ConnectionFactoryBuilder();
+        if (settings.isBinaryProtocol())
+        {
+            builder.setProtocol(ConnectionFactoryBuilder.Protocol.BINARY);
+        }
+        if (settings.isConsistentHashing())
+        {
+            builder.setLocatorType(ConnectionFactoryBuilder.Locator.CONSISTENT);
+            builder.setHashAlg(DefaultHashAlgorithm.KETAMA_HASH);
+        }
+        if (settings.getConnectionPoolSize() > 1)
+        {
+            NucleusLogger.CACHE.warn("Spymemcached uses a single connection per memcached server, so connectionPoolSize is ignored");
+        }
+        if (settings.getOpTimeoutMillis() > 0)
+        {
+            builder.setOpTimeout(settings.getOpTimeoutMillis());
+        }
+        if (settings.getFailureMode() != null)
+        {
+            switch (settings.getFailureMode())
+            {
+                case RETRY:
+                    builder.setFailureMode(FailureMode.Retry);
+                    break;
+                case CANCEL:
+                    builder.setFailureMode(FailureMode.Cancel);
+                    break;
+                default:
+                    builder.setFailureMode(FailureMode.Redistribute);
+                    break;
+            }
+        }
+        return new MemcachedClient(builder.build(), AddrUtil.getAddresses(servers));
+    }
+}
@@ -19,25 +19,46 @@ Contributors:
 package org.datanucleus.cache.spymemcached;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
-import net.spy.memcached.AddrUtil;
+import net.spy.memcached.CASResponse;
+import net.spy.memcached.CASValue;
 import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.internal.OperationFuture;
 
 import org.datanucleus.NucleusContext;
 import org.datanucleus.Configuration;
 import org.datanucleus.cache.AbstractLevel2Cache;
 import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.key.CacheKeyEncoder;
+import org.datanucleus.cache.key.ClassKeys;
+import org.datanucleus.cache.key.KeyGenerations;
+import org.datanucleus.cache.serializer.CacheSerializer;
+import org.datanucleus.cache.serializer.CacheSerializerFactory;
+import org.datanucleus.cache.support.AsyncWriteWindow;
+import org.datanucleus.cache.support.MemcachedClientSettings;
+import org.datanucleus.cache.support.VersionedWriter;
 import org.datanucleus.cache.xmemcached.XmemcachedLevel2Cache;
 import org.datanucleus.exceptions.NucleusException;
-import org.datanucleus.identity.IdentityUtils;
-import org.datanucleus.identity.SingleFieldId;
 import org.datanucleus.util.NucleusLogger;
 
 /**
  * Plugin using Spymemcached implementation of "memcached" as a Level2 cache.
  * We use the "cacheName" as the keyPrefix to distinguish our objects from others in memcached.
+ * getAll retrieves the objects with a single bulk get per memcached server.
+ * Puts wait for memcached to acknowledge the set, unless "memcached.asyncWrites" is enabled, in which case they don't wait
+ * but the number in progress is bounded (see AsyncWriteWindow).
+ * When "memcached.versionedPuts" is enabled puts use gets/cas (or add when not yet cached), and never replace a cached object
+ * with an older version of it. These puts wait for memcached, so aren't affected by "asyncWrites".
+ * Keys include the generations of the cache and of the class of the object (see KeyGenerations), so evictAll (for the cache or
+ * for a class) increments a generation rather than flushing the whole of memcached.
  */
 public class SpymemcachedLevel2Cache extends AbstractLevel2Cache
 {
@@ -45,8 +66,24 @@ public class SpymemcachedLevel2Cache extends AbstractLevel2Cache
 
     private MemcachedClient client;
 
+    private CacheSerializer serializer;
+
+    private CacheKeyEncoder keyEncoder;
+
     private int expireSeconds = 0;
 
+    /** Bound on the async writes in progress, when using async writes. */
+    private AsyncWriteWindow asyncWrites;
+
+    /** Writer of puts using gets/cas to never replace a newer version, when using versioned puts. */
+    private VersionedWriter versionedWriter;
+
+    /** Generations of the cache and class namespaces, included in the keys. */
+    private KeyGenerations generations;
+
+    /** Key of the generation counter for the whole cache. */
+    private String cacheGenerationKey;
+
     public SpymemcachedLevel2Cache(NucleusContext nucleusCtx)
     {
         super(nucleusCtx);
@@ -55,23 +92,89 @@ public class SpymemcachedLevel2Cache extends AbstractLevel2Cache
 
         expireSeconds = (int)expiryMillis/1000;
 
+        serializer = CacheSerializerFactory.getLevel2Serializer(nucleusCtx);
+        keyEncoder = new CacheKeyEncoder(cacheName, CacheKeyEncoder.DEFAULT_MAX_KEY_LENGTH - XmemcachedLevel2Cache.GENERATION_SUFFIX_LENGTH);
+
         try
         {
             String servers = conf.getStringProperty(XmemcachedLevel2Cache.PROPERTY_CACHE_L2_MEMCACHED_SERVERS);
-            client = new MemcachedClient(AddrUtil.getAddresses(servers));
+            client = SpymemcachedClientFactory.createClient(servers,
+                MemcachedClientSettings.create(conf, XmemcachedLevel2Cache.PROPERTY_CACHE_L2_MEMCACHED_PREFIX));
         }
         catch (IOException e)
         {
             NucleusLogger.CACHE.error("Exception caught creating cache", e);
             throw new NucleusException("Cant create cache", e);
         }
+
+        asyncWrites = AsyncWriteWindow.create(conf, XmemcachedLevel2Cache.PROPERTY_CACHE_L2_MEMCACHED_PREFIX);
+        if (conf.getBooleanProperty(XmemcachedLevel2Cache.PROPERTY_CACHE_L2_MEMCACHED_VERSIONED_PUTS))
+        {
+            versionedWriter = new VersionedWriter(new VersionedWriter.CasClient()
+            {
+                public VersionedWriter.CasValue gets(String key)
+                {
+                    CASValue<Object> cached = client.gets(key);
+                    return (cached != null) ? new VersionedWriter.CasValue((byte[]) cached.getValue(), cached.getCas()) : null;
+                }
+
+                public boolean add(String key, byte[] bytes) throws InterruptedException, ExecutionException
+                {
+                    return client.add(key, expireSeconds, bytes).get();
+                }
+
+                public boolean cas(String key, byte[] bytes, long cas)
+                {
+                    return client.cas(key, cas, expireSeconds, bytes) == CASResponse.OK;
+                }
+
+                public void delete(String key)
+                {
+                    client.delete(key);
+                }
+            }, serializer, "spymemcached");
+        }
+
+        long refreshMillis = conf.getIntProperty(XmemcachedLevel2Cache.PROPERTY_CACHE_L2_MEMCACHED_GENERATION_REFRESH_MILLIS);
+        generations = new KeyGenerations(this::incrementCounter,
+            refreshMillis > 0 ? refreshMillis : XmemcachedLevel2Cache.DEFAULT_GENERATION_REFRESH_MILLIS);
+        cacheGenerationKey = ClassKeys.getGenerationKey(keyEncoder, "");
+    }
+
+    /**
+     * Accessor for the number of async writes not made because too many were in progress.
+     * @return Number of dropped writes
+     */
+    public long getDroppedWriteCount()
+    {
+        return asyncWrites != null ? asyncWrites.getDroppedCount() : 0;
+    }
+
+    /**
+     * Accessor for the number of async writes that failed.
+     * @return Number of failed writes
+     */
+    public long getFailedWriteCount()
+    {
+        return asyncWrites != null ? asyncWrites.getFailedCount() : 0;
     }
 
     public void close()
     {
+        if (asyncWrites != null)
+        {
+            asyncWrites.awaitCompletion(client.getOperationTimeout());
+        }
         if (clearAtClose)
         {
-            client.flush();
+            try
+            {
+                generations.increment(cacheGenerationKey);
+            }
+            catch (Exception e)
+            {
+                NucleusLogger.CACHE.error("Exception caught clearing cache", e);
+            }
             client.shutdown();
         }
     }
@@ -88,7 +191,7 @@ public class SpymemcachedLevel2Cache extends AbstractLevel2Cache
 
     public void evictAll()
     {
-        client.flush();
+        generations.increment(cacheGenerationKey);
     }
 
     public void evictAll(Object[] oids)
@@ -118,14 +221,58 @@ public class SpymemcachedLevel2Cache extends AbstractLevel2Cache
         }
     }
 
-    public void evictAll(Class arg0, boolean arg1)
+    public void evictAll(Class pcClass, boolean subclasses)
     {
-        // Not supported. Do nothing
+        if (!nucleusCtx.getApiAdapter().isPersistable(pcClass))
+        {
+            return;
+        }
+
+        Set<String> discriminators = ClassKeys.getDiscriminators(nucleusCtx, pcClass, subclasses);
+
+        for (String discriminator : discriminators)
+        {
+            generations.increment(ClassKeys.getGenerationKey(keyEncoder, discriminator));
+        }
     }
 
+
     public CachedPC get(Object oid)
     {
-        return (CachedPC) client.get(getCacheKeyForId(oid));
+        return (CachedPC) serializer.deserialize((byte[]) client.get(getCacheKeyForId(oid)));
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.AbstractLevel2Cache#getAll(java.util.Collection)
+     */
+    @Override
+    public Map<Object, CachedPC> getAll(Collection oids)
+    {
+        if (oids == null)
+        {
+            return null;
+        }
+
+        Map<Object, CachedPC> objs = new HashMap<>();
+        Map<String, Object> idByKey = new HashMap<>();
+        for (Object oid : oids)
+        {
+            idByKey.put(getCacheKeyForId(oid), oid);
+        }
+        if (idByKey.isEmpty())
+        {
+            return objs;
+        }
+
+        for (Map.Entry<String, Object> entry : client.getBulk(idByKey.keySet()).entrySet())
+        {
+            Object oid = idByKey.get(entry.getKey());
+            if (oid != null && entry.getValue() != null)
+            {
+                objs.put(oid, (CachedPC) serializer.deserialize((byte[]) entry.getValue()));
+            }
+        }
+        return objs;
     }
 
     public CachedPC put(Object oid, CachedPC pc)
@@ -135,18 +282,134 @@ public class SpymemcachedLevel2Cache extends AbstractLevel2Cache
             return null;
         }
 
-        client.set(getCacheKeyForId(oid), expireSeconds, pc);
+        String key = getCacheKeyForId(oid);
+        byte[] bytes = serializer.serialize(pc);
+        if (versionedWriter != null)
+        {
+            versionedWriter.write(key, pc, bytes);
+        }
+        else if (asyncWrites != null)
+        {
+            writeAsync(key, bytes);
+        }
+        else
+        {
+            awaitWrite(client.set(key, expireSeconds, bytes));
+        }
         return pc;
     }
 
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.AbstractLevel2Cache#putAll(java.util.Map)
+     */
+    @Override
+    public void putAll(Map<Object, CachedPC> objs)
+    {
+        if (objs == null)
+        {
+            return;
+        }
+
+        // Sets are asynchronous, so are all queued (and pipelined per server) before waiting for any reply
+        List<OperationFuture<Boolean>> futures = new ArrayList<>(objs.size());
+        for (Map.Entry<Object, CachedPC> entry : objs.entrySet())
+        {
+            if (entry.getKey() != null && entry.getValue() != null)
+            {
+                String key = getCacheKeyForId(entry.getKey());
+                byte[] bytes = serializer.serialize(entry.getValue());
+                if (versionedWriter != null)
+                {
+                    versionedWriter.write(key, entry.getValue(), bytes);
+                }
+                else if (asyncWrites != null)
+                {
+                    writeAsync(key, bytes);
+                }
+                else
+                {
+                    futures.add(client.set(key, expireSeconds, bytes));
+                }
+            }
+        }
+        for (OperationFuture<Boolean> future : futures)
+        {
+            awaitWrite(future);
+        }
+    }
+
+    /**
+     * Method to wait for a set to be acknowledged by memcached.
+     * @param future The future for the set
+     * @throws NucleusException if the set failed
+     */
+    private void awaitWrite(OperationFuture<Boolean> future)
+    {
+        try
+        {
+            if (!future.get())
+            {
+                throw new NucleusException("Persistence to spymemcached of " + future.getKey() + " failed : " + future.getStatus().getMessage());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new NucleusException("Interrupted in persistence to spymemcached", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new NucleusException("Exception thrown in persistence to spymemcached", e.getCause());
+        }
+    }
+
+    /**
+     * Method to write a value to memcached without waiting for the reply, within the bounds of the async write window.
+     * @param key The key
+     * @param bytes The value
+     */
+    private void writeAsync(String key, byte[] bytes)
+    {
+        if (!asyncWrites.acquire())
+        {
+            if (asyncWrites.getOverflowPolicy() == AsyncWriteWindow.OverflowPolicy.EVICT)
+            {
+                client.delete(key);
+            }
+            return;
+        }
+
+        try
+        {
+            client.set(key, expireSeconds, bytes).addListener(future -> asyncWrites.completed(future.getStatus().isSuccess(), key));
+        }
+        catch (RuntimeException e)
+        {
+            asyncWrites.completed(false, key);
+            NucleusLogger.CACHE.debug("Exception in asynchronous write of " + key + " to spymemcached : " + e.getMessage());
+        }
+    }
+
     protected String getCacheKeyForId(Object id)
     {
-        // Because single-field id doesn't include target class name in toString()
-        if (IdentityUtils.isSingleFieldIdentity(id))
+        String classGeneration = ClassKeys.getGenerationKey(keyEncoder, keyEncoder.getDiscriminator(id));
+        return keyEncoder.getStringKey(id) + ":" + generations.get(cacheGenerationKey) + "." + generations.get(classGeneration);
+    }
+
+    /**
+     * Method to increment (or read, with delta 0) a generation counter in memcached.
+     * @param key Key of the counter
+     * @param delta Amount to increment by
+     * @param initialValue Value when the counter doesn't exist
+     * @return Value of the counter
+     */
+    private long incrementCounter(String key, long delta, long initialValue)
+    {
+        long value = client.incr(key, delta, initialValue);
+        if (value < 0)
         {
-            String targetClassName = ((SingleFieldId)id).getTargetClassName();
-            return cacheName + targetClassName + ":" + id.toString().hashCode();
+            throw new NucleusException("Failed to update generation " + key + " in spymemcached");
         }
-        return cacheName + id.toString().hashCode();
+        return value;
     }
 }
\ No newline at end of file
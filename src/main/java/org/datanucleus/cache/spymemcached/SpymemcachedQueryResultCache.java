@@ -21,12 +21,16 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
-import net.spy.memcached.AddrUtil;
 import net.spy.memcached.MemcachedClient;
 
 import org.datanucleus.NucleusContext;
+import org.datanucleus.cache.xmemcached.XmemcachedLevel2Cache;
 import org.datanucleus.cache.xmemcached.XmemcachedQueryResultCache;
 import org.datanucleus.Configuration;
+import org.datanucleus.cache.key.KeyGenerations;
+import org.datanucleus.cache.serializer.CacheSerializer;
+import org.datanucleus.cache.serializer.CacheSerializerFactory;
+import org.datanucleus.cache.support.MemcachedClientSettings;
 import org.datanucleus.exceptions.NucleusException;
 import org.datanucleus.store.query.Query;
 import org.datanucleus.store.query.QueryUtils;
@@ -35,6 +39,8 @@ import org.datanucleus.util.NucleusLogger;
 
 /**
  * Plugin using spymemcached implementation of "memcached" as a query results cache.
+ * Keys include the generation of the cache (see KeyGenerations), so evictAll increments the generation rather than flushing
+ * the whole of memcached. The candidate class of a query isn't part of its key, so evicting a class evicts all queries.
  */
 public class SpymemcachedQueryResultCache extends AbstractQueryResultsCache
 {
@@ -42,11 +48,16 @@ public class SpymemcachedQueryResultCache extends AbstractQueryResultsCache
 
     private MemcachedClient client;
 
+    private CacheSerializer serializer;
+
     /** Prefix (for uniqueness) to ensure sharing with other memcache objects. */
     private String keyPrefix = "datanucleus-query:";
 
     private int expirySeconds = 0;
 
+    /** Generation of the cache, included in the keys. */
+    private KeyGenerations generations;
+
     public SpymemcachedQueryResultCache(NucleusContext nucleusCtx)
     {
         super(nucleusCtx);
@@ -60,11 +71,16 @@ public class SpymemcachedQueryResultCache extends AbstractQueryResultsCache
         }
 
         expirySeconds = (int)expiryMillis/1000;
+        long refreshMillis = conf.getIntProperty(XmemcachedLevel2Cache.PROPERTY_CACHE_L2_MEMCACHED_GENERATION_REFRESH_MILLIS);
+        generations = new KeyGenerations(this::incrementCounter, refreshMillis > 0 ? refreshMillis : XmemcachedLevel2Cache.DEFAULT_GENERATION_REFRESH_MILLIS);
+
+        serializer = CacheSerializerFactory.getSerializer(nucleusCtx, conf.getStringProperty(CacheSerializerFactory.PROPERTY_CACHE_QUERYRESULTS_SERIALIZER));
 
         String servers = conf.getStringProperty(XmemcachedQueryResultCache.PROPERTY_CACHE_QUERYRESULTS_MEMCACHED_SERVERS);
         try
         {
-            client = new MemcachedClient(AddrUtil.getAddresses(servers));
+            client = SpymemcachedClientFactory.createClient(servers,
+                MemcachedClientSettings.create(conf, XmemcachedQueryResultCache.PROPERTY_CACHE_QUERYRESULTS_MEMCACHED_PREFIX));
         }
         catch (IOException e)
         {
@@ -94,7 +110,8 @@ public class SpymemcachedQueryResultCache extends AbstractQueryResultsCache
      */
     public void evict(Class candidate)
     {
-        // TODO Auto-generated method stub
+        // Keys don't include the candidate class, so evict all
+        evictAll();
     }
 
     /* (non-Javadoc)
@@ -103,7 +120,7 @@ public class SpymemcachedQueryResultCache extends AbstractQueryResultsCache
     public void evict(Query query)
     {
         String baseKey = QueryUtils.getKeyForQueryResultsCache(query, null);
-        client.delete(keyPrefix + baseKey);
+        client.delete(getKey(baseKey));
         // TODO Delete all entries for this query (with any possible set of params) i.e key starting baseKey
     }
 
@@ -113,7 +130,7 @@ public class SpymemcachedQueryResultCache extends AbstractQueryResultsCache
     public void evict(Query query, Map params)
     {
         String key = QueryUtils.getKeyForQueryResultsCache(query, params);
-        client.delete(keyPrefix + key);
+        client.delete(getKey(key));
     }
 
     /* (non-Javadoc)
@@ -121,7 +138,7 @@ public class SpymemcachedQueryResultCache extends AbstractQueryResultsCache
      */
     public void evictAll()
     {
-        client.flush();
+        generations.increment(keyPrefix + "generation");
     }
 
     /* (non-Javadoc)
@@ -129,7 +146,7 @@ public class SpymemcachedQueryResultCache extends AbstractQueryResultsCache
      */
     public List<Object> get(String queryKey)
     {
-        return (List<Object>)client.get(keyPrefix + queryKey);
+        return (List<Object>)serializer.deserialize((byte[]) client.get(getKey(queryKey)));
     }
 
     /* (non-Javadoc)
@@ -142,8 +159,35 @@ public class SpymemcachedQueryResultCache extends AbstractQueryResultsCache
             return null;
         }
 
-        client.set(keyPrefix + queryKey, expirySeconds, results);
+        client.set(getKey(queryKey), expirySeconds, serializer.serialize(results));
 
         return results;
     }
-}
\ No newline at end of file
+
+    /**
+     * Accessor for the memcached key for a query key, in the current generation of the cache.
+     * @param queryKey The query key
+     * @return The memcached key
+     */
+    private String getKey(String queryKey)
+    {
+        return keyPrefix + queryKey + ":" + generations.get(keyPrefix + "generation");
+    }
+
+    /**
+     * Method to increment (or read, with delta 0) the generation counter in memcached.
+     * @param key Key of the counter
+     * @param delta Amount to increment by
+     * @param initialValue Value when the counter doesn't exist
+     * @return Value of the counter
+     */
+    private long incrementCounter(String key, long delta, long initialValue)
+    {
+        long value = client.incr(key, delta, initialValue);
+        if (value < 0)
+        {
+            throw new NucleusException("Failed to update generation " + key + " in spymemcached");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,210 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.datanucleus.Configuration;
+import org.datanucleus.exceptions.NucleusUserException;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Bound on the number of asynchronous (fire-and-forget) writes to a cache that are in flight, i.e sent but not yet acknowledged.
+ * When the window is full the "overflowPolicy" decides what happens to a further write :-
+ * <ul>
+ * <li>block (default) : wait for a write to complete</li>
+ * <li>drop : don't write the object</li>
+ * <li>evict : don't write the object, but remove any (older) version of it from the cache, so it isn't read stale</li>
+ * </ul>
+ * Counts of dropped writes and failed writes are maintained.
+ * The properties are read with a prefix specific to the cache, e.g "datanucleus.cache.level2.memcached." for
+ * "asyncWrites", "maxInFlightWrites" (default 1000) and "overflowPolicy".
+ */
+public class AsyncWriteWindow
+{
+    public static final String ASYNC_WRITES = "asyncWrites";
+    public static final String MAX_IN_FLIGHT_WRITES = "maxInFlightWrites";
+    public static final String OVERFLOW_POLICY = "overflowPolicy";
+
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+
+    /** What to do with a write when the window is full. */
+    public enum OverflowPolicy
+    {
+        BLOCK,
+        DROP,
+        EVICT
+    }
+
+    private final int maxInFlight;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final Semaphore permits;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Method to create the async write window for a cache, if async writes are enabled in the configuration.
+     * @param conf The configuration
+     * @param propertyPrefix Prefix for the properties of the cache (e.g "datanucleus.cache.level2.memcached.")
+     * @return The window, or null if async writes are not enabled
+     * @throws NucleusUserException if the overflow policy is not supported
+     */
+    public static AsyncWriteWindow create(Configuration conf, String propertyPrefix)
+    {
+        if (!conf.getBooleanProperty(propertyPrefix + ASYNC_WRITES))
+        {
+            return null;
+        }
+
+        int maxInFlight = conf.getIntProperty(propertyPrefix + MAX_IN_FLIGHT_WRITES);
+        String policyName = conf.getStringProperty(propertyPrefix + OVERFLOW_POLICY);
+        OverflowPolicy policy = OverflowPolicy.BLOCK;
+        if (policyName != null)
+        {
+            try
+            {
+                policy = OverflowPolicy.valueOf(policyName.toUpperCase());
+            }
+            catch (IllegalArgumentException iae)
+            {
+                throw new NucleusUserException("Async write overflow policy \"" + policyName + "\" is not supported. Use block, drop or evict");
+            }
+        }
+        return new AsyncWriteWindow(maxInFlight > 0 ? maxInFlight : DEFAULT_MAX_IN_FLIGHT, policy);
+    }
+
+    /**
+     * Constructor.
+     * @param maxInFlight Max number of writes in flight
+     * @param overflowPolicy What to do with a write when the window is full
+     */
+    public AsyncWriteWindow(int maxInFlight, OverflowPolicy overflowPolicy)
+    {
+        this.maxInFlight = maxInFlight;
+        this.overflowPolicy = overflowPolicy;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Accessor for the max number of writes in flight.
+     * @return Max number of writes in flight
+     */
+    public int getMaxInFlight()
+    {
+        return maxInFlight;
+    }
+
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return overflowPolicy;
+    }
+
+    /**
+     * Method to take a place in the window for a write. When this returns false the write must not be made
+     * (and with overflow policy EVICT the caller should remove the object from the cache instead).
+     * When it returns true the caller must call completed() once the write completes.
+     * @return Whether the write can be made
+     */
+    public boolean acquire()
+    {
+        if (permits.tryAcquire())
+        {
+            return true;
+        }
+
+        if (overflowPolicy == OverflowPolicy.BLOCK)
+        {
+            try
+            {
+                permits.acquire();
+                return true;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * Method to call when a write (made after acquire returned true) completes.
+     * @param success Whether the write succeeded
+     * @param key Key of the object written (for logging)
+     */
+    public void completed(boolean success, Object key)
+    {
+        permits.release();
+        if (!success)
+        {
+            failed.increment();
+            if (NucleusLogger.CACHE.isDebugEnabled())
+            {
+                NucleusLogger.CACHE.debug("Asynchronous write of " + key + " to the cache failed");
+            }
+        }
+    }
+
+    /**
+     * Method to wait for the writes in flight to complete, for use when closing the cache.
+     * @param timeoutMillis Max time to wait (ms)
+     */
+    public void awaitCompletion(long timeoutMillis)
+    {
+        try
+        {
+            if (permits.tryAcquire(maxInFlight, timeoutMillis, TimeUnit.MILLISECONDS))
+            {
+                permits.release(maxInFlight);
+            }
+            else
+            {
+                NucleusLogger.CACHE.warn("Timed out waiting for " + (maxInFlight - permits.availablePermits()) + " asynchronous writes to the cache");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accessor for the number of writes not made because the window was full.
+     * @return Number of dropped writes
+     */
+    public long getDroppedCount()
+    {
+        return dropped.sum();
+    }
+
+    /**
+     * Accessor for the number of writes that failed.
+     * @return Number of failed writes
+     */
+    public long getFailedCount()
+    {
+        return failed.sum();
+    }
+}
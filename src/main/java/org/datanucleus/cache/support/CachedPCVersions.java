@@ -0,0 +1,45 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+/**
+ * Comparison of the versions of cached objects, for caches that only replace a cached object with a newer version.
+ */
+public class CachedPCVersions
+{
+    private CachedPCVersions()
+    {
+    }
+
+    /**
+     * Method to return whether the version of an object is older than the cached version.
+     * Versions are compared when both are Comparable and of the same type, otherwise the object is not considered older.
+     * @param version Version of the object to put
+     * @param cachedVersion Version of the cached object
+     * @return Whether it is older
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public static boolean isOlder(Object version, Object cachedVersion)
+    {
+        if (version == null || cachedVersion == null || version.getClass() != cachedVersion.getClass() || !(version instanceof Comparable))
+        {
+            return false;
+        }
+        return ((Comparable)version).compareTo(cachedVersion) < 0;
+    }
+}
@@ -0,0 +1,178 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Index of the keys in a cache by the class of the cached object, so that evicting a class only touches the keys of that
+ * class rather than iterating through the whole cache. The cache adds keys on put and removes them on evict (and expiry,
+ * where the cache provides notification of it). A key of an object no longer in the cache is harmless, since evicting it is a no-op,
+ * but where the cache doesn't notify expiry the index has to be pruned (see prune) so that such keys don't accumulate.
+ */
+public class ClassKeyIndex
+{
+    /** Keys of the cached objects, keyed by the class name. The sets are only modified when computing the entry for their class. */
+    private final Map<String, Set<Object>> keysByClass = new ConcurrentHashMap<>();
+
+    /** Number of keys in the index. */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Method to add a key for an object of the specified class.
+     * @param className Class of the object
+     * @param key The key
+     */
+    public void add(String className, Object key)
+    {
+        keysByClass.compute(className, (name, keys) ->
+        {
+            Set<Object> classKeys = (keys != null) ? keys : new HashSet<>();
+            if (classKeys.add(key))
+            {
+                size.incrementAndGet();
+            }
+            return classKeys;
+        });
+    }
+
+    /**
+     * Method to remove a key for an object of the specified class.
+     * @param className Class of the object
+     * @param key The key
+     */
+    public void remove(String className, Object key)
+    {
+        keysByClass.computeIfPresent(className, (name, keys) ->
+        {
+            if (keys.remove(key))
+            {
+                size.decrementAndGet();
+            }
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * Method to remove the keys of objects that are no longer in the cache (e.g expired or evicted by the cache itself).
+     * The test (which may be a remote call) is made outside of any update of the index, on a copy of the keys of each class.
+     * A key found to be dead is tested again after its removal, and put back if its object was cached in the meantime
+     * (since a put adds to the cache before adding to the index, this can't lose the key of a cached object).
+     * @param cached Test of whether the object with a key is still in the cache
+     * @return Number of keys removed
+     */
+    public int prune(Predicate<Object> cached)
+    {
+        int removed = 0;
+        for (Map.Entry<String, Set<Object>> entry : keysByClass.entrySet())
+        {
+            Set<Object> deadKeys = new HashSet<>();
+            for (Object key : snapshot(entry.getKey()))
+            {
+                if (!cached.test(key))
+                {
+                    deadKeys.add(key);
+                }
+            }
+            if (deadKeys.isEmpty())
+            {
+                continue;
+            }
+
+            String className = entry.getKey();
+            AtomicInteger classRemoved = new AtomicInteger();
+            keysByClass.computeIfPresent(className, (name, keys) ->
+            {
+                int before = keys.size();
+                keys.removeAll(deadKeys);
+                classRemoved.set(before - keys.size());
+                return keys.isEmpty() ? null : keys;
+            });
+            size.addAndGet(-classRemoved.get());
+            removed += classRemoved.get();
+
+            for (Object key : deadKeys)
+            {
+                if (cached.test(key))
+                {
+                    add(className, key);
+                    removed--;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Accessor for a copy of the keys of the specified class.
+     * @param className The class
+     * @return The keys (empty if none)
+     */
+    private Set<Object> snapshot(String className)
+    {
+        Set<Object> copy = new HashSet<>();
+        keysByClass.computeIfPresent(className, (name, keys) ->
+        {
+            copy.addAll(keys);
+            return keys;
+        });
+        return copy;
+    }
+
+    /**
+     * Accessor for the number of keys in the index.
+     * @return The number of keys
+     */
+    public int size()
+    {
+        return size.get();
+    }
+
+    /**
+     * Method to remove the keys of the specified class from the index, returning them (for eviction from the cache).
+     * @param className The class
+     * @return The keys of the class (empty if none)
+     */
+    public Set<Object> removeClass(String className)
+    {
+        Set<Object> keys = keysByClass.remove(className);
+        if (keys == null)
+        {
+            return Collections.emptySet();
+        }
+        size.addAndGet(-keys.size());
+        return keys;
+    }
+
+    /**
+     * Method to clear the index, when the cache is cleared.
+     */
+    public void clear()
+    {
+        for (String className : keysByClass.keySet())
+        {
+            removeClass(className);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+import org.datanucleus.Configuration;
+import org.datanucleus.exceptions.NucleusUserException;
+
+/**
+ * Tuning of the client of a memcached cache, independent of the client library used.
+ * The properties are read with a prefix specific to the cache, e.g "datanucleus.cache.level2.memcached." :-
+ * <ul>
+ * <li>binaryProtocol : whether to use the binary protocol rather than the text protocol</li>
+ * <li>consistentHashing : whether to distribute keys across the servers with Ketama consistent hashing, so that adding or
+ * losing a server only remaps the keys of that server (rather than nearly all keys)</li>
+ * <li>connectionPoolSize : number of connections to each server (where supported by the client)</li>
+ * <li>opTimeoutMillis : timeout of an operation (ms)</li>
+ * <li>failureMode : what happens to operations for a server that is down; redistribute (to the other servers), retry (once
+ * reconnected) or cancel</li>
+ * </ul>
+ * Any property not specified uses the default of the client library.
+ */
+public class MemcachedClientSettings
+{
+    public static final String BINARY_PROTOCOL = "binaryProtocol";
+    public static final String CONSISTENT_HASHING = "consistentHashing";
+    public static final String CONNECTION_POOL_SIZE = "connectionPoolSize";
+    public static final String OP_TIMEOUT_MILLIS = "opTimeoutMillis";
+    public static final String FAILURE_MODE = "failureMode";
+
+    /** What happens to operations for a server that is down. */
+    public enum FailureMode
+    {
+        REDISTRIBUTE,
+        RETRY,
+        CANCEL
+    }
+
+    private final boolean binaryProtocol;
+
+    private final boolean consistentHashing;
+
+    private final int connectionPoolSize;
+
+    private final long opTimeoutMillis;
+
+    private final FailureMode failureMode;
+
+    /**
+     * Method to read the client settings of a cache from the configuration.
+     * @param conf The configuration
+     * @param propertyPrefix Prefix for the properties of the cache (e.g "datanucleus.cache.level2.memcached.")
+     * @return The settings
+     * @throws NucleusUserException if the failure mode is not supported
+     */
+    public static MemcachedClientSettings create(Configuration conf, String propertyPrefix)
+    {
+        String modeName = conf.getStringProperty(propertyPrefix + FAILURE_MODE);
+        FailureMode mode = null;
+        if (modeName != null)
+        {
+            try
+            {
+                mode = FailureMode.valueOf(modeName.toUpperCase());
+            }
+            catch (IllegalArgumentException iae)
+            {
+                throw new NucleusUserException("Memcached failure mode \"" + modeName + "\" is not supported. Use redistribute, retry or cancel");
+            }
+        }
+        return new MemcachedClientSettings(conf.getBooleanProperty(propertyPrefix + BINARY_PROTOCOL), conf.getBooleanProperty(propertyPrefix + CONSISTENT_HASHING),
+            conf.getIntProperty(propertyPrefix + CONNECTION_POOL_SIZE), conf.getIntProperty(propertyPrefix + OP_TIMEOUT_MILLIS), mode);
+    }
+
+    /**
+     * Constructor.
+     * @param binaryProtocol Whether to use the binary protocol
+     * @param consistentHashing Whether to use Ketama consistent hashing
+     * @param connectionPoolSize Connections per server (0 for the client default)
+     * @param opTimeoutMillis Operation timeout (0 for the client default)
+     * @param failureMode Failure mode (null for the client default)
+     */
+    public MemcachedClientSettings(boolean binaryProtocol, boolean consistentHashing, int connectionPoolSize, long opTimeoutMillis, FailureMode failureMode)
+    {
+        this.binaryProtocol = binaryProtocol;
+        this.consistentHashing = consistentHashing;
+        this.connectionPoolSize = connectionPoolSize;
+        this.opTimeoutMillis = opTimeoutMillis;
+        this.failureMode = failureMode;
+    }
+
+    public boolean isBinaryProtocol()
+    {
+        return binaryProtocol;
+    }
+
+    public boolean isConsistentHashing()
+    {
+        return consistentHashing;
+    }
+
+    /**
+     * Accessor for the number of connections to each server.
+     * @return The pool size, or 0 when not specified
+     */
+    public int getConnectionPoolSize()
+    {
+        return connectionPoolSize;
+    }
+
+    /**
+     * Accessor for the operation timeout.
+     * @return The timeout (ms), or 0 when not specified
+     */
+    public long getOpTimeoutMillis()
+    {
+        return opTimeoutMillis;
+    }
+
+    /**
+     * Accessor for the failure mode.
+     * @return The failure mode, or null when not specified
+     */
+    public FailureMode getFailureMode()
+    {
+        return failureMode;
+    }
+}
@@ -0,0 +1,312 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.datanucleus.Configuration;
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Protection against cache stampedes, where many threads miss on the same (hot) object at the same time and all load it from
+ * the datastore. On a miss, the first thread takes a "lease" on the id and goes on to load the object (the Level2 cache has no
+ * loader, so the load is done by the caller, followed by a put). Other threads missing on the same id wait (up to "singleFlightWaitMillis")
+ * for that put, and get the value put, or null (so they load it themselves) if it doesn't arrive in time.
+ * <p>
+ * Leases are held locally per id. A cache can also provide a distributed lease, so only one process loads the object; when another
+ * process holds it this process polls the cache for the value until the wait time is up.
+ * </p>
+ * <p>
+ * DataNucleus often doesn't put after a miss (the object doesn't exist, wasn't loaded in full, or is only put when its transaction
+ * commits), and the cache isn't told when the load completes. So a lease is also released when its loader thread next uses the
+ * cache (by which time its fetch has completed, or failed), and waiting threads then load the object themselves. Otherwise a lease
+ * expires after the wait time (default 50ms), so a loader that never puts doesn't block later loads for long.
+ * </p>
+ */
+public class SingleFlight
+{
+    public static final String PROPERTY_CACHE_L2_SINGLE_FLIGHT = "datanucleus.cache.level2.singleFlight";
+    public static final String PROPERTY_CACHE_L2_SINGLE_FLIGHT_WAIT_MILLIS = "datanucleus.cache.level2.singleFlightWaitMillis";
+
+    private static final long DEFAULT_WAIT_MILLIS = 50;
+
+    private static final long POLL_INTERVAL_MILLIS = 10;
+
+    /** Number of misses between removals of expired leases (of loaders that never put). */
+    private static final int PURGE_INTERVAL = 1024;
+
+    /**
+     * Lease on loading an object, shared between processes.
+     */
+    public interface DistributedLease
+    {
+        /**
+         * Method to try to acquire the lease for the specified id.
+         * @param oid The id
+         * @param leaseMillis Time after which the lease expires (ms)
+         * @return Whether acquired
+         */
+        boolean acquire(Object oid, long leaseMillis);
+
+        /**
+         * Method to release the lease for the specified id.
+         * @param oid The id
+         */
+        void release(Object oid);
+    }
+
+    /** Lease held by a local loader. */
+    private static class Lease
+    {
+        final Object oid;
+        final CountDownLatch loaded = new CountDownLatch(1);
+        final long expiry;
+        volatile CachedPC value;
+        /** Whether the distributed lease was acquired for this lease. */
+        volatile boolean distributed;
+        final AtomicBoolean distributedReleased = new AtomicBoolean();
+
+        Lease(Object oid, long expiry)
+        {
+            this.oid = oid;
+            this.expiry = expiry;
+        }
+    }
+
+    private final long waitMillis;
+
+    private final DistributedLease distributedLease;
+
+    /** Local leases, keyed by the id being loaded. */
+    private final Map<Object, Lease> leases = new ConcurrentHashMap<>();
+
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    /** Lease held by the current thread, released when the thread next uses the cache. */
+    private final ThreadLocal<Lease> heldLease = new ThreadLocal<>();
+
+    /**
+     * Method to create the single-flight facility for a cache, if enabled in the configuration.
+     * @param conf The configuration
+     * @param distributedLease Distributed lease provided by the cache (optional)
+     * @return The single-flight facility, or null if not enabled
+     */
+    public static SingleFlight create(Configuration conf, DistributedLease distributedLease)
+    {
+        if (!conf.getBooleanProperty(PROPERTY_CACHE_L2_SINGLE_FLIGHT))
+        {
+            return null;
+        }
+
+        long waitMillis = conf.getIntProperty(PROPERTY_CACHE_L2_SINGLE_FLIGHT_WAIT_MILLIS);
+        return new SingleFlight(waitMillis > 0 ? waitMillis : DEFAULT_WAIT_MILLIS, distributedLease);
+    }
+
+    /**
+     * Constructor.
+     * @param waitMillis Max time to wait for another loader (ms), and expiry time of leases
+     * @param distributedLease Distributed lease (optional)
+     */
+    public SingleFlight(long waitMillis, DistributedLease distributedLease)
+    {
+        this.waitMillis = waitMillis;
+        this.distributedLease = distributedLease;
+    }
+
+    /**
+     * Method to call after a miss on the specified id. Returns null when this thread should load the object (and put it),
+     * otherwise the object put by the loader.
+     * @param oid The id
+     * @param reader Reader of the id from the cache, used when waiting for another process
+     * @return The object put by another loader, or null
+     */
+    public CachedPC afterMiss(Object oid, Function<Object, CachedPC> reader)
+    {
+        releaseHeldLease(null);
+
+        long now = System.currentTimeMillis();
+        if (missCount.incrementAndGet() % PURGE_INTERVAL == 0)
+        {
+            leases.values().removeIf(l -> l.expiry < now);
+        }
+
+        Lease lease = new Lease(oid, now + waitMillis);
+        while (true)
+        {
+            Lease existing = leases.putIfAbsent(oid, lease);
+            if (existing == null)
+            {
+                break;
+            }
+            if (existing.expiry > System.currentTimeMillis())
+            {
+                return awaitLoad(existing);
+            }
+            if (leases.replace(oid, existing, lease))
+            {
+                break;
+            }
+        }
+
+        // This thread is the local loader
+        heldLease.set(lease);
+        if (distributedLease == null)
+        {
+            return null;
+        }
+        try
+        {
+            if (distributedLease.acquire(oid, waitMillis))
+            {
+                lease.distributed = true;
+                if (leases.get(oid) != lease)
+                {
+                    // Released (by a put or evict) while acquiring
+                    releaseDistributedLease(oid, lease);
+                }
+                return null;
+            }
+
+            // Another process is loading it, so wait for its put
+            long deadline = lease.expiry;
+            while (System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+                CachedPC pc = reader.apply(oid);
+                if (pc != null)
+                {
+                    loaded(oid, pc);
+                    return pc;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (RuntimeException e)
+        {
+            NucleusLogger.CACHE.debug("Exception using distributed lease for " + oid + " so loading it : " + e.getMessage());
+        }
+        return null;
+    }
+
+    private CachedPC awaitLoad(Lease lease)
+    {
+        try
+        {
+            long remaining = lease.expiry - System.currentTimeMillis();
+            if (remaining > 0 && lease.loaded.await(remaining, TimeUnit.MILLISECONDS))
+            {
+                return lease.value;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Method to call when an object is put in the cache, passing it to any threads waiting for it.
+     * @param oid The id
+     * @param pc The object
+     */
+    public void loaded(Object oid, CachedPC pc)
+    {
+        releaseHeldLease(oid);
+
+        Lease lease = leases.remove(oid);
+        if (lease != null)
+        {
+            lease.value = pc;
+            lease.loaded.countDown();
+            releaseDistributedLease(oid, lease);
+        }
+    }
+
+    /**
+     * Method to call when an object is evicted from the cache, so that waiting threads load it themselves.
+     * @param oid The id
+     */
+    public void cancel(Object oid)
+    {
+        releaseHeldLease(oid);
+
+        Lease lease = leases.remove(oid);
+        if (lease != null)
+        {
+            lease.loaded.countDown();
+            releaseDistributedLease(oid, lease);
+        }
+    }
+
+    /**
+     * Method to call when all objects are evicted from the cache.
+     */
+    public void cancelAll()
+    {
+        for (Object oid : leases.keySet())
+        {
+            cancel(oid);
+        }
+    }
+
+    /**
+     * Method to release any lease held by the current thread, since its load has completed (or failed) when it next uses the cache.
+     * Threads waiting for it then load the object themselves.
+     * @param oid Id being put or evicted by the caller, whose lease is left to the caller (or null)
+     */
+    private void releaseHeldLease(Object oid)
+    {
+        Lease lease = heldLease.get();
+        if (lease != null)
+        {
+            heldLease.remove();
+            if (!lease.oid.equals(oid) && leases.remove(lease.oid, lease))
+            {
+                lease.loaded.countDown();
+                releaseDistributedLease(lease.oid, lease);
+            }
+        }
+    }
+
+    private void releaseDistributedLease(Object oid, Lease lease)
+    {
+        if (lease.distributed && lease.distributedReleased.compareAndSet(false, true))
+        {
+            try
+            {
+                distributedLease.release(oid);
+            }
+            catch (RuntimeException e)
+            {
+                // Will expire anyway
+                NucleusLogger.CACHE.debug("Exception releasing distributed lease for " + oid + " : " + e.getMessage());
+            }
+        }
+    }
+}
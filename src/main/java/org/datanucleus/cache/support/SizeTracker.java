@@ -0,0 +1,189 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import org.datanucleus.Configuration;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Approximate size of a Level2 cache, used to enforce "maxSize" on puts without querying the size of the cache each time
+ * (an aggregate over per-class caches, or a cluster-wide request, for some caches).
+ * The cache updates the count as it puts (new objects) and evicts objects, and the count is reconciled with the actual size of
+ * the cache every "sizeReconcileMillis" (default 1000), correcting for expiry and puts by other processes.
+ * The reconciliation is done on a background thread (shared by all trackers), so a put only reads the count.
+ */
+public class SizeTracker
+{
+    public static final String PROPERTY_CACHE_L2_SIZE_RECONCILE_MILLIS = "datanucleus.cache.level2.sizeReconcileMillis";
+
+    private static final long DEFAULT_RECONCILE_MILLIS = 1000;
+
+    private final int maxSize;
+
+    /** Supplier of the actual size of the cache. */
+    private final IntSupplier cacheSize;
+
+    private final LongAdder size = new LongAdder();
+
+    /** Whether a reconciliation has been requested and not yet started. */
+    private final AtomicBoolean reconcileRequested = new AtomicBoolean();
+
+    /** The periodic reconciliation. */
+    private final ScheduledFuture<?> reconcileTask;
+
+    /**
+     * Holder of the scheduler used for reconciliations, created when first needed.
+     */
+    private static class Scheduler
+    {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread thread = new Thread(r, "DataNucleus-L2-SizeTracker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Method to create a size tracker for a cache, if the cache has a maximum size.
+     * @param conf The configuration
+     * @param maxSize Maximum size of the cache (negative if unlimited)
+     * @param cacheSize Supplier of the actual size of the cache
+     * @return The size tracker, or null if the cache has no maximum size
+     */
+    public static SizeTracker create(Configuration conf, int maxSize, IntSupplier cacheSize)
+    {
+        if (maxSize < 0)
+        {
+            return null;
+        }
+
+        long reconcileMillis = conf.getIntProperty(PROPERTY_CACHE_L2_SIZE_RECONCILE_MILLIS);
+        return new SizeTracker(maxSize, reconcileMillis > 0 ? reconcileMillis : DEFAULT_RECONCILE_MILLIS, cacheSize);
+    }
+
+    /**
+     * Constructor, starting the periodic reconciliation (after the first interval, so the cache can finish initialising).
+     * @param maxSize Maximum size of the cache
+     * @param reconcileMillis Interval between reconciliations with the actual size (ms)
+     * @param cacheSize Supplier of the actual size of the cache
+     */
+    public SizeTracker(int maxSize, long reconcileMillis, IntSupplier cacheSize)
+    {
+        this.maxSize = maxSize;
+        this.cacheSize = cacheSize;
+        reconcileTask = Scheduler.INSTANCE.scheduleWithFixedDelay(this::reconcile, reconcileMillis, reconcileMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Accessor for whether the cache has reached its maximum size, so no more objects should be put.
+     * @return Whether the cache is full
+     */
+    public boolean isFull()
+    {
+        return size.sum() >= maxSize;
+    }
+
+    /**
+     * Accessor for the (approximate) size of the cache.
+     * @return The size
+     */
+    public long getSize()
+    {
+        return size.sum();
+    }
+
+    /**
+     * Method to call when an object has been added to the cache.
+     */
+    public void added()
+    {
+        size.increment();
+    }
+
+    /**
+     * Method to call when objects have been added to the cache.
+     * @param count Number of objects added
+     */
+    public void added(int count)
+    {
+        size.add(count);
+    }
+
+    /**
+     * Method to call when an object has been removed from the cache.
+     */
+    public void removed()
+    {
+        size.decrement();
+    }
+
+    /**
+     * Method to call when the cache has been cleared.
+     */
+    public void cleared()
+    {
+        size.reset();
+    }
+
+    /**
+     * Method to call when an unknown number of objects have been removed from the cache, so the count is reconciled now (in the background).
+     */
+    public void invalidate()
+    {
+        if (reconcileRequested.compareAndSet(false, true) && !reconcileTask.isCancelled())
+        {
+            Scheduler.INSTANCE.execute(this::reconcile);
+        }
+    }
+
+    /**
+     * Method to stop the reconciliation, when the cache is closed.
+     */
+    public void close()
+    {
+        reconcileTask.cancel(false);
+    }
+
+    private void reconcile()
+    {
+        reconcileRequested.set(false);
+        if (reconcileTask.isCancelled())
+        {
+            return;
+        }
+        try
+        {
+            int actual = cacheSize.getAsInt();
+            size.reset();
+            size.add(actual);
+        }
+        catch (RuntimeException e)
+        {
+            NucleusLogger.CACHE.debug("Exception retrieving size of the cache so using the approximate size : " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+import java.util.concurrent.ExecutionException;
+
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.serializer.CacheSerializer;
+import org.datanucleus.exceptions.NucleusException;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Writer of objects to a store supporting compare-and-set (memcached) that never replaces a cached object with an older version of it.
+ * Uses add when the object isn't cached, otherwise cas against the cached version, retrying when another put gets there first.
+ * When the retries are exhausted the object is removed from the store, so the next read goes to the datastore rather than seeing
+ * an older version.
+ */
+public class VersionedWriter
+{
+    /** Number of attempts at a put that loses a race with another put, before evicting the object instead. */
+    private static final int MAX_CAS_ATTEMPTS = 3;
+
+    /**
+     * Value read from the store, with its CAS id.
+     */
+    public static class CasValue
+    {
+        final byte[] value;
+        final long cas;
+
+        public CasValue(byte[] value, long cas)
+        {
+            this.value = value;
+            this.cas = cas;
+        }
+    }
+
+    /**
+     * Operations of the store client.
+     */
+    public interface CasClient
+    {
+        /**
+         * Method to read a value with its CAS id.
+         * @param key The key
+         * @return The value, or null if not cached
+         * @throws Exception if the read fails
+         */
+        CasValue gets(String key) throws Exception;
+
+        /**
+         * Method to add a value, when no value is cached for the key.
+         * @param key The key
+         * @param bytes The value
+         * @return Whether it was added
+         * @throws Exception if the write fails
+         */
+        boolean add(String key, byte[] bytes) throws Exception;
+
+        /**
+         * Method to replace a value, if its CAS id is unchanged.
+         * @param key The key
+         * @param bytes The value
+         * @param cas The CAS id of the value read
+         * @return Whether it was replaced
+         * @throws Exception if the write fails
+         */
+        boolean cas(String key, byte[] bytes, long cas) throws Exception;
+
+        /**
+         * Method to remove a value.
+         * @param key The key
+         * @throws Exception if the removal fails
+         */
+        void delete(String key) throws Exception;
+    }
+
+    private final CasClient client;
+
+    private final CacheSerializer serializer;
+
+    /** Name of the store, for messages. */
+    private final String storeName;
+
+    /**
+     * Constructor.
+     * @param client The store client
+     * @param serializer Serializer of the cached objects
+     * @param storeName Name of the store (for messages)
+     */
+    public VersionedWriter(CasClient client, CacheSerializer serializer, String storeName)
+    {
+        this.client = client;
+        this.serializer = serializer;
+        this.storeName = storeName;
+    }
+
+    /**
+     * Method to write an object to the store unless a newer version of it is cached.
+     * @param key The key
+     * @param pc The object
+     * @param bytes The serialized object
+     * @throws NucleusException if the store fails
+     */
+    public void write(String key, CachedPC pc, byte[] bytes)
+    {
+        try
+        {
+            for (int i = 0; i < MAX_CAS_ATTEMPTS; i++)
+            {
+                CasValue cached = client.gets(key);
+                if (cached == null || cached.value == null)
+                {
+                    if (client.add(key, bytes))
+                    {
+                        return;
+                    }
+                    continue;
+                }
+
+                CachedPC cachedPC = (CachedPC) serializer.deserialize(cached.value);
+                if (cachedPC != null && CachedPCVersions.isOlder(pc.getVersion(), cachedPC.getVersion()))
+                {
+                    // Newer version already cached
+                    return;
+                }
+                if (client.cas(key, bytes, cached.cas))
+                {
+                    return;
+                }
+            }
+
+            NucleusLogger.CACHE.debug("Versioned put of " + key + " to " + storeName + " lost " + MAX_CAS_ATTEMPTS + " races, so evicting it");
+            client.delete(key);
+        }
+        catch (NucleusException e)
+        {
+            throw e;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new NucleusException("Interrupted in persistence to " + storeName, e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new NucleusException("Exception thrown in persistence to " + storeName, e.getCause());
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException("Exception thrown in persistence to " + storeName, e);
+        }
+    }
+}
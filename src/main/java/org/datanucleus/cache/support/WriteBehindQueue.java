@@ -0,0 +1,297 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.datanucleus.Configuration;
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Write-behind stage for puts to a remote Level2 cache, so that the caller (typically committing a transaction) doesn't wait
+ * for the network write. Puts are added to a bounded queue, coalescing repeated puts of the same id, and a background worker
+ * writes them to the cache in batches. When the queue is full the caller has to write the put itself; any queued or in-flight
+ * put of the same id is first cancelled (or waited for), so that an older put can't be written after the caller's.
+ * <p>
+ * Evictions are applied by the cache synchronously, and have to first cancel any queued puts of the same ids (see the cancel methods).
+ * These also wait for any batch being written that contains one of the ids, so that a put cannot be written after the eviction.
+ * </p>
+ */
+public class WriteBehindQueue
+{
+    public static final String PROPERTY_CACHE_L2_WRITE_BEHIND = "datanucleus.cache.level2.writeBehind";
+    public static final String PROPERTY_CACHE_L2_WRITE_BEHIND_QUEUE_SIZE = "datanucleus.cache.level2.writeBehindQueueSize";
+    public static final String PROPERTY_CACHE_L2_WRITE_BEHIND_BATCH_SIZE = "datanucleus.cache.level2.writeBehindBatchSize";
+
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Writer of a batch of puts to the cache.
+     */
+    public interface Writer
+    {
+        void write(Map<Object, CachedPC> objs);
+    }
+
+    private final Writer writer;
+
+    private final int queueSize;
+
+    private final int batchSize;
+
+    /** Queued puts, in order of the first put of each id. Guarded by "this". */
+    private final Map<Object, CachedPC> pending = new LinkedHashMap<>();
+
+    /** Batch being written. Guarded by "this". */
+    private Map<Object, CachedPC> inFlight = Collections.emptyMap();
+
+    private boolean closed = false;
+
+    private final Thread worker;
+
+    /**
+     * Method to create the write-behind queue for a cache, if enabled in the configuration.
+     * @param conf The configuration
+     * @param cacheName Name of the cache
+     * @param writer Writer of a batch of puts to the cache
+     * @return The queue, or null if write-behind isn't enabled
+     */
+    public static WriteBehindQueue create(Configuration conf, String cacheName, Writer writer)
+    {
+        if (!conf.getBooleanProperty(PROPERTY_CACHE_L2_WRITE_BEHIND))
+        {
+            return null;
+        }
+
+        int queueSize = conf.getIntProperty(PROPERTY_CACHE_L2_WRITE_BEHIND_QUEUE_SIZE);
+        int batchSize = conf.getIntProperty(PROPERTY_CACHE_L2_WRITE_BEHIND_BATCH_SIZE);
+        return new WriteBehindQueue(cacheName, writer, queueSize > 0 ? queueSize : DEFAULT_QUEUE_SIZE, batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor, starting the background worker.
+     * @param cacheName Name of the cache
+     * @param writer Writer of a batch of puts to the cache
+     * @param queueSize Max number of queued puts
+     * @param batchSize Max number of puts written in one batch
+     */
+    public WriteBehindQueue(String cacheName, Writer writer, int queueSize, int batchSize)
+    {
+        this.writer = writer;
+        this.queueSize = queueSize;
+        this.batchSize = batchSize;
+
+        worker = new Thread(this::run, "DataNucleus-L2-WriteBehind-" + cacheName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Method to queue a put, replacing any queued put for the same id.
+     * @param oid The id
+     * @param pc The object to put
+     * @return Whether queued; false if the queue is full (or closed), so the caller has to write it
+     */
+    public synchronized boolean offer(Object oid, CachedPC pc)
+    {
+        if (closed || (pending.size() >= queueSize && !pending.containsKey(oid)))
+        {
+            // Make sure no older put of this id is written after the caller's write
+            pending.remove(oid);
+            while (inFlight.containsKey(oid))
+            {
+                if (!waitForBatch())
+                {
+                    break;
+                }
+            }
+            return false;
+        }
+
+        boolean wasEmpty = pending.isEmpty();
+        pending.put(oid, pc);
+        if (wasEmpty)
+        {
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Accessor for a queued put (or one in the batch being written), so that a get can see it before it is written.
+     * @param oid The id
+     * @return The queued object, or null if none
+     */
+    public synchronized CachedPC getPending(Object oid)
+    {
+        CachedPC pc = pending.get(oid);
+        return (pc != null) ? pc : inFlight.get(oid);
+    }
+
+    /**
+     * Method to cancel any queued put of the specified id, waiting for any batch containing it to be written.
+     * @param oid The id
+     */
+    public void cancel(Object oid)
+    {
+        cancelAll(Collections.singleton(oid));
+    }
+
+    /**
+     * Method to cancel any queued puts of the specified ids, waiting for any batch containing them to be written.
+     * @param oids The ids
+     */
+    public synchronized void cancelAll(Collection oids)
+    {
+        for (Object oid : oids)
+        {
+            pending.remove(oid);
+        }
+        while (!Collections.disjoint(inFlight.keySet(), oids))
+        {
+            if (!waitForBatch())
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Method to cancel any queued puts of ids matching the filter, waiting for any batch containing them to be written.
+     * @param filter Filter for the ids
+     */
+    public synchronized void cancelIf(Predicate<Object> filter)
+    {
+        pending.keySet().removeIf(filter);
+        while (inFlight.keySet().stream().anyMatch(filter))
+        {
+            if (!waitForBatch())
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Method to cancel all queued puts, waiting for any batch being written.
+     */
+    public synchronized void cancelAll()
+    {
+        pending.clear();
+        while (!inFlight.isEmpty())
+        {
+            if (!waitForBatch())
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Method to close the queue, waiting for the queued puts to be written.
+     */
+    public void close()
+    {
+        synchronized (this)
+        {
+            closed = true;
+            notifyAll();
+        }
+        try
+        {
+            worker.join(CLOSE_TIMEOUT_MILLIS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean waitForBatch()
+    {
+        try
+        {
+            wait();
+            return true;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void run()
+    {
+        while (true)
+        {
+            Map<Object, CachedPC> batch;
+            synchronized (this)
+            {
+                while (pending.isEmpty() && !closed)
+                {
+                    if (!waitForBatch())
+                    {
+                        return;
+                    }
+                }
+                if (pending.isEmpty())
+                {
+                    // Closed and all written
+                    return;
+                }
+
+                batch = new LinkedHashMap<>();
+                Iterator<Map.Entry<Object, CachedPC>> iter = pending.entrySet().iterator();
+                while (iter.hasNext() && batch.size() < batchSize)
+                {
+                    Map.Entry<Object, CachedPC> entry = iter.next();
+                    batch.put(entry.getKey(), entry.getValue());
+                    iter.remove();
+                }
+                inFlight = batch;
+            }
+
+            try
+            {
+                writer.write(batch);
+            }
+            catch (RuntimeException e)
+            {
+                NucleusLogger.CACHE.warn("Failed to write " + batch.size() + " queued objects to the Level2 cache : " + e.getMessage());
+            }
+            finally
+            {
+                synchronized (this)
+                {
+                    inFlight = Collections.emptyMap();
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
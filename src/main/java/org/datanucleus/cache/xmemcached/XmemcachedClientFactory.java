@@ -0,0 +1,74 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.xmemcached;
+
+import java.io.IOException;
+
+import net.rubyeye.xmemcached.MemcachedClient;
+import net.rubyeye.xmemcached.MemcachedClientBuilder;
+import net.rubyeye.xmemcached.XMemcachedClientBuilder;
+import net.rubyeye.xmemcached.command.BinaryCommandFactory;
+import net.rubyeye.xmemcached.impl.KetamaMemcachedSessionLocator;
+import net.rubyeye.xmemcached.utils.AddrUtil;
+
+import org.datanucleus.cache.support.MemcachedClientSettings;
+
+/**
+ * Factory for xmemcached clients, applying the client settings of a cache.
+ * Xmemcached has no retry failure mode as such; with "retry" or "cancel" it runs in its failure mode, where operations for a
+ * server that is down fail (rather than being redistributed) until it reconnects.
+ */
+class XmemcachedClientFactory
+{
+    private XmemcachedClientFactory()
+    {
+    }
+
+    /**
+     * Method to create a client for the specified servers.
+     * @param servers The servers ("host:port host:port ...")
+     * @param settings The client settings
+     * @return The client
+     * @throws IOException if the client couldn't be created
+     */
+    static MemcachedClient createClient(String servers, MemcachedClientSettings settings) throws IOException
+    {
+        MemcachedClientBuilder builder = new XMemcachedClientBuilder(AddrUtil.getAddresses(servers));
+        if (settings.isBinaryProtocol())
+        {
+            builder.setCommandFactory(new BinaryCommandFactory());
+        }
+        if (settings.isConsistentHashing())
+        {
+            builder.setSessionLocator(new KetamaMemcachedSessionLocator());
+        }
+        if (settings.getConnectionPoolSize() > 0)
+        {
+            builder.setConnectionPoolSize(settings.getConnectionPoolSize());
+        }
+        if (settings.getOpTimeoutMillis() > 0)
+        {
+            builder.setOpTimeout(settings.getOpTimeoutMillis());
+        }
+        if (settings.getFailureMode() != null)
+        {
+            builder.setFailureMode(settings.getFailureMode() != MemcachedClientSettings.FailureMode.REDISTRIBUTE);
+        }
+        return builder.build();
+    }
+}
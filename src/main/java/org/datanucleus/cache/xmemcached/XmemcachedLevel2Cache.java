@@ -19,24 +19,45 @@ package org.datanucleus.cache.xmemcached;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import net.rubyeye.xmemcached.GetsResponse;
 import net.rubyeye.xmemcached.MemcachedClient;
-import net.rubyeye.xmemcached.MemcachedClientBuilder;
-import net.rubyeye.xmemcached.XMemcachedClientBuilder;
-import net.rubyeye.xmemcached.utils.AddrUtil;
 
 import org.datanucleus.NucleusContext;
 import org.datanucleus.Configuration;
 import org.datanucleus.cache.AbstractLevel2Cache;
 import org.datanucleus.cache.CachedPC;
+import org.datanucleus.cache.key.CacheKeyEncoder;
+import org.datanucleus.cache.key.ClassKeys;
+import org.datanucleus.cache.key.KeyGenerations;
+import org.datanucleus.cache.serializer.CacheSerializer;
+import org.datanucleus.cache.serializer.CacheSerializerFactory;
+import org.datanucleus.cache.support.AsyncWriteWindow;
+import org.datanucleus.cache.support.MemcachedClientSettings;
+import org.datanucleus.cache.support.VersionedWriter;
+import org.datanucleus.cache.support.WriteBehindQueue;
 import org.datanucleus.exceptions.NucleusException;
-import org.datanucleus.identity.IdentityUtils;
-import org.datanucleus.identity.SingleFieldId;
 import org.datanucleus.util.NucleusLogger;
 
 /**
  * Plugin using Xmemcached implementation of "memcached" as a Level2 cache.
+ * getAll retrieves the objects with a single (multi-key) get per memcached server.
+ * Puts wait for memcached to acknowledge the set, unless "memcached.asyncWrites" is enabled, in which case they are handed to a
+ * pool of writer threads (xmemcached gives no notification of the completion of a noreply set) and don't wait, with the number in
+ * progress bounded (see AsyncWriteWindow).
+ * When "memcached.versionedPuts" is enabled puts use gets/cas (or add when not yet cached), and never replace a cached object
+ * with an older version of it.
+ * When "writeBehind" is enabled puts are queued and written in batches by a background thread (see WriteBehindQueue).
+ * Keys include the generations of the cache and of the class of the object (see KeyGenerations), so evictAll (for the cache or
+ * for a class) increments a generation rather than flushing the whole of memcached.
  */
 public class XmemcachedLevel2Cache extends AbstractLevel2Cache
 {
@@ -44,10 +65,49 @@ public class XmemcachedLevel2Cache extends AbstractLevel2Cache
 
     public static final String PROPERTY_CACHE_L2_MEMCACHED_SERVERS = "datanucleus.cache.level2.memcached.servers";
 
+    /** Prefix of the memcached client and async write properties (see MemcachedClientSettings and AsyncWriteWindow). */
+    public static final String PROPERTY_CACHE_L2_MEMCACHED_PREFIX = "datanucleus.cache.level2.memcached.";
+
+    public static final String PROPERTY_CACHE_L2_MEMCACHED_VERSIONED_PUTS = "datanucleus.cache.level2.memcached.versionedPuts";
+
+    /** Time for which the generations of the key namespaces are used before being read from memcached again (ms). */
+    public static final String PROPERTY_CACHE_L2_MEMCACHED_GENERATION_REFRESH_MILLIS = "datanucleus.cache.level2.memcached.generationRefreshMillis";
+
+    /** Default time for which generations of key namespaces are used before being read again (ms). */
+    public static final long DEFAULT_GENERATION_REFRESH_MILLIS = 1000;
+
+    /** Maximum length of the generations added to a key (":" and "." followed by two longs). */
+    public static final int GENERATION_SUFFIX_LENGTH = 40;
+
+    /** Default number of threads writing async puts, when the connection pool size isn't set. */
+    private static final int DEFAULT_ASYNC_WRITERS = 2;
+
     private MemcachedClient client;
 
+    private CacheSerializer serializer;
+
+    private CacheKeyEncoder keyEncoder;
+
     private int expireSeconds = 0;
 
+    /** Queue of puts to write in the background, when using write-behind. */
+    private WriteBehindQueue writeBehind;
+
+    /** Writer of puts using gets/cas to never replace a newer version, when using versioned puts. */
+    private VersionedWriter versionedWriter;
+
+    /** Bound on the async writes in progress, when using async writes. */
+    private AsyncWriteWindow asyncWrites;
+
+    /** Threads making the async writes, when using async writes. */
+    private ThreadPoolExecutor asyncWriter;
+
+    /** Generations of the cache and class namespaces, included in the keys. */
+    private KeyGenerations generations;
+
+    /** Key of the generation counter for the whole cache. */
+    private String cacheGenerationKey;
+
     public XmemcachedLevel2Cache(NucleusContext nucleusCtx)
     {
         super(nucleusCtx);
@@ -55,10 +115,10 @@ public class XmemcachedLevel2Cache extends AbstractLevel2Cache
         Configuration conf = nucleusCtx.getConfiguration();
 
         String servers = conf.getStringProperty(PROPERTY_CACHE_L2_MEMCACHED_SERVERS);
-        MemcachedClientBuilder builder = new XMemcachedClientBuilder(AddrUtil.getAddresses(servers));
+        MemcachedClientSettings settings = MemcachedClientSettings.create(conf, PROPERTY_CACHE_L2_MEMCACHED_PREFIX);
         try
         {
-            client = builder.build();
+            client = XmemcachedClientFactory.createClient(servers, settings);
         }
         catch (IOException e)
         {
@@ -67,19 +127,93 @@ public class XmemcachedLevel2Cache extends AbstractLevel2Cache
         }
 
         expireSeconds = (int)expiryMillis/1000;
+
+        serializer = CacheSerializerFactory.getLevel2Serializer(nucleusCtx);
+        keyEncoder = new CacheKeyEncoder(cacheName, CacheKeyEncoder.DEFAULT_MAX_KEY_LENGTH - GENERATION_SUFFIX_LENGTH);
+
+        long refreshMillis = conf.getIntProperty(PROPERTY_CACHE_L2_MEMCACHED_GENERATION_REFRESH_MILLIS);
+        generations = new KeyGenerations(this::incrementCounter, refreshMillis > 0 ? refreshMillis : DEFAULT_GENERATION_REFRESH_MILLIS);
+        cacheGenerationKey = ClassKeys.getGenerationKey(keyEncoder, "");
+
+        writeBehind = WriteBehindQueue.create(conf, cacheName, this::writeAll);
+        asyncWrites = AsyncWriteWindow.create(conf, PROPERTY_CACHE_L2_MEMCACHED_PREFIX);
+        if (asyncWrites != null)
+        {
+            // Writes are only queued once they have a place in the window, so the queue never overflows
+            int writers = settings.getConnectionPoolSize() > 0 ? settings.getConnectionPoolSize() : DEFAULT_ASYNC_WRITERS;
+            asyncWriter = new ThreadPoolExecutor(writers, writers, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(asyncWrites.getMaxInFlight()), r ->
+            {
+                Thread thread = new Thread(r, "DataNucleus-Xmemcached-AsyncWrites-" + cacheName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (conf.getBooleanProperty(PROPERTY_CACHE_L2_MEMCACHED_VERSIONED_PUTS))
+        {
+            versionedWriter = new VersionedWriter(new VersionedWriter.CasClient()
+            {
+                public VersionedWriter.CasValue gets(String key) throws Exception
+                {
+                    GetsResponse<byte[]> cached = client.gets(key);
+                    return (cached != null) ? new VersionedWriter.CasValue(cached.getValue(), cached.getCas()) : null;
+                }
+
+                public boolean add(String key, byte[] bytes) throws Exception
+                {
+                    return client.add(key, expireSeconds, bytes);
+                }
+
+                public boolean cas(String key, byte[] bytes, long cas) throws Exception
+                {
+                    return client.cas(key, expireSeconds, bytes, cas);
+                }
+
+                public void delete(String key) throws Exception
+                {
+                    client.delete(key);
+                }
+            }, serializer, "xmemcached");
+        }
+    }
+
+    /**
+     * Accessor for the number of async writes not made because too many were in progress.
+     * @return Number of dropped writes
+     */
+    public long getDroppedWriteCount()
+    {
+        return asyncWrites != null ? asyncWrites.getDroppedCount() : 0;
+    }
+
+    /**
+     * Accessor for the number of async writes that failed.
+     * @return Number of failed writes
+     */
+    public long getFailedWriteCount()
+    {
+        return asyncWrites != null ? asyncWrites.getFailedCount() : 0;
     }
 
     public void close()
     {
+        if (writeBehind != null)
+        {
+            writeBehind.close();
+        }
+        if (asyncWrites != null)
+        {
+            asyncWrites.awaitCompletion(client.getOpTimeout());
+            asyncWriter.shutdown();
+        }
         if (clearAtClose)
         {
             try
             {
-                client.flushAll();
+                generations.increment(cacheGenerationKey);
             }
             catch (Exception e)
             {
-                NucleusLogger.CACHE.error("Exception caught flushing cache", e);
+                NucleusLogger.CACHE.error("Exception caught clearing cache", e);
             }
         }
         try
@@ -99,6 +233,10 @@ public class XmemcachedLevel2Cache extends AbstractLevel2Cache
 
     public void evict(Object oid)
     {
+        if (writeBehind != null)
+        {
+            writeBehind.cancel(oid);
+        }
         try
         {
             client.delete(getCacheKeyForId(oid));
@@ -111,14 +249,11 @@ public class XmemcachedLevel2Cache extends AbstractLevel2Cache
 
     public void evictAll()
     {
-        try
+        if (writeBehind != null)
         {
-            client.flushAll();
-        }
-        catch (Exception e)
-        {
-            throw new NucleusException("Exception evict entries from xmemcached", e);
+            writeBehind.cancelAll();
         }
+        generations.increment(cacheGenerationKey);
     }
 
     public void evictAll(Object[] oids)
@@ -148,16 +283,41 @@ public class XmemcachedLevel2Cache extends AbstractLevel2Cache
         }
     }
 
-    public void evictAll(Class arg0, boolean arg1)
+    public void evictAll(Class pcClass, boolean subclasses)
     {
-        // Not supported. Do nothing
+        if (!nucleusCtx.getApiAdapter().isPersistable(pcClass))
+        {
+            return;
+        }
+
+        Set<String> discriminators = ClassKeys.getDiscriminators(nucleusCtx, pcClass, subclasses);
+
+        if (writeBehind != null)
+        {
+            writeBehind.cancelIf(oid -> discriminators.contains(keyEncoder.getDiscriminator(oid)));
+        }
+        for (String discriminator : discriminators)
+        {
+            generations.increment(ClassKeys.getGenerationKey(keyEncoder, discriminator));
+        }
     }
 
+
     public CachedPC get(Object oid)
     {
+        if (writeBehind != null)
+        {
+            CachedPC pc = writeBehind.getPending(oid);
+            if (pc != null)
+            {
+                return pc;
+            }
+        }
+
         try
         {
-            return (CachedPC) client.get(getCacheKeyForId(oid));
+            byte[] bytes = client.get(getCacheKeyForId(oid));
+            return (CachedPC) serializer.deserialize(bytes);
         }
         catch (Exception e)
         {
@@ -165,33 +325,209 @@ public class XmemcachedLevel2Cache extends AbstractLevel2Cache
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.AbstractLevel2Cache#getAll(java.util.Collection)
+     */
+    @Override
+    public Map<Object, CachedPC> getAll(Collection oids)
+    {
+        if (oids == null)
+        {
+            return null;
+        }
+
+        Map<Object, CachedPC> objs = new HashMap<>();
+        Map<String, Object> idByKey = new HashMap<>();
+        for (Object oid : oids)
+        {
+            CachedPC pc = (writeBehind != null) ? writeBehind.getPending(oid) : null;
+            if (pc != null)
+            {
+                objs.put(oid, pc);
+            }
+            else
+            {
+                idByKey.put(getCacheKeyForId(oid), oid);
+            }
+        }
+        if (idByKey.isEmpty())
+        {
+            return objs;
+        }
+
+        try
+        {
+            Map<String, byte[]> values = client.get(idByKey.keySet());
+            if (values != null)
+            {
+                for (Map.Entry<String, byte[]> entry : values.entrySet())
+                {
+                    Object oid = idByKey.get(entry.getKey());
+                    if (oid != null && entry.getValue() != null)
+                    {
+                        objs.put(oid, (CachedPC) serializer.deserialize(entry.getValue()));
+                    }
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException("Exception thrown in retrieval from xmemcached", e);
+        }
+        return objs;
+    }
+
     public CachedPC put(Object oid, CachedPC pc)
     {
         if (oid == null || pc == null)
         {
             return null;
         }
+        if (writeBehind != null && writeBehind.offer(oid, pc))
+        {
+            return pc;
+        }
 
+        write(getCacheKeyForId(oid), pc);
+        return pc;
+    }
+
+    /* (non-Javadoc)
+     * @see org.datanucleus.cache.AbstractLevel2Cache#putAll(java.util.Map)
+     */
+    @Override
+    public void putAll(Map<Object, CachedPC> objs)
+    {
+        if (objs == null || objs.isEmpty())
+        {
+            return;
+        }
+
+        Map<Object, CachedPC> unqueued = new HashMap<>();
+        for (Map.Entry<Object, CachedPC> entry : objs.entrySet())
+        {
+            if (entry.getKey() != null && entry.getValue() != null && (writeBehind == null || !writeBehind.offer(entry.getKey(), entry.getValue())))
+            {
+                unqueued.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!unqueued.isEmpty())
+        {
+            writeAll(unqueued);
+        }
+    }
+
+    /**
+     * Method to write a batch of queued puts into the cache.
+     * @param objs Map of cacheable objects keyed by their oids
+     */
+    private void writeAll(Map<Object, CachedPC> objs)
+    {
+        for (Map.Entry<Object, CachedPC> entry : objs.entrySet())
+        {
+            write(getCacheKeyForId(entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * Method to write an object to memcached, waiting for the reply unless using async writes.
+     * @param key The key
+     * @param pc The object
+     */
+    private void write(String key, CachedPC pc)
+    {
+        byte[] bytes = serializer.serialize(pc);
+        if (versionedWriter != null)
+        {
+            versionedWriter.write(key, pc, bytes);
+            return;
+        }
+        if (asyncWrites != null)
+        {
+            writeAsync(key, bytes);
+            return;
+        }
         try
         {
-            client.set(getCacheKeyForId(oid), expireSeconds, pc);
+            client.set(key, expireSeconds, bytes);
         }
         catch (Exception e)
         {
             throw new NucleusException("Exception thrown in persistence to xmemcached", e);
         }
+    }
 
-        return pc;
+    /**
+     * Method to write a value to memcached on a writer thread, within the bounds of the async write window.
+     * @param key The key
+     * @param bytes The value
+     */
+    private void writeAsync(String key, byte[] bytes)
+    {
+        if (!asyncWrites.acquire())
+        {
+            if (asyncWrites.getOverflowPolicy() == AsyncWriteWindow.OverflowPolicy.EVICT)
+            {
+                try
+                {
+                    client.deleteWithNoReply(key);
+                }
+                catch (Exception e)
+                {
+                    NucleusLogger.CACHE.debug("Exception evicting " + key + " from xmemcached after dropping its write : " + e.getMessage());
+                }
+            }
+            return;
+        }
+
+        try
+        {
+            asyncWriter.execute(() ->
+            {
+                boolean success = false;
+                try
+                {
+                    success = client.set(key, expireSeconds, bytes);
+                }
+                catch (Exception e)
+                {
+                    NucleusLogger.CACHE.debug("Exception in asynchronous write of " + key + " to xmemcached : " + e.getMessage());
+                }
+                finally
+                {
+                    asyncWrites.completed(success, key);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Cache closed
+            asyncWrites.completed(false, key);
+        }
     }
 
     protected String getCacheKeyForId(Object id)
     {
-        // Because single-field id doesn't include target class name in toString()
-        if (IdentityUtils.isSingleFieldIdentity(id))
+        String classGeneration = ClassKeys.getGenerationKey(keyEncoder, keyEncoder.getDiscriminator(id));
+        return keyEncoder.getStringKey(id) + ":" + generations.get(cacheGenerationKey) + "." + generations.get(classGeneration);
+    }
+
+    /**
+     * Method to increment (or read, with delta 0) a generation counter in memcached.
+     * @param key Key of the counter
+     * @param delta Amount to increment by
+     * @param initialValue Value when the counter doesn't exist
+     * @return Value of the counter
+     */
+    private long incrementCounter(String key, long delta, long initialValue)
+    {
+        try
+        {
+            return client.incr(key, delta, initialValue);
+        }
+        catch (Exception e)
         {
-            String targetClassName = ((SingleFieldId)id).getTargetClassName();
-            return cacheName + targetClassName + ":" + id.toString().hashCode();
+            throw new NucleusException("Exception thrown updating generation in xmemcached", e);
         }
-        return cacheName + id.toString().hashCode();
     }
 }
\ No newline at end of file
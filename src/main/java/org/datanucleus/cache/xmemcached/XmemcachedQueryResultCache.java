@@ -22,12 +22,13 @@ import java.util.List;
 import java.util.Map;
 
 import net.rubyeye.xmemcached.MemcachedClient;
-import net.rubyeye.xmemcached.MemcachedClientBuilder;
-import net.rubyeye.xmemcached.XMemcachedClientBuilder;
-import net.rubyeye.xmemcached.utils.AddrUtil;
 
 import org.datanucleus.NucleusContext;
 import org.datanucleus.Configuration;
+import org.datanucleus.cache.key.KeyGenerations;
+import org.datanucleus.cache.serializer.CacheSerializer;
+import org.datanucleus.cache.serializer.CacheSerializerFactory;
+import org.datanucleus.cache.support.MemcachedClientSettings;
 import org.datanucleus.exceptions.NucleusException;
 import org.datanucleus.store.query.Query;
 import org.datanucleus.store.query.QueryUtils;
@@ -36,6 +37,8 @@ import org.datanucleus.util.NucleusLogger;
 
 /**
  * Plugin using xmemcached implementation of "memcached" as a query results cache.
+ * Keys include the generation of the cache (see KeyGenerations), so evictAll increments the generation rather than flushing
+ * the whole of memcached. The candidate class of a query isn't part of its key, so evicting a class evicts all queries.
  */
 public class XmemcachedQueryResultCache extends AbstractQueryResultsCache
 {
@@ -44,13 +47,21 @@ public class XmemcachedQueryResultCache extends AbstractQueryResultsCache
     public static final String PROPERTY_CACHE_QUERYRESULTS_MEMCACHED_SERVERS = "datanucleus.cache.queryResults.memcached.servers";
     public static final String PROPERTY_CACHE_QUERYRESULTS_MEMCACHED_KEYPREFIX = "datanucleus.cache.queryResults.memcached.keyprefix";
 
+    /** Prefix of the memcached client properties (see MemcachedClientSettings). */
+    public static final String PROPERTY_CACHE_QUERYRESULTS_MEMCACHED_PREFIX = "datanucleus.cache.queryResults.memcached.";
+
     private MemcachedClient client;
 
+    private CacheSerializer serializer;
+
     /** Prefix (for uniqueness) to ensure sharing with other xmemcached objects. */
     private String keyPrefix = "datanucleus-query:";
 
     private int expirySeconds = 0;
 
+    /** Generation of the cache, included in the keys. */
+    private KeyGenerations generations;
+
     public XmemcachedQueryResultCache(NucleusContext nucleusCtx)
     {
         super(nucleusCtx);
@@ -64,12 +75,15 @@ public class XmemcachedQueryResultCache extends AbstractQueryResultsCache
         }
 
         expirySeconds = (int)expiryMillis/1000;
+        long refreshMillis = conf.getIntProperty(XmemcachedLevel2Cache.PROPERTY_CACHE_L2_MEMCACHED_GENERATION_REFRESH_MILLIS);
+        generations = new KeyGenerations(this::incrementCounter, refreshMillis > 0 ? refreshMillis : XmemcachedLevel2Cache.DEFAULT_GENERATION_REFRESH_MILLIS);
+
+        serializer = CacheSerializerFactory.getSerializer(nucleusCtx, conf.getStringProperty(CacheSerializerFactory.PROPERTY_CACHE_QUERYRESULTS_SERIALIZER));
 
         String servers = conf.getStringProperty(PROPERTY_CACHE_QUERYRESULTS_MEMCACHED_SERVERS);
         try
         {
-            MemcachedClientBuilder builder = new XMemcachedClientBuilder(AddrUtil.getAddresses(servers));
-            client = builder.build();
+            client = XmemcachedClientFactory.createClient(servers, MemcachedClientSettings.create(conf, PROPERTY_CACHE_QUERYRESULTS_MEMCACHED_PREFIX));
         }
         catch (IOException e)
         {
@@ -85,7 +99,6 @@ public class XmemcachedQueryResultCache extends AbstractQueryResultsCache
     {
         try
         {
-            client.flushAll();
             client.shutdown();
         }
         catch (Exception e)
@@ -107,7 +120,8 @@ public class XmemcachedQueryResultCache extends AbstractQueryResultsCache
      */
     public void evict(Class candidate)
     {
-        // TODO Auto-generated method stub
+        // Keys don't include the candidate class, so evict all
+        evictAll();
     }
 
     /* (non-Javadoc)
@@ -117,7 +131,7 @@ public class XmemcachedQueryResultCache extends AbstractQueryResultsCache
     {
         try
         {
-            client.delete(keyPrefix + QueryUtils.getKeyForQueryResultsCache(query, null));
+            client.delete(getKey(QueryUtils.getKeyForQueryResultsCache(query, null)));
         }
         catch (Exception e)
         {
@@ -133,7 +147,7 @@ public class XmemcachedQueryResultCache extends AbstractQueryResultsCache
     {
         try
         {
-            client.delete(keyPrefix + QueryUtils.getKeyForQueryResultsCache(query, params));
+            client.delete(getKey(QueryUtils.getKeyForQueryResultsCache(query, params)));
         }
         catch (Exception e)
         {
@@ -146,14 +160,7 @@ public class XmemcachedQueryResultCache extends AbstractQueryResultsCache
      */
     public void evictAll()
     {
-        try
-        {
-            client.flushAll();
-        }
-        catch (Exception e)
-        {
-            throw new NucleusException("Exception evicting entries from xmemcached", e);
-        }
+        generations.increment(keyPrefix + "generation");
     }
 
     /* (non-Javadoc)
@@ -163,7 +170,8 @@ public class XmemcachedQueryResultCache extends AbstractQueryResultsCache
     {
         try
         {
-            return (List<Object>)client.get(keyPrefix + queryKey);
+            byte[] bytes = client.get(getKey(queryKey));
+            return (List<Object>)serializer.deserialize(bytes);
         }
         catch (Exception e)
         {
@@ -183,7 +191,7 @@ public class XmemcachedQueryResultCache extends AbstractQueryResultsCache
 
         try
         {
-            client.set(keyPrefix + queryKey, expirySeconds, results);
+            client.set(getKey(queryKey), expirySeconds, serializer.serialize(results));
         }
         catch (Exception e)
         {
@@ -192,4 +200,33 @@ public class XmemcachedQueryResultCache extends AbstractQueryResultsCache
 
         return results;
     }
-}
\ No newline at end of file
+
+    /**
+     * Accessor for the memcached key for a query key, in the current generation of the cache.
+     * @param queryKey The query key
+     * @return The memcached key
+     */
+    private String getKey(String queryKey)
+    {
+        return keyPrefix + queryKey + ":" + generations.get(keyPrefix + "generation");
+    }
+
+    /**
+     * Method to increment (or read, with delta 0) the generation counter in memcached.
+     * @param key Key of the counter
+     * @param delta Amount to increment by
+     * @param initialValue Value when the counter doesn't exist
+     * @return Value of the counter
+     */
+    private long incrementCounter(String key, long delta, long initialValue)
+    {
+        try
+        {
+            return client.incr(key, delta, initialValue);
+        }
+        catch (Exception e)
+        {
+            throw new NucleusException("Exception thrown updating generation in xmemcached", e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.key;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.datanucleus.identity.ByteId;
+import org.datanucleus.identity.CharId;
+import org.datanucleus.identity.DatastoreIdImpl;
+import org.datanucleus.identity.DatastoreIdImplKodo;
+import org.datanucleus.identity.DatastoreIdImplXcalia;
+import org.datanucleus.identity.DatastoreUniqueLongId;
+import org.datanucleus.identity.IntId;
+import org.datanucleus.identity.LongId;
+import org.datanucleus.identity.ObjectId;
+import org.datanucleus.identity.ShortId;
+import org.datanucleus.identity.StringId;
+import org.junit.Test;
+
+/**
+ * Tests of CacheKeyEncoder for each type of identity.
+ */
+public class CacheKeyEncoderTest
+{
+    private static final String TARGET = Person.class.getName();
+
+    private final CacheKeyEncoder encoder = new CacheKeyEncoder("dn", CacheKeyEncoder.DEFAULT_MAX_KEY_LENGTH);
+
+    /** Target class of the identities. */
+    static class Person
+    {
+    }
+
+    /** Application identity class. */
+    public static class PersonKey implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        final String first;
+        final String last;
+
+        public PersonKey(String first, String last)
+        {
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        public String toString()
+        {
+            return first + " " + last;
+        }
+    }
+
+    /**
+     * Identities of each type, all with different values (a class has a single identity type, so identities of different
+     * types with the same value would never be in the same cache).
+     */
+    private static List<Object> allIds()
+    {
+        return Arrays.asList(
+            new LongId(Person.class, 1L),
+            new IntId(Person.class, 2),
+            new StringId(Person.class, "3"),
+            new ShortId(Person.class, (short)4),
+            new ByteId(Person.class, (byte)5),
+            new CharId(Person.class, '6'),
+            new ObjectId(Person.class, new PersonKey("John", "Smith")),
+            new DatastoreIdImpl(TARGET, 8L),
+            new DatastoreIdImplKodo(TARGET, 9L),
+            new DatastoreIdImplXcalia(TARGET, 10L),
+            new DatastoreUniqueLongId(1L),
+            new PersonKey("John", "Smith"));
+    }
+
+    @Test
+    public void testDiscriminator()
+    {
+        assertEquals(TARGET, encoder.getDiscriminator(new LongId(Person.class, 1L)));
+        assertEquals(TARGET, encoder.getDiscriminator(new ObjectId(Person.class, new PersonKey("John", "Smith"))));
+        assertEquals(TARGET, encoder.getDiscriminator(new DatastoreIdImpl(TARGET, 1L)));
+        assertEquals(TARGET, encoder.getDiscriminator(new DatastoreIdImplKodo(TARGET, 1L)));
+        assertEquals(TARGET, encoder.getDiscriminator(new DatastoreIdImplXcalia(TARGET, 1L)));
+        assertEquals(DatastoreUniqueLongId.class.getName(), encoder.getDiscriminator(new DatastoreUniqueLongId(1L)));
+        assertEquals(PersonKey.class.getName(), encoder.getDiscriminator(new PersonKey("John", "Smith")));
+    }
+
+    @Test
+    public void testLongKey()
+    {
+        byte[] prefix = ("dn:" + TARGET + ":").getBytes(StandardCharsets.UTF_8);
+        byte[] key = encoder.getKey(new LongId(Person.class, 258L));
+        assertEquals(prefix.length + 9, key.length);
+        assertArrayEquals(prefix, Arrays.copyOf(key, prefix.length));
+        assertEquals('L', key[prefix.length]);
+        assertEquals(1, key[key.length - 2]);
+        assertEquals(2, key[key.length - 1]);
+
+        assertEquals("dn:" + TARGET + ":L258", encoder.getStringKey(new LongId(Person.class, 258L)));
+        assertEquals("dn:" + TARGET + ":L258", encoder.getStringKey(new DatastoreIdImpl(TARGET, 258L)));
+    }
+
+    @Test
+    public void testUniqueLongKey()
+    {
+        DatastoreUniqueLongId id = new DatastoreUniqueLongId(42L);
+        assertEquals("dn:" + DatastoreUniqueLongId.class.getName() + ":L42", encoder.getStringKey(id));
+        assertArrayEquals(encoder.getKey(new DatastoreUniqueLongId(42L)), encoder.getKey(id));
+    }
+
+    @Test
+    public void testIntAndStringKeys()
+    {
+        assertEquals("dn:" + TARGET + ":I7", encoder.getStringKey(new IntId(Person.class, 7)));
+        assertEquals("dn:" + TARGET + ":Sabc", encoder.getStringKey(new StringId(Person.class, "abc")));
+        assertEquals("dn:" + TARGET + ":Sabc", encoder.getStringKey(new DatastoreIdImpl(TARGET, "abc")));
+    }
+
+    @Test
+    public void testKeysAreDistinct()
+    {
+        List<Object> ids = allIds();
+        Set<String> stringKeys = new HashSet<>();
+        Set<String> binaryKeys = new HashSet<>();
+        for (Object id : ids)
+        {
+            stringKeys.add(encoder.getStringKey(id));
+            binaryKeys.add(new String(encoder.getKey(id), StandardCharsets.ISO_8859_1));
+        }
+        assertEquals(ids.size(), stringKeys.size());
+        assertEquals(ids.size(), binaryKeys.size());
+    }
+
+    @Test
+    public void testKeysAreStable()
+    {
+        List<Object> first = allIds();
+        List<Object> second = allIds();
+        for (int i = 0; i < first.size(); i++)
+        {
+            assertEquals(encoder.getStringKey(first.get(i)), encoder.getStringKey(second.get(i)));
+            assertArrayEquals(encoder.getKey(first.get(i)), encoder.getKey(second.get(i)));
+        }
+    }
+
+    @Test
+    public void testStringKeysAreMemcachedSafe()
+    {
+        for (Object id : allIds())
+        {
+            assertSafe(encoder.getStringKey(id));
+        }
+        assertSafe(encoder.getStringKey(new StringId(Person.class, "with space\tandé")));
+    }
+
+    @Test
+    public void testLongKeysAreHashed()
+    {
+        char[] chars = new char[400];
+        Arrays.fill(chars, 'x');
+        String longValue = new String(chars);
+
+        String stringKey = encoder.getStringKey(new StringId(Person.class, longValue));
+        assertTrue(stringKey.length() <= CacheKeyEncoder.DEFAULT_MAX_KEY_LENGTH);
+        assertTrue(stringKey.startsWith("dn:" + TARGET + ":H"));
+        assertSafe(stringKey);
+
+        byte[] key = encoder.getKey(new StringId(Person.class, longValue));
+        assertTrue(key.length <= CacheKeyEncoder.DEFAULT_MAX_KEY_LENGTH);
+        assertEquals('H', key[("dn:" + TARGET + ":").length()]);
+
+        String otherKey = encoder.getStringKey(new StringId(Person.class, longValue + "y"));
+        assertTrue(!stringKey.equals(otherKey));
+    }
+
+    @Test
+    public void testHashTagPrefix()
+    {
+        CacheKeyEncoder tagged = new CacheKeyEncoder("dn", CacheKeyEncoder.DEFAULT_MAX_KEY_LENGTH, true);
+        assertEquals("{dn:" + TARGET + "}:L1", tagged.getStringKey(new LongId(Person.class, 1L)));
+        assertArrayEquals(("{dn:" + TARGET + "}:").getBytes(StandardCharsets.UTF_8), tagged.getKeyPrefix(TARGET));
+    }
+
+    private static void assertSafe(String key)
+    {
+        for (int i = 0; i < key.length(); i++)
+        {
+            char c = key.charAt(i);
+            assertTrue("Unsafe character in key " + key, c > ' ' && c <= '~');
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.key;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests of KeyGenerations, with the counters held in a map standing in for the store.
+ */
+public class KeyGenerationsTest
+{
+    /** Counters in the "store". */
+    private final Map<String, Long> counters = new ConcurrentHashMap<>();
+
+    /** Number of calls to the store. */
+    private final AtomicInteger storeCalls = new AtomicInteger();
+
+    private long increment(String key, long delta, long initialValue)
+    {
+        storeCalls.incrementAndGet();
+        return counters.compute(key, (k, value) -> (value == null) ? initialValue : value + delta);
+    }
+
+    @Test
+    public void testGenerationCreatedWithCurrentTime()
+    {
+        long start = System.currentTimeMillis();
+        KeyGenerations generations = new KeyGenerations(this::increment, 60000);
+        long generation = generations.get("gen");
+        assertTrue(generation >= start && generation <= System.currentTimeMillis());
+        assertEquals(Long.valueOf(generation), counters.get("gen"));
+    }
+
+    @Test
+    public void testGenerationHeldLocally()
+    {
+        KeyGenerations generations = new KeyGenerations(this::increment, 60000);
+        long generation = generations.get("gen");
+        assertEquals(generation, generations.get("gen"));
+        assertEquals(generation, generations.get("gen"));
+        assertEquals(1, storeCalls.get());
+
+        generations.get("other");
+        assertEquals(2, storeCalls.get());
+    }
+
+    @Test
+    public void testIncrement()
+    {
+        KeyGenerations generations = new KeyGenerations(this::increment, 60000);
+        long generation = generations.get("gen");
+        long otherGeneration = generations.get("other");
+
+        generations.increment("gen");
+        assertEquals(generation + 1, generations.get("gen"));
+        assertEquals(otherGeneration, generations.get("other"));
+        assertEquals(Long.valueOf(generation + 1), counters.get("gen"));
+    }
+
+    @Test
+    public void testIncrementByOtherProcessSeenAfterRefresh() throws InterruptedException
+    {
+        KeyGenerations generations = new KeyGenerations(this::increment, 50);
+        KeyGenerations otherProcess = new KeyGenerations(this::increment, 50);
+        long generation = generations.get("gen");
+
+        otherProcess.increment("gen");
+        assertEquals(generation, generations.get("gen"));
+
+        Thread.sleep(100);
+        assertEquals(generation + 1, generations.get("gen"));
+    }
+
+    @Test
+    public void testNeverGoesBack()
+    {
+        // Store whose reads can return a value older than an increment just made (e.g. a read that raced with it)
+        long[] staleValue = new long[1];
+        KeyGenerations generations = new KeyGenerations((key, delta, initialValue) ->
+        {
+            long value = increment(key, delta, initialValue);
+            return (delta == 0 && staleValue[0] != 0) ? staleValue[0] : value;
+        }, 0);
+
+        long generation = generations.get("gen");
+        staleValue[0] = generation;
+        generations.increment("gen");
+
+        assertEquals(generation + 1, generations.get("gen"));
+    }
+}
@@ -0,0 +1,161 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.redis;
+
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+import org.datanucleus.cache.CachedPC;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+
+/**
+ * Tests of RedisClientTracking against a Redis (6+) server, by default on localhost:6379 (system properties "redis.host" and
+ * "redis.port"). Skipped when no such server is available.
+ */
+public class RedisClientTrackingTest
+{
+    private static final String PREFIX = "dn-tracking-test:";
+
+    private static final long CHECK_MILLIS = 200;
+
+    private static final long WAIT_MILLIS = 5000;
+
+    private JedisPool pool;
+
+    private RedisClientTracking tracking;
+
+    @Before
+    public void setUp()
+    {
+        pool = new JedisPool(System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379));
+        try (Jedis jedis = pool.getResource())
+        {
+            String info = jedis.info("server");
+            int start = info.indexOf("redis_version:") + "redis_version:".length();
+            int major = Integer.parseInt(info.substring(start, info.indexOf('.', start)));
+            Assume.assumeTrue("Client tracking needs Redis 6+", major >= 6);
+        }
+        catch (RuntimeException e)
+        {
+            pool.close();
+            pool = null;
+            Assume.assumeNoException("No Redis server available", e);
+        }
+
+        tracking = new RedisClientTracking(pool, PREFIX, 100, CHECK_MILLIS, "test");
+        waitFor("tracking to be established", tracking::isTracking);
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (tracking != null)
+        {
+            tracking.close();
+        }
+        if (pool != null)
+        {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testInvalidationFromRedis()
+    {
+        byte[] key = key("1");
+        CachedPC pc = cachedPC(1L);
+        tracking.put(key, pc, tracking.getInvalidationCount());
+        assertSame(pc, tracking.get(key));
+
+        try (Jedis jedis = pool.getResource())
+        {
+            jedis.set(key, new byte[] {1});
+        }
+        waitFor("local copy to be invalidated", () -> tracking.get(key) == null);
+    }
+
+    @Test
+    public void testTrackerConnectionKilled()
+    {
+        byte[] key = key("2");
+        CachedPC pc = cachedPC(2L);
+        tracking.put(key, pc, tracking.getInvalidationCount());
+        assertSame(pc, tracking.get(key));
+
+        long trackerId = tracking.getTrackerClientId();
+        try (Jedis jedis = pool.getResource())
+        {
+            jedis.sendCommand(Protocol.Command.CLIENT, "KILL", "ID", Long.toString(trackerId));
+        }
+
+        // Local copies must be dropped, since Redis no longer sends us invalidations
+        waitFor("local copy to be dropped", () -> tracking.get(key) == null);
+        waitFor("tracking to be re-established", () -> tracking.isTracking() && tracking.getTrackerClientId() != trackerId);
+        assertNotEquals(trackerId, tracking.getTrackerClientId());
+
+        // and invalidations are received again
+        tracking.put(key, pc, tracking.getInvalidationCount());
+        assertSame(pc, tracking.get(key));
+        try (Jedis jedis = pool.getResource())
+        {
+            jedis.set(key, new byte[] {2});
+        }
+        waitFor("local copy to be invalidated", () -> tracking.get(key) == null);
+        assertNull(tracking.get(key));
+    }
+
+    private static byte[] key(String id)
+    {
+        return (PREFIX + id).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static CachedPC cachedPC(Object id)
+    {
+        return new CachedPC(Object.class, new boolean[0], null, id);
+    }
+
+    private static void waitFor(String description, BooleanSupplier condition)
+    {
+        long end = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.getAsBoolean())
+        {
+            assertTrue("Timed out waiting for " + description, System.currentTimeMillis() < end);
+            try
+            {
+                Thread.sleep(20);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
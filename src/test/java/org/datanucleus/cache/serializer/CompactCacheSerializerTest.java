@@ -0,0 +1,226 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.serializer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.datanucleus.ClassLoaderResolverImpl;
+import org.datanucleus.NucleusContext;
+import org.datanucleus.cache.CachedPC;
+import org.datanucleus.exceptions.NucleusException;
+import org.datanucleus.identity.DatastoreIdImpl;
+import org.datanucleus.identity.IntId;
+import org.datanucleus.identity.LongId;
+import org.datanucleus.identity.StringId;
+import org.junit.Test;
+
+/**
+ * Tests of CompactCacheSerializer, round-tripping each type of value it handles natively, and values it passes to Java serialization.
+ */
+public class CompactCacheSerializerTest
+{
+    private final CompactCacheSerializer serializer = new CompactCacheSerializer(createContext());
+
+    /** Persistable class of the cached objects. */
+    static class Person
+    {
+    }
+
+    enum Colour
+    {
+        RED,
+        GREEN
+    }
+
+    /** Value that isn't handled natively, so uses Java serialization. */
+    static class Address implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        final String street;
+
+        Address(String street)
+        {
+            this.street = street;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof Address && ((Address)obj).street.equals(street);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return street.hashCode();
+        }
+    }
+
+    /**
+     * Method to create a context providing only the ClassLoaderResolver, which is all that the serializer uses.
+     * @return The context
+     */
+    static NucleusContext createContext()
+    {
+        return (NucleusContext) Proxy.newProxyInstance(NucleusContext.class.getClassLoader(), new Class[] {NucleusContext.class}, (proxy, method, args) ->
+        {
+            if (method.getName().equals("getClassLoaderResolver"))
+            {
+                return new ClassLoaderResolverImpl();
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private Object roundTrip(Object value)
+    {
+        return serializer.deserialize(serializer.serialize(value));
+    }
+
+    @Test
+    public void testScalars()
+    {
+        List<Object> values = Arrays.asList(null, "abc", "", "é中", Long.MIN_VALUE, -1L, 0L, Long.MAX_VALUE, Integer.MIN_VALUE, -7, Integer.MAX_VALUE,
+            Boolean.TRUE, Boolean.FALSE, (short)-300, (byte)-2, 'x', 1.5d, Double.NaN, -0.25f, new BigDecimal("-1234.5678"), new BigInteger("123456789012345678901234567890"),
+            new Date(1234567890123L), new java.sql.Date(1234567890000L), new Time(45296000L), Colour.GREEN);
+        for (Object value : values)
+        {
+            assertEquals(value, roundTrip(value));
+        }
+
+        Timestamp ts = new Timestamp(1234567890000L);
+        ts.setNanos(123456789);
+        assertEquals(ts, roundTrip(ts));
+        assertArrayEquals(new byte[] {1, 2, -3}, (byte[]) roundTrip(new byte[] {1, 2, -3}));
+    }
+
+    @Test
+    public void testIdentities()
+    {
+        List<Object> ids = Arrays.asList(new LongId(Person.class, 12L), new IntId(Person.class, -3), new StringId(Person.class, "key"),
+            new DatastoreIdImpl(Person.class.getName(), 99L));
+        for (Object id : ids)
+        {
+            Object result = roundTrip(id);
+            assertEquals(id, result);
+            assertEquals(id.getClass(), result.getClass());
+        }
+    }
+
+    @Test
+    public void testContainers()
+    {
+        List<Object> values = new ArrayList<>();
+        values.add(new ArrayList<>(Arrays.asList(1, "two", null)));
+        values.add(new LinkedList<>(Arrays.asList(3L, 4L)));
+        values.add(new HashSet<>(Arrays.asList("a", "b")));
+        values.add(new LinkedHashSet<>(Arrays.asList("c", "a", "b")));
+        values.add(new TreeSet<>(Arrays.asList(5, 1, 3)));
+        Map<Object, Object> hashMap = new HashMap<>();
+        hashMap.put("k", Arrays.asList(1, 2));
+        hashMap.put(7, null);
+        values.add(hashMap);
+        Map<Object, Object> linkedMap = new LinkedHashMap<>();
+        linkedMap.put("z", 1);
+        linkedMap.put("a", 2);
+        values.add(linkedMap);
+        values.add(new TreeMap<>(linkedMap));
+        for (Object value : values)
+        {
+            Object result = roundTrip(value);
+            assertEquals(value, result);
+            assertEquals(value.getClass(), result.getClass());
+        }
+        assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<>((LinkedHashSet<?>)roundTrip(values.get(3))));
+        assertEquals(Arrays.asList("z", "a"), new ArrayList<>(((LinkedHashMap<?, ?>)roundTrip(linkedMap)).keySet()));
+
+        Object[] array = (Object[]) roundTrip(new Object[] {"x", 1, null});
+        assertArrayEquals(new Object[] {"x", 1, null}, array);
+    }
+
+    @Test
+    public void testJavaSerializationFallback()
+    {
+        assertEquals(new Address("High Street"), roundTrip(new Address("High Street")));
+
+        // Fallback values nested in a container, with values after them
+        List<Object> list = new ArrayList<>(Arrays.asList(new Address("Main Road"), "after"));
+        assertEquals(list, roundTrip(list));
+    }
+
+    @Test
+    public void testCachedPC()
+    {
+        boolean[] loaded = new boolean[10];
+        loaded[0] = true;
+        loaded[3] = true;
+        loaded[9] = true;
+        LongId id = new LongId(Person.class, 5L);
+        CachedPC pc = new CachedPC(Person.class, loaded, 3L, id);
+        pc.setFieldValue(0, "Smith");
+        pc.setFieldValue(3, new LongId(Person.class, 6L));
+        pc.setFieldValue(9, null);
+
+        CachedPC result = (CachedPC) roundTrip(pc);
+        assertEquals(Person.class, result.getObjectClass());
+        assertEquals(id, result.getId());
+        assertEquals(3L, result.getVersion());
+        assertArrayEquals(loaded, result.getLoadedFields());
+        assertEquals("Smith", result.getFieldValue(0));
+        assertEquals(new LongId(Person.class, 6L), result.getFieldValue(3));
+        assertNull(result.getFieldValue(9));
+        assertNull(result.getFieldValue(1));
+    }
+
+    @Test
+    public void testDeserializeAtOffset()
+    {
+        byte[] bytes = serializer.serialize(Arrays.asList("a", new Address("Offset Lane")));
+        byte[] padded = new byte[bytes.length + 7];
+        System.arraycopy(bytes, 0, padded, 5, bytes.length);
+        assertEquals(Arrays.asList("a", new Address("Offset Lane")), serializer.deserialize(padded, 5, bytes.length));
+    }
+
+    @Test(expected = NucleusException.class)
+    public void testUnknownTag()
+    {
+        serializer.deserialize(new byte[] {100});
+    }
+}
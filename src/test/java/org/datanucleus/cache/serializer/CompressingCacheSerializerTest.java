@@ -0,0 +1,166 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.serializer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.datanucleus.exceptions.NucleusException;
+import org.junit.Test;
+
+/**
+ * Tests of CompressingCacheSerializer, using a delegate that serializes strings as UTF-8.
+ */
+public class CompressingCacheSerializerTest
+{
+    private static final int THRESHOLD = 64;
+
+    /** Compressible value, above the threshold. */
+    private static final String LARGE;
+    static
+    {
+        char[] chars = new char[4000];
+        for (int i = 0; i < chars.length; i++)
+        {
+            chars[i] = (char)('a' + (i % 7));
+        }
+        LARGE = new String(chars);
+    }
+
+    /** Value below the threshold. */
+    private static final String SMALL = "small value";
+
+    private static final CacheSerializer UTF8 = new CacheSerializer()
+    {
+        public byte[] serialize(Object obj)
+        {
+            return ((String)obj).getBytes(StandardCharsets.UTF_8);
+        }
+
+        public Object deserialize(byte[] bytes)
+        {
+            return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public Object deserialize(byte[] bytes, int offset, int length)
+        {
+            return new String(bytes, offset, length, StandardCharsets.UTF_8);
+        }
+    };
+
+    private static CompressingCacheSerializer create(byte type)
+    {
+        return new CompressingCacheSerializer(UTF8, type, THRESHOLD);
+    }
+
+    @Test
+    public void testNoCompressionWritesHeader()
+    {
+        CompressingCacheSerializer serializer = create(CompressingCacheSerializer.TYPE_NONE);
+        byte[] bytes = serializer.serialize(LARGE);
+        assertEquals(LARGE.length() + 1, bytes.length);
+        assertEquals(CompressingCacheSerializer.TYPE_NONE, bytes[0]);
+        assertEquals(LARGE, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void testDeflate()
+    {
+        assertCompresses(create(CompressingCacheSerializer.TYPE_DEFLATE), CompressingCacheSerializer.TYPE_DEFLATE);
+    }
+
+    @Test
+    public void testLz4()
+    {
+        assertCompresses(create(CompressingCacheSerializer.TYPE_LZ4), CompressingCacheSerializer.TYPE_LZ4);
+    }
+
+    private static void assertCompresses(CompressingCacheSerializer serializer, byte type)
+    {
+        byte[] bytes = serializer.serialize(LARGE);
+        assertEquals(type, bytes[0]);
+        assertTrue(bytes.length < LARGE.length() / 2);
+        assertEquals(LARGE, serializer.deserialize(bytes));
+
+        // Below the threshold the value is stored uncompressed
+        byte[] small = serializer.serialize(SMALL);
+        assertEquals(CompressingCacheSerializer.TYPE_NONE, small[0]);
+        assertEquals(SMALL, serializer.deserialize(small));
+    }
+
+    @Test
+    public void testIncompressibleValueStoredUncompressed()
+    {
+        char[] chars = new char[THRESHOLD * 2];
+        Random random = new Random(42);
+        for (int i = 0; i < chars.length; i++)
+        {
+            chars[i] = (char)(33 + random.nextInt(90));
+        }
+        String value = new String(chars);
+
+        byte[] bytes = create(CompressingCacheSerializer.TYPE_DEFLATE).serialize(value);
+        assertEquals(CompressingCacheSerializer.TYPE_NONE, bytes[0]);
+        assertEquals(value.length() + 1, bytes.length);
+    }
+
+    @Test
+    public void testReadsValuesWrittenWithOtherSettings()
+    {
+        CompressingCacheSerializer none = create(CompressingCacheSerializer.TYPE_NONE);
+        CompressingCacheSerializer deflate = create(CompressingCacheSerializer.TYPE_DEFLATE);
+        CompressingCacheSerializer lz4 = create(CompressingCacheSerializer.TYPE_LZ4);
+        for (CompressingCacheSerializer writer : Arrays.asList(none, deflate, lz4))
+        {
+            byte[] bytes = writer.serialize(LARGE);
+            for (CompressingCacheSerializer reader : Arrays.asList(none, deflate, lz4))
+            {
+                assertEquals(LARGE, reader.deserialize(bytes));
+            }
+        }
+    }
+
+    @Test
+    public void testNull()
+    {
+        assertNull(create(CompressingCacheSerializer.TYPE_DEFLATE).deserialize(null));
+    }
+
+    @Test(expected = NucleusException.class)
+    public void testEmptyValue()
+    {
+        create(CompressingCacheSerializer.TYPE_DEFLATE).deserialize(new byte[0]);
+    }
+
+    @Test(expected = NucleusException.class)
+    public void testTruncatedHeader()
+    {
+        create(CompressingCacheSerializer.TYPE_DEFLATE).deserialize(new byte[] {CompressingCacheSerializer.TYPE_DEFLATE, 0, 1});
+    }
+
+    @Test(expected = NucleusException.class)
+    public void testUnknownCompressionType()
+    {
+        create(CompressingCacheSerializer.TYPE_DEFLATE).deserialize(new byte[] {9, 0, 0, 0, 1, 0});
+    }
+}
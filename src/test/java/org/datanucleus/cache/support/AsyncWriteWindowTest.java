@@ -0,0 +1,164 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.datanucleus.cache.support.AsyncWriteWindow.OverflowPolicy;
+import org.junit.Test;
+
+/**
+ * Tests of AsyncWriteWindow, with each overflow policy.
+ */
+public class AsyncWriteWindowTest
+{
+    private static final long WAIT_MILLIS = 5000;
+
+    @Test
+    public void testDrop()
+    {
+        AsyncWriteWindow window = new AsyncWriteWindow(2, OverflowPolicy.DROP);
+        assertTrue(window.acquire());
+        assertTrue(window.acquire());
+        assertFalse(window.acquire());
+        assertEquals(1, window.getDroppedCount());
+
+        window.completed(true, "a");
+        assertTrue(window.acquire());
+        assertEquals(1, window.getDroppedCount());
+        assertEquals(0, window.getFailedCount());
+    }
+
+    @Test
+    public void testEvict()
+    {
+        AsyncWriteWindow window = new AsyncWriteWindow(1, OverflowPolicy.EVICT);
+        assertEquals(OverflowPolicy.EVICT, window.getOverflowPolicy());
+        assertTrue(window.acquire());
+        assertFalse(window.acquire());
+        assertFalse(window.acquire());
+        assertEquals(2, window.getDroppedCount());
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException
+    {
+        AsyncWriteWindow window = new AsyncWriteWindow(1, OverflowPolicy.BLOCK);
+        assertTrue(window.acquire());
+
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread writer = new Thread(() -> acquired.set(window.acquire()));
+        writer.start();
+        writer.join(200);
+        assertTrue("acquire returned while the window was full", writer.isAlive());
+
+        window.completed(true, "a");
+        writer.join(WAIT_MILLIS);
+        assertFalse(writer.isAlive());
+        assertTrue(acquired.get());
+        assertEquals(0, window.getDroppedCount());
+    }
+
+    @Test
+    public void testBlockInterrupted() throws InterruptedException
+    {
+        AsyncWriteWindow window = new AsyncWriteWindow(1, OverflowPolicy.BLOCK);
+        assertTrue(window.acquire());
+
+        AtomicBoolean acquired = new AtomicBoolean(true);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread writer = new Thread(() ->
+        {
+            acquired.set(window.acquire());
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        writer.start();
+        writer.join(100);
+        writer.interrupt();
+        writer.join(WAIT_MILLIS);
+
+        assertFalse(acquired.get());
+        assertTrue(interrupted.get());
+        assertEquals(1, window.getDroppedCount());
+    }
+
+    @Test
+    public void testFailedWrites()
+    {
+        AsyncWriteWindow window = new AsyncWriteWindow(1, OverflowPolicy.DROP);
+        assertTrue(window.acquire());
+        window.completed(false, "a");
+        assertEquals(1, window.getFailedCount());
+
+        // The place in the window is released even when the write fails
+        assertTrue(window.acquire());
+    }
+
+    @Test
+    public void testAwaitCompletion() throws InterruptedException
+    {
+        AsyncWriteWindow window = new AsyncWriteWindow(3, OverflowPolicy.DROP);
+        assertTrue(window.acquire());
+        assertTrue(window.acquire());
+
+        Thread completer = new Thread(() ->
+        {
+            try
+            {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            window.completed(true, "a");
+            window.completed(true, "b");
+        });
+        completer.start();
+
+        long start = System.currentTimeMillis();
+        window.awaitCompletion(WAIT_MILLIS);
+        assertTrue(System.currentTimeMillis() - start < WAIT_MILLIS);
+        completer.join();
+
+        // All places are available again
+        assertTrue(window.acquire());
+        assertTrue(window.acquire());
+        assertTrue(window.acquire());
+        assertFalse(window.acquire());
+    }
+
+    @Test
+    public void testAwaitCompletionTimesOut()
+    {
+        AsyncWriteWindow window = new AsyncWriteWindow(2, OverflowPolicy.DROP);
+        assertTrue(window.acquire());
+
+        long start = System.currentTimeMillis();
+        window.awaitCompletion(100);
+        assertTrue(System.currentTimeMillis() - start >= 100);
+
+        // Writes still in flight keep their place
+        assertTrue(window.acquire());
+        assertFalse(window.acquire());
+    }
+}
@@ -0,0 +1,123 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+/**
+ * Tests of ClassKeyIndex.
+ */
+public class ClassKeyIndexTest
+{
+    private final ClassKeyIndex index = new ClassKeyIndex();
+
+    @Test
+    public void testAddAndRemove()
+    {
+        index.add("A", 1);
+        index.add("A", 2);
+        index.add("A", 2);
+        index.add("B", 3);
+        assertEquals(3, index.size());
+
+        index.remove("A", 1);
+        index.remove("A", 99);
+        index.remove("C", 1);
+        assertEquals(2, index.size());
+
+        index.remove("A", 2);
+        assertTrue(index.removeClass("A").isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testRemoveClass()
+    {
+        index.add("A", 1);
+        index.add("A", 2);
+        index.add("B", 3);
+
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), index.removeClass("A"));
+        assertEquals(1, index.size());
+        assertTrue(index.removeClass("A").isEmpty());
+        assertTrue(index.removeClass("C").isEmpty());
+    }
+
+    @Test
+    public void testClear()
+    {
+        index.add("A", 1);
+        index.add("B", 2);
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(index.removeClass("A").isEmpty());
+        assertTrue(index.removeClass("B").isEmpty());
+    }
+
+    @Test
+    public void testPrune()
+    {
+        Set<Object> cache = new HashSet<>(Arrays.asList(1, 3));
+        index.add("A", 1);
+        index.add("A", 2);
+        index.add("B", 3);
+        index.add("B", 4);
+
+        assertEquals(2, index.prune(cache::contains));
+        assertEquals(2, index.size());
+        assertEquals(new HashSet<>(Arrays.asList(1)), index.removeClass("A"));
+        assertEquals(new HashSet<>(Arrays.asList(3)), index.removeClass("B"));
+        assertEquals(0, index.prune(cache::contains));
+    }
+
+    @Test
+    public void testPruneTestsOutsideUpdate()
+    {
+        index.add("A", 1);
+        index.add("A", 2);
+
+        // A test that uses the index itself (as a put would, concurrently) would fail if made while updating the index
+        assertEquals(2, index.prune(key ->
+        {
+            index.add("A", 10 + (Integer) key);
+            index.remove("A", 10 + (Integer) key);
+            return false;
+        }));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testPruneKeepsKeyCachedDuringPrune()
+    {
+        index.add("A", 1);
+        index.add("A", 2);
+
+        // Key 1 is put again between the first test and its removal from the index
+        Set<Object> tested = ConcurrentHashMap.newKeySet();
+        assertEquals(1, index.prune(key -> key.equals(1) && !tested.add(key)));
+        assertEquals(new HashSet<>(Arrays.asList(1)), index.removeClass("A"));
+    }
+}
@@ -0,0 +1,250 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.datanucleus.cache.CachedPC;
+import org.junit.Test;
+
+/**
+ * Tests of SingleFlight, with the test thread as the loader and other threads missing on the same id.
+ */
+public class SingleFlightTest
+{
+    /** Wait time for tests where the loader is expected to put (or release) well within it. */
+    private static final long LONG_WAIT_MILLIS = 10000;
+
+    /** Thread missing on an id, recording the result. */
+    private static class Miss extends Thread
+    {
+        final SingleFlight singleFlight;
+        final Object oid;
+        volatile CachedPC result;
+        volatile long elapsedMillis;
+
+        Miss(SingleFlight singleFlight, Object oid)
+        {
+            this.singleFlight = singleFlight;
+            this.oid = oid;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run()
+        {
+            long start = System.currentTimeMillis();
+            result = singleFlight.afterMiss(oid, id -> null);
+            elapsedMillis = System.currentTimeMillis() - start;
+        }
+
+        /**
+         * Method to start the thread and wait until it is waiting for the loader.
+         * @return This thread
+         */
+        Miss startWaiting() throws InterruptedException
+        {
+            start();
+            long deadline = System.currentTimeMillis() + LONG_WAIT_MILLIS;
+            while (getState() != State.TIMED_WAITING && isAlive() && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(5);
+            }
+            return this;
+        }
+
+        Miss finish() throws InterruptedException
+        {
+            join(LONG_WAIT_MILLIS * 2);
+            assertFalse("Miss still waiting", isAlive());
+            return this;
+        }
+    }
+
+    private static CachedPC pc(Object oid)
+    {
+        return new CachedPC(Object.class, new boolean[0], null, oid);
+    }
+
+    @Test
+    public void testWaiterGetsLoadersPut() throws InterruptedException
+    {
+        SingleFlight singleFlight = new SingleFlight(LONG_WAIT_MILLIS, null);
+        assertNull(singleFlight.afterMiss("a", id -> null));
+
+        Miss waiter = new Miss(singleFlight, "a").startWaiting();
+        assertTrue(waiter.isAlive());
+
+        CachedPC pc = pc("a");
+        singleFlight.loaded("a", pc);
+        assertSame(pc, waiter.finish().result);
+    }
+
+    @Test
+    public void testOtherIdsDontWait() throws InterruptedException
+    {
+        SingleFlight singleFlight = new SingleFlight(LONG_WAIT_MILLIS, null);
+        assertNull(singleFlight.afterMiss("a", id -> null));
+
+        Miss other = new Miss(singleFlight, "b");
+        other.start();
+        assertNull(other.finish().result);
+        assertTrue(other.elapsedMillis < LONG_WAIT_MILLIS);
+    }
+
+    @Test
+    public void testWaitTimesOut() throws InterruptedException
+    {
+        SingleFlight singleFlight = new SingleFlight(200, null);
+        assertNull(singleFlight.afterMiss("a", id -> null));
+
+        Miss waiter = new Miss(singleFlight, "a");
+        waiter.start();
+        assertNull(waiter.finish().result);
+    }
+
+    @Test
+    public void testExpiredLeaseIsTakenOver() throws InterruptedException
+    {
+        SingleFlight singleFlight = new SingleFlight(1000, null);
+        Miss loader = new Miss(singleFlight, "a");
+        loader.start();
+        assertNull(loader.finish().result);
+        Thread.sleep(1100);
+
+        // The first loader never put, so the next miss becomes the loader, and a further miss waits for its put
+        Miss next = new Miss(singleFlight, "a");
+        next.start();
+        assertNull(next.finish().result);
+        Miss waiter = new Miss(singleFlight, "a").startWaiting();
+        assertTrue(waiter.isAlive());
+
+        CachedPC pc = pc("a");
+        singleFlight.loaded("a", pc);
+        assertSame(pc, waiter.finish().result);
+    }
+
+    @Test
+    public void testLeaseReleasedWhenLoaderNextUsesCache() throws InterruptedException
+    {
+        SingleFlight singleFlight = new SingleFlight(LONG_WAIT_MILLIS, null);
+        assertNull(singleFlight.afterMiss("a", id -> null));
+        Miss waiter = new Miss(singleFlight, "a").startWaiting();
+
+        // The loader didn't put "a" (e.g. it doesn't exist) and moves on to another id
+        assertNull(singleFlight.afterMiss("b", id -> null));
+        assertNull(waiter.finish().result);
+        assertTrue(waiter.elapsedMillis < LONG_WAIT_MILLIS);
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException
+    {
+        SingleFlight singleFlight = new SingleFlight(LONG_WAIT_MILLIS, null);
+        assertNull(singleFlight.afterMiss("a", id -> null));
+        Miss waiter = new Miss(singleFlight, "a").startWaiting();
+
+        singleFlight.cancel("a");
+        assertNull(waiter.finish().result);
+        assertTrue(waiter.elapsedMillis < LONG_WAIT_MILLIS);
+    }
+
+    @Test
+    public void testCancelAll() throws InterruptedException
+    {
+        SingleFlight singleFlight = new SingleFlight(LONG_WAIT_MILLIS, null);
+        Miss loader = new Miss(singleFlight, "a");
+        loader.start();
+        loader.finish();
+        assertNull(singleFlight.afterMiss("b", id -> null));
+        Miss waiterA = new Miss(singleFlight, "a").startWaiting();
+        Miss waiterB = new Miss(singleFlight, "b").startWaiting();
+
+        singleFlight.cancelAll();
+        assertNull(waiterA.finish().result);
+        assertNull(waiterB.finish().result);
+    }
+
+    @Test
+    public void testDistributedLeaseAcquiredAndReleased()
+    {
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        SingleFlight singleFlight = new SingleFlight(LONG_WAIT_MILLIS, new SingleFlight.DistributedLease()
+        {
+            public boolean acquire(Object oid, long leaseMillis)
+            {
+                calls.add("acquire " + oid);
+                return true;
+            }
+
+            public void release(Object oid)
+            {
+                calls.add("release " + oid);
+            }
+        });
+
+        assertNull(singleFlight.afterMiss("a", id -> null));
+        singleFlight.loaded("a", pc("a"));
+        singleFlight.loaded("a", pc("a"));
+        assertEquals(Arrays.asList("acquire a", "release a"), calls);
+    }
+
+    @Test
+    public void testDistributedLeaseHeldElsewhere()
+    {
+        CachedPC pc = pc("a");
+        AtomicReference<CachedPC> cached = new AtomicReference<>();
+        SingleFlight singleFlight = new SingleFlight(LONG_WAIT_MILLIS, new SingleFlight.DistributedLease()
+        {
+            public boolean acquire(Object oid, long leaseMillis)
+            {
+                // Another process loads it, and puts it a little later
+                new Thread(() ->
+                {
+                    try
+                    {
+                        Thread.sleep(50);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    cached.set(pc);
+                }).start();
+                return false;
+            }
+
+            public void release(Object oid)
+            {
+                throw new AssertionError("Lease released without being acquired");
+            }
+        });
+
+        assertSame(pc, singleFlight.afterMiss("a", id -> cached.get()));
+    }
+}
@@ -0,0 +1,153 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests of SizeTracker, with a supplier of the actual cache size controlled by the test.
+ */
+public class SizeTrackerTest
+{
+    /** Reconcile interval for tests that don't want periodic reconciliation. */
+    private static final long NEVER_MILLIS = 3600000;
+
+    private static final long WAIT_MILLIS = 5000;
+
+    /** Actual size of the "cache". */
+    private final AtomicInteger cacheSize = new AtomicInteger();
+
+    /** Number of times the actual size was read. */
+    private final AtomicInteger sizeReads = new AtomicInteger();
+
+    private SizeTracker tracker;
+
+    private int readCacheSize()
+    {
+        sizeReads.incrementAndGet();
+        return cacheSize.get();
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (tracker != null)
+        {
+            tracker.close();
+        }
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.getAsBoolean())
+        {
+            if (System.currentTimeMillis() > deadline)
+            {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    @Test
+    public void testCounting()
+    {
+        tracker = new SizeTracker(3, NEVER_MILLIS, this::readCacheSize);
+        assertFalse(tracker.isFull());
+        tracker.added();
+        tracker.added(2);
+        assertEquals(3, tracker.getSize());
+        assertTrue(tracker.isFull());
+
+        tracker.removed();
+        assertFalse(tracker.isFull());
+        tracker.cleared();
+        assertEquals(0, tracker.getSize());
+
+        // Checks and updates never read the actual size
+        assertEquals(0, sizeReads.get());
+    }
+
+    @Test
+    public void testZeroMaxSize()
+    {
+        tracker = new SizeTracker(0, NEVER_MILLIS, this::readCacheSize);
+        assertTrue(tracker.isFull());
+    }
+
+    @Test
+    public void testInvalidateReconcilesInBackground() throws InterruptedException
+    {
+        tracker = new SizeTracker(10, NEVER_MILLIS, this::readCacheSize);
+        tracker.added(5);
+        cacheSize.set(12);
+
+        tracker.invalidate();
+        assertTrue(waitFor(() -> tracker.getSize() == 12));
+        assertTrue(tracker.isFull());
+    }
+
+    @Test
+    public void testPeriodicReconcile() throws InterruptedException
+    {
+        tracker = new SizeTracker(10, 20, this::readCacheSize);
+        tracker.added(8);
+
+        // e.g. objects expired, or were evicted by another process
+        cacheSize.set(3);
+        assertTrue(waitFor(() -> tracker.getSize() == 3));
+        cacheSize.set(11);
+        assertTrue(waitFor(() -> tracker.isFull()));
+    }
+
+    @Test
+    public void testReconcileFailureKeepsCount() throws InterruptedException
+    {
+        tracker = new SizeTracker(10, NEVER_MILLIS, () ->
+        {
+            sizeReads.incrementAndGet();
+            throw new IllegalStateException("cache unavailable");
+        });
+        tracker.added(4);
+
+        tracker.invalidate();
+        assertTrue(waitFor(() -> sizeReads.get() > 0));
+        assertEquals(4, tracker.getSize());
+    }
+
+    @Test
+    public void testCloseStopsReconcile() throws InterruptedException
+    {
+        tracker = new SizeTracker(10, NEVER_MILLIS, this::readCacheSize);
+        tracker.close();
+
+        tracker.invalidate();
+        Thread.sleep(100);
+        assertEquals(0, sizeReads.get());
+    }
+}
@@ -0,0 +1,252 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+**********************************************************************/
+package org.datanucleus.cache.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.datanucleus.cache.CachedPC;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests of WriteBehindQueue, using a writer that records the batches and can hold the first batch to control the timing.
+ */
+public class WriteBehindQueueTest
+{
+    private static final long WAIT_SECONDS = 5;
+
+    /** Batches written, in order. */
+    private final List<Map<Object, CachedPC>> batches = new ArrayList<>();
+
+    /** Counted down when the first batch starts being written. */
+    private final CountDownLatch firstBatchStarted = new CountDownLatch(1);
+
+    /** The first batch is held until this is counted down. */
+    private final CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+
+    private WriteBehindQueue queue;
+
+    private void write(Map<Object, CachedPC> objs)
+    {
+        boolean first;
+        synchronized (batches)
+        {
+            batches.add(new LinkedHashMap<>(objs));
+            first = batches.size() == 1;
+        }
+        if (first)
+        {
+            firstBatchStarted.countDown();
+            try
+            {
+                releaseFirstBatch.await(WAIT_SECONDS, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static CachedPC pc(Object oid)
+    {
+        return new CachedPC(Object.class, new boolean[0], null, oid);
+    }
+
+    /**
+     * Method to queue a put of "a" and wait for the worker to start (and hold) writing it.
+     */
+    private CachedPC holdFirstBatch() throws InterruptedException
+    {
+        CachedPC a = pc("a");
+        assertTrue(queue.offer("a", a));
+        assertTrue(firstBatchStarted.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        return a;
+    }
+
+    @After
+    public void tearDown()
+    {
+        releaseFirstBatch.countDown();
+        if (queue != null)
+        {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testCoalescesAndBatches() throws InterruptedException
+    {
+        queue = new WriteBehindQueue("test", this::write, 100, 2);
+        holdFirstBatch();
+
+        CachedPC b1 = pc("b");
+        CachedPC b2 = pc("b");
+        CachedPC c = pc("c");
+        CachedPC d = pc("d");
+        assertTrue(queue.offer("b", b1));
+        assertTrue(queue.offer("c", c));
+        assertTrue(queue.offer("b", b2));
+        assertTrue(queue.offer("d", d));
+
+        releaseFirstBatch.countDown();
+        queue.close();
+
+        assertEquals(3, batches.size());
+        assertEquals(Arrays.asList("a"), new ArrayList<>(batches.get(0).keySet()));
+        assertEquals(Arrays.asList("b", "c"), new ArrayList<>(batches.get(1).keySet()));
+        assertSame(b2, batches.get(1).get("b"));
+        assertEquals(Arrays.asList("d"), new ArrayList<>(batches.get(2).keySet()));
+    }
+
+    @Test
+    public void testGetPending() throws InterruptedException
+    {
+        queue = new WriteBehindQueue("test", this::write, 100, 10);
+        CachedPC a = holdFirstBatch();
+        CachedPC b = pc("b");
+        queue.offer("b", b);
+
+        assertSame(a, queue.getPending("a"));
+        assertSame(b, queue.getPending("b"));
+        assertNull(queue.getPending("c"));
+
+        releaseFirstBatch.countDown();
+        queue.close();
+        assertNull(queue.getPending("a"));
+        assertNull(queue.getPending("b"));
+    }
+
+    @Test
+    public void testFullQueue() throws InterruptedException
+    {
+        queue = new WriteBehindQueue("test", this::write, 1, 10);
+        holdFirstBatch();
+
+        assertTrue(queue.offer("b", pc("b")));
+        assertFalse(queue.offer("c", pc("c")));
+        assertNull(queue.getPending("c"));
+
+        // Replacing a queued put doesn't need space
+        CachedPC b2 = pc("b");
+        assertTrue(queue.offer("b", b2));
+        assertSame(b2, queue.getPending("b"));
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException
+    {
+        queue = new WriteBehindQueue("test", this::write, 100, 10);
+        holdFirstBatch();
+        queue.offer("b", pc("b"));
+        queue.offer("c", pc("c"));
+        queue.offer("d", pc("d"));
+
+        queue.cancel("b");
+        queue.cancelIf(oid -> oid.equals("c"));
+        assertNull(queue.getPending("b"));
+        assertNull(queue.getPending("c"));
+
+        releaseFirstBatch.countDown();
+        queue.close();
+        assertEquals(2, batches.size());
+        assertEquals(Arrays.asList("d"), new ArrayList<>(batches.get(1).keySet()));
+    }
+
+    @Test
+    public void testCancelWaitsForBatchBeingWritten() throws InterruptedException
+    {
+        queue = new WriteBehindQueue("test", this::write, 100, 10);
+        holdFirstBatch();
+
+        Thread evictor = new Thread(() -> queue.cancel("a"));
+        evictor.start();
+        evictor.join(200);
+        assertTrue("cancel returned while the put was being written", evictor.isAlive());
+
+        releaseFirstBatch.countDown();
+        evictor.join(TimeUnit.SECONDS.toMillis(WAIT_SECONDS));
+        assertFalse(evictor.isAlive());
+        assertNull(queue.getPending("a"));
+    }
+
+    @Test
+    public void testCancelAll() throws InterruptedException
+    {
+        queue = new WriteBehindQueue("test", this::write, 100, 10);
+        holdFirstBatch();
+        queue.offer("b", pc("b"));
+
+        Thread evictor = new Thread(() -> queue.cancelAll());
+        evictor.start();
+        evictor.join(200);
+        assertTrue("cancelAll returned while a put was being written", evictor.isAlive());
+        assertNull(queue.getPending("b"));
+
+        releaseFirstBatch.countDown();
+        evictor.join(TimeUnit.SECONDS.toMillis(WAIT_SECONDS));
+        assertFalse(evictor.isAlive());
+        assertNull(queue.getPending("a"));
+
+        queue.close();
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void testWriterFailureDoesntStopWorker()
+    {
+        List<Object> written = new ArrayList<>();
+        queue = new WriteBehindQueue("test", objs ->
+        {
+            if (objs.containsKey("bad"))
+            {
+                throw new IllegalStateException("write failed");
+            }
+            synchronized (written)
+            {
+                written.addAll(objs.keySet());
+            }
+        }, 100, 1);
+
+        queue.offer("bad", pc("bad"));
+        queue.offer("good", pc("good"));
+        queue.close();
+        assertEquals(Arrays.asList("good"), written);
+    }
+
+    @Test
+    public void testOfferAfterClose()
+    {
+        queue = new WriteBehindQueue("test", this::write, 100, 10);
+        queue.close();
+        assertFalse(queue.offer("a", pc("a")));
+        assertTrue(batches.isEmpty());
+    }
+}